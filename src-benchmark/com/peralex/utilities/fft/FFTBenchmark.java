@@ -0,0 +1,504 @@
+package com.peralex.utilities.fft;
+
+import java.awt.HeadlessException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the throughput and the allocation rate of the FFT engines and the spectrum post-processing, for every
+ * resolution that FFTGraph supports, so that the effect of a change to them can be checked.
+ *
+ * It lives in src-benchmark, so that it is not part of peragraph.jar. Run it with "ant benchmark", or directly:
+ *
+ * <pre>
+ *   java -cp build/classes:build/benchmark-classes [--add-modules jdk.incubator.vector]
+ *       com.peralex.utilities.fft.FFTBenchmark [-w warmups] [-i iterations] [-t ms] [filter...]
+ * </pre>
+ *
+ * Without --add-modules jdk.incubator.vector, VectorFFTSupport falls back to Radix4FFT, so the vectorised engine is not
+ * measured.
+ *
+ * Each benchmark is run for a number of warm-up iterations, to let the JIT compile it, and then for a number of
+ * measured iterations of a fixed duration. The result is the mean number of operations per second, with it's standard
+ * deviation over the iterations, and the number of bytes allocated per operation and per second, measured for the
+ * benchmark thread (where the JVM supports it). Only benchmarks whose name contains one of the filters are run.
+ *
+ * The FFT engines work in-place, so the benchmarks that transform the data re-load the input first. The "load"
+ * benchmark measures that on it's own.
+ */
+public final class FFTBenchmark
+{
+	private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+
+	private static final int DEFAULT_ITERATIONS = 5;
+
+	private static final int DEFAULT_ITERATION_TIME_ms = 500;
+
+	/** same scaling as FFTGraph */
+	private static final double POST_FFT_SCALING_FACTOR = 20.0 / Math.log(10);
+
+	private static final double LOST_ENERGY = 6.87;
+
+	/**
+	 * results are added to this, so that the JIT can not remove the work.
+	 */
+	private static volatile double dSink;
+
+	private static abstract class Benchmark
+	{
+		private final String sName;
+
+		Benchmark(String sName)
+		{
+			this.sName = sName;
+		}
+
+		String getName()
+		{
+			return sName;
+		}
+
+		/**
+		 * @return a description of the implementation being measured, or null if the size is not supported
+		 */
+		abstract String setUp(int size);
+
+		/**
+		 * @return a value that depends on the result
+		 */
+		abstract double run();
+
+		void tearDown()
+		{
+		}
+	}
+
+	/**
+	 * Common code for the benchmarks that run on an FFT engine.
+	 */
+	private static abstract class EngineBenchmark extends Benchmark
+	{
+		IFFTEngine oEngine;
+
+		double[] adInputReal;
+
+		double[] adInputImag;
+
+		double dPreFFTScalingFactor;
+
+		EngineBenchmark(String sName)
+		{
+			super(sName);
+		}
+
+		/**
+		 * @return the engine to measure, or null if the size is not supported
+		 */
+		IFFTEngine createEngine(int size)
+		{
+			return MixedRadixFFT.ANY_SIZE_FACTORY.createEngine(size, true);
+		}
+
+		@Override
+		String setUp(int size)
+		{
+			oEngine = createEngine(size);
+			if (oEngine == null)
+			{
+				return null;
+			}
+			adInputReal = new double[size];
+			adInputImag = new double[size];
+			final short[] samples = createSamples(size);
+			for (int i = 0; i < size; i++)
+			{
+				adInputReal[i] = samples[2 * i];
+				adInputImag[i] = samples[2 * i + 1];
+			}
+			dPreFFTScalingFactor = 1.0 / (32767.0 * size);
+			load();
+			return oEngine.getClass().getSimpleName();
+		}
+
+		final void load()
+		{
+			System.arraycopy(adInputReal, 0, oEngine.getRealBuffer(), 0, adInputReal.length);
+			System.arraycopy(adInputImag, 0, oEngine.getImagBuffer(), 0, adInputImag.length);
+		}
+	}
+
+	private FFTBenchmark()
+	{
+	}
+
+	/**
+	 * @return a tone in noise, interleaved (real, imaginary) as passed to FFTGraph.computeFFT()
+	 */
+	static short[] createSamples(int count)
+	{
+		final Random random = new Random(count);
+		final short[] samples = new short[2 * count];
+		for (int i = 0; i < count; i++)
+		{
+			final double phase = 2 * Math.PI * 0.1234 * i;
+			samples[2 * i] = (short) (8000 * Math.cos(phase) + 1000 * random.nextGaussian());
+			samples[2 * i + 1] = (short) (8000 * Math.sin(phase) + 1000 * random.nextGaussian());
+		}
+		return samples;
+	}
+
+	/**
+	 * @return a VectorRadix4FFT, or null if the size is not a power of two, or the JVM was started without the Vector
+	 *         API
+	 */
+	private static IFFTEngine createVectorEngine(int size)
+	{
+		if (!VectorFFTSupport.isAvailable() || Integer.bitCount(size) != 1)
+		{
+			return null;
+		}
+		return VectorFFTSupport.FACTORY.createEngine(size, true);
+	}
+
+	private static List<Benchmark> createBenchmarks()
+	{
+		final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new EngineBenchmark("load")
+		{
+			@Override
+			double run()
+			{
+				load();
+				return oEngine.getRealBuffer()[0];
+			}
+		});
+		benchmarks.add(new EngineBenchmark("FFT.runFFT")
+		{
+			@Override
+			IFFTEngine createEngine(int size)
+			{
+				// the radix-2 FFT only supports powers of two
+				return Integer.bitCount(size) == 1 ? FFT.FACTORY.createEngine(size, true) : null;
+			}
+
+			@Override
+			double run()
+			{
+				load();
+				oEngine.runFFT();
+				return oEngine.getRealBuffer()[1];
+			}
+		});
+		benchmarks.add(new EngineBenchmark("engine.runFFT")
+		{
+			@Override
+			double run()
+			{
+				load();
+				oEngine.runFFT();
+				return oEngine.getRealBuffer()[1];
+			}
+		});
+		benchmarks.add(new EngineBenchmark("vector.runFFT")
+		{
+			@Override
+			IFFTEngine createEngine(int size)
+			{
+				return createVectorEngine(size);
+			}
+
+			@Override
+			double run()
+			{
+				load();
+				oEngine.runFFT();
+				return oEngine.getRealBuffer()[1];
+			}
+		});
+		benchmarks.add(new EngineBenchmark("window")
+		{
+			@Override
+			double run()
+			{
+				load();
+				((AbstractFFTEngine) oEngine).preFFTProcess(dPreFFTScalingFactor);
+				return oEngine.getRealBuffer()[1];
+			}
+		});
+		benchmarks.add(new EngineBenchmark("calculateSpectra")
+		{
+			@Override
+			String setUp(int size)
+			{
+				final String description = super.setUp(size);
+				oEngine.runFFT();
+				return description;
+			}
+
+			@Override
+			double run()
+			{
+				// does not modify the FFT output, so it does not need to be re-loaded
+				return oEngine.calculateSpectra()[1];
+			}
+		});
+		for (final boolean bVector : new boolean[] { false, true })
+		{
+			for (final LogMode eLogMode : LogMode.values())
+			{
+				benchmarks.add(new EngineBenchmark((bVector ? "vector.calculate." : "calculate.") + eLogMode)
+				{
+					private float[] afOutput;
+
+					@Override
+					IFFTEngine createEngine(int size)
+					{
+						return bVector ? createVectorEngine(size) : super.createEngine(size);
+					}
+
+					@Override
+					String setUp(int size)
+					{
+						final String description = super.setUp(size);
+						if (description == null)
+						{
+							return null;
+						}
+						oEngine.setLogMode(eLogMode);
+						afOutput = new float[size];
+						return description;
+					}
+
+					@Override
+					double run()
+					{
+						load();
+						oEngine.calculate(dPreFFTScalingFactor, POST_FFT_SCALING_FACTOR, LOST_ENERGY, afOutput);
+						return afOutput[1];
+					}
+				});
+			}
+		}
+		benchmarks.add(new Benchmark("FFTGraph.computeFFT")
+		{
+			private FFTGraph oGraph;
+
+			private short[] awSamples;
+
+			@Override
+			String setUp(int size)
+			{
+				try
+				{
+					oGraph = new FFTGraph();
+				}
+				catch (HeadlessException ex)
+				{
+					return null;
+				}
+				oGraph.setFFTResolution((short) size);
+				// transform every frame, so that each operation is one transform
+				oGraph.setNoFramesToDrop(0);
+				awSamples = createSamples(size);
+				return oGraph.getFFTEngineFactory().createEngine(size, true).getClass().getSimpleName();
+			}
+
+			@Override
+			double run()
+			{
+				oGraph.computeFFT(awSamples);
+				return 0;
+			}
+
+			@Override
+			void tearDown()
+			{
+				oGraph = null;
+			}
+		});
+		return benchmarks;
+	}
+
+	public static void main(String[] args)
+	{
+		int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+		int iterations = DEFAULT_ITERATIONS;
+		int iterationTime_ms = DEFAULT_ITERATION_TIME_ms;
+		final List<String> filters = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-w") && i + 1 < args.length)
+			{
+				warmupIterations = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-i") && i + 1 < args.length)
+			{
+				iterations = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-t") && i + 1 < args.length)
+			{
+				iterationTime_ms = Integer.parseInt(args[++i]);
+			}
+			else
+			{
+				filters.add(args[i]);
+			}
+		}
+		if (iterations < 1)
+		{
+			throw new IllegalArgumentException("need at least one iteration, " + iterations);
+		}
+
+		System.out.println(String.format(Locale.US, "%-22s %6s %-18s %14s %12s %12s %10s", "Benchmark", "Size",
+				"Engine", "ops/s", "+-", "B/op", "MB/s"));
+		for (Benchmark benchmark : createBenchmarks())
+		{
+			if (!matches(benchmark.getName(), filters))
+			{
+				continue;
+			}
+			for (Short resolution : FFTGraph.getResolutionList())
+			{
+				final int size = resolution.intValue();
+				final String description = benchmark.setUp(size);
+				if (description == null)
+				{
+					continue;
+				}
+				try
+				{
+					measure(benchmark, size, description, warmupIterations, iterations, iterationTime_ms);
+				}
+				finally
+				{
+					benchmark.tearDown();
+				}
+			}
+		}
+		// the graphs may have started the event dispatch thread
+		System.exit(0);
+	}
+
+	private static boolean matches(String name, List<String> filters)
+	{
+		if (filters.isEmpty())
+		{
+			return true;
+		}
+		for (String filter : filters)
+		{
+			if (name.contains(filter))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void measure(Benchmark benchmark, int size, String description, int warmupIterations,
+			int iterations, int iterationTime_ms)
+	{
+		for (int i = 0; i < warmupIterations; i++)
+		{
+			runIteration(benchmark, iterationTime_ms, null);
+		}
+		final double[] opsPerSecond = new double[iterations];
+		final long[] result = new long[3];
+		long totalOps = 0;
+		long totalTime_ns = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			runIteration(benchmark, iterationTime_ms, result);
+			opsPerSecond[i] = result[0] * 1e9 / result[1];
+			totalOps += result[0];
+			totalTime_ns += result[1];
+			totalBytes = totalBytes < 0 || result[2] < 0 ? -1 : totalBytes + result[2];
+		}
+
+		double mean = 0;
+		for (double ops : opsPerSecond)
+		{
+			mean += ops;
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (double ops : opsPerSecond)
+		{
+			variance += (ops - mean) * (ops - mean);
+		}
+		final double deviation = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+		final String bytesPerOp;
+		final String megabytesPerSecond;
+		if (totalBytes < 0)
+		{
+			bytesPerOp = megabytesPerSecond = "n/a";
+		}
+		else
+		{
+			bytesPerOp = String.format(Locale.US, "%.1f", (double) totalBytes / totalOps);
+			megabytesPerSecond = String.format(Locale.US, "%.2f", totalBytes * 1e9 / totalTime_ns / (1 << 20));
+		}
+		System.out.println(String.format(Locale.US, "%-22s %6d %-18s %14.1f %12.1f %12s %10s", benchmark.getName(),
+				Integer.valueOf(size), description, Double.valueOf(mean), Double.valueOf(deviation), bytesPerOp,
+				megabytesPerSecond));
+	}
+
+	/**
+	 * Run the benchmark for about the given time.
+	 *
+	 * @param result if not null, receives the number of operations, the time they took in ns, and the bytes they
+	 *          allocated (-1 if the JVM can not measure it)
+	 */
+	private static void runIteration(Benchmark benchmark, int iterationTime_ms, long[] result)
+	{
+		final long end_ns = System.nanoTime() + iterationTime_ms * 1000000L;
+		final long startBytes = getAllocatedBytes();
+		final long start_ns = System.nanoTime();
+		long ops = 0;
+		long now_ns;
+		double sink = 0;
+		// check the time in batches, so that the calls to nanoTime() do not dominate the fast benchmarks
+		int batch = 1;
+		do
+		{
+			for (int i = 0; i < batch; i++)
+			{
+				sink += benchmark.run();
+			}
+			ops += batch;
+			now_ns = System.nanoTime();
+			if (now_ns - start_ns < 1000000L && batch < (1 << 16))
+			{
+				batch *= 2;
+			}
+		}
+		while (now_ns < end_ns);
+		final long endBytes = getAllocatedBytes();
+		dSink += sink;
+		if (result != null)
+		{
+			result[0] = ops;
+			result[1] = now_ns - start_ns;
+			result[2] = startBytes < 0 || endBytes < 0 ? -1 : endBytes - startBytes;
+		}
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread so far, or -1 if the JVM can not measure it
+	 */
+	private static long getAllocatedBytes()
+	{
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
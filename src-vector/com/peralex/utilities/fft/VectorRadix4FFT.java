@@ -0,0 +1,268 @@
+package com.peralex.utilities.fft;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A version of Radix4FFT whose butterflies, windowing, power and log conversion use the JDK Vector API, so that they
+ * run several bins per instruction.
+ *
+ * This class needs the jdk.incubator.vector module, both to compile and to run, so it lives in it's own source folder
+ * and is only ever created through VectorFFTSupport, which falls back to Radix4FFT when the module is missing.
+ *
+ * The stages whose butterfly span is narrower than a vector (the last radix-4 stage, and the radix-2 stage) are done
+ * with the scalar code of Radix4FFT.
+ *
+ * The log mode defaults to MAGNITUDE, same as the other engines, and then the log conversion is done with the scalar
+ * code. Select POWER or FAST_POWER to vectorise it, since the vectorised log conversion only works in the power domain.
+ */
+public class VectorRadix4FFT extends Radix4FFT
+{
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private final int iStageCount;
+
+	private final boolean bRadix2Stage;
+
+	/**
+	 * see FFTTables.getPlanarRadix4Twiddles().
+	 */
+	private final double[][][] adPlanarTwiddles;
+
+	/**
+	 * see FFTTables.getRadix4Twiddles(), for the scalar stages.
+	 */
+	private final double[][] adTwiddles;
+
+	/**
+	 * per-bin results in the order the FFT left them, before they are re-ordered into bin order.
+	 */
+	private final double[] adScratch;
+
+	public VectorRadix4FFT(int FFT_size, boolean useBlackmanWindow)
+	{
+		super(FFT_size, useBlackmanWindow);
+		final int order = checkPowerOfTwo(FFT_size);
+		iStageCount = order / 2;
+		bRadix2Stage = (order & 1) == 1;
+		adPlanarTwiddles = FFTTables.getPlanarRadix4Twiddles(FFT_size);
+		adTwiddles = FFTTables.getRadix4Twiddles(FFT_size);
+		adScratch = new double[FFT_size];
+	}
+
+	public VectorRadix4FFT(int FFT_size, FFTWindow oWindow)
+	{
+		super(FFT_size, oWindow);
+		final int order = checkPowerOfTwo(FFT_size);
+		iStageCount = order / 2;
+		bRadix2Stage = (order & 1) == 1;
+		adPlanarTwiddles = FFTTables.getPlanarRadix4Twiddles(FFT_size);
+		adTwiddles = FFTTables.getRadix4Twiddles(FFT_size);
+		adScratch = new double[FFT_size];
+	}
+
+	@Override
+	public void runFFT()
+	{
+		final double[] re = adRealData;
+		final double[] im = adImagData;
+		final int n = iFFT_size;
+		final int lanes = SPECIES.length();
+
+		int h = n >> 2;
+		for (int stage = 0; stage < iStageCount; stage++, h >>= 2)
+		{
+			if (h == 1)
+			{
+				radix4LastStage(re, im, n);
+				break;
+			}
+			if (h >= lanes)
+			{
+				vectorRadix4Stage(re, im, n, h, adPlanarTwiddles[stage]);
+			}
+			else
+			{
+				radix4Stage(re, im, n, h, adTwiddles[stage]);
+			}
+		}
+
+		if (bRadix2Stage)
+		{
+			radix2LastStage(re, im, n);
+		}
+	}
+
+	/**
+	 * Same as Radix4FFT.radix4Stage(), for h a multiple of the vector length.
+	 */
+	private static void vectorRadix4Stage(final double[] re, final double[] im, final int n, final int h,
+			final double[][] tw)
+	{
+		final int lanes = SPECIES.length();
+		final double[] w1r = tw[0];
+		final double[] w1i = tw[1];
+		final double[] w2r = tw[2];
+		final double[] w2i = tw[3];
+		final double[] w3r = tw[4];
+		final double[] w3i = tw[5];
+		final int blockSize = h << 2;
+		for (int block = 0; block < n; block += blockSize)
+		{
+			for (int j = 0; j < h; j += lanes)
+			{
+				final int i0 = block + j;
+				final int i1 = i0 + h;
+				final int i2 = i1 + h;
+				final int i3 = i2 + h;
+
+				final DoubleVector ar = DoubleVector.fromArray(SPECIES, re, i0);
+				final DoubleVector ai = DoubleVector.fromArray(SPECIES, im, i0);
+				final DoubleVector br = DoubleVector.fromArray(SPECIES, re, i1);
+				final DoubleVector bi = DoubleVector.fromArray(SPECIES, im, i1);
+				final DoubleVector cr = DoubleVector.fromArray(SPECIES, re, i2);
+				final DoubleVector ci = DoubleVector.fromArray(SPECIES, im, i2);
+				final DoubleVector dr = DoubleVector.fromArray(SPECIES, re, i3);
+				final DoubleVector di = DoubleVector.fromArray(SPECIES, im, i3);
+
+				final DoubleVector s0r = ar.add(cr);
+				final DoubleVector s0i = ai.add(ci);
+				final DoubleVector s1r = ar.sub(cr);
+				final DoubleVector s1i = ai.sub(ci);
+				final DoubleVector s2r = br.add(dr);
+				final DoubleVector s2i = bi.add(di);
+				final DoubleVector s3r = br.sub(dr);
+				final DoubleVector s3i = bi.sub(di);
+
+				// y0 = a+b+c+d
+				s0r.add(s2r).intoArray(re, i0);
+				s0i.add(s2i).intoArray(im, i0);
+
+				// y1 = (a+c-b-d) * W^2j
+				storeProduct(s0r.sub(s2r), s0i.sub(s2i), w2r, w2i, j, re, im, i1);
+
+				// y2 = (a-c - i(b-d)) * W^j
+				storeProduct(s1r.add(s3i), s1i.sub(s3r), w1r, w1i, j, re, im, i2);
+
+				// y3 = (a-c + i(b-d)) * W^3j
+				storeProduct(s1r.sub(s3i), s1i.add(s3r), w3r, w3i, j, re, im, i3);
+			}
+		}
+	}
+
+	private static void storeProduct(DoubleVector yr, DoubleVector yi, double[] wr, double[] wi, int j, double[] re,
+			double[] im, int index)
+	{
+		final DoubleVector vwr = DoubleVector.fromArray(SPECIES, wr, j);
+		final DoubleVector vwi = DoubleVector.fromArray(SPECIES, wi, j);
+		yr.mul(vwr).sub(yi.mul(vwi)).intoArray(re, index);
+		yr.mul(vwi).add(yi.mul(vwr)).intoArray(im, index);
+	}
+
+	private void applyWindow(double preFFTScalingFactor)
+	{
+		final double[] re = adRealData;
+		final double[] im = adImagData;
+		final double[] window = getWindowCoefficients();
+		final int bound = SPECIES.loopBound(iFFT_size);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+		{
+			final DoubleVector coefficient = DoubleVector.fromArray(SPECIES, window, i).mul(preFFTScalingFactor);
+			DoubleVector.fromArray(SPECIES, re, i).mul(coefficient).intoArray(re, i);
+			DoubleVector.fromArray(SPECIES, im, i).mul(coefficient).intoArray(im, i);
+		}
+		for (; i < iFFT_size; i++)
+		{
+			final double coefficient = window[i] * preFFTScalingFactor;
+			re[i] *= coefficient;
+			im[i] *= coefficient;
+		}
+	}
+
+	/**
+	 * Calculate the magnitude of each bin, in the order that the FFT left them, into adScratch.
+	 */
+	private void magnitudes()
+	{
+		final double[] re = adRealData;
+		final double[] im = adImagData;
+		final int bound = SPECIES.loopBound(iFFT_size);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+		{
+			final DoubleVector r = DoubleVector.fromArray(SPECIES, re, i);
+			final DoubleVector m = DoubleVector.fromArray(SPECIES, im, i);
+			r.mul(r).add(m.mul(m)).sqrt().intoArray(adScratch, i);
+		}
+		for (; i < iFFT_size; i++)
+		{
+			adScratch[i] = Math.sqrt(re[i] * re[i] + im[i] * im[i]);
+		}
+	}
+
+	@Override
+	public double[] calculateSpectra()
+	{
+		magnitudes();
+		final int[] aiPerm = getOutputPermutation();
+		for (int i = 0; i < iFFT_size; i++)
+		{
+			adSpectra[i] = adScratch[aiPerm[i]];
+		}
+		return adSpectra;
+	}
+
+	/**
+	 * Same as AbstractFFTEngine.calculate(double, double, double, float[]). In the POWER and FAST_POWER log modes, the
+	 * log is taken of the power with the vectorised log (which is already fast, so both modes use it). Bins whose power
+	 * underflows to zero get the same value as a magnitude of zero.
+	 */
+	@Override
+	public void calculate(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy, float[] output)
+	{
+		if (getLogMode() == LogMode.MAGNITUDE)
+		{
+			super.calculate(preFFTScalingFactor, postFFTScalingFactor, lostEnergy, output);
+			return;
+		}
+
+		applyWindow(preFFTScalingFactor);
+
+		runFFT();
+
+		final double[] re = adRealData;
+		final double[] im = adImagData;
+		final double halfPost = postFFTScalingFactor * 0.5;
+		final double floor = Math.log(Double.MIN_VALUE) * postFFTScalingFactor + lostEnergy;
+		final int bound = SPECIES.loopBound(iFFT_size);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+		{
+			final DoubleVector r = DoubleVector.fromArray(SPECIES, re, i);
+			final DoubleVector m = DoubleVector.fromArray(SPECIES, im, i);
+			final DoubleVector power = r.mul(r).add(m.mul(m));
+			final VectorMask<Double> zero = power.compare(VectorOperators.LE, 0);
+			power.lanewise(VectorOperators.LOG).mul(halfPost).add(lostEnergy).blend(floor, zero).intoArray(adScratch, i);
+		}
+		for (; i < iFFT_size; i++)
+		{
+			final double power = re[i] * re[i] + im[i] * im[i];
+			adScratch[i] = power <= 0 ? floor : Math.log(power) * halfPost + lostEnergy;
+		}
+
+		// re-order into bins, negative frequencies first, so that DC ends up in the centre
+		final int[] aiPerm = getOutputPermutation();
+		final int half = firstNegativeBin(iFFT_size);
+		for (int k = half, j = 0; k < iFFT_size; ++k, ++j)
+		{
+			output[j] = (float) adScratch[aiPerm[k]];
+		}
+		for (int k = 0, j = iFFT_size - half; k < half; ++k, ++j)
+		{
+			output[j] = (float) adScratch[aiPerm[k]];
+		}
+	}
+}
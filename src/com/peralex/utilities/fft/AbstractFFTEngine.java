@@ -0,0 +1,261 @@
+package com.peralex.utilities.fft;
+
+/**
+ * Contains the windowing and spectrum post-processing code common to the FFT engines.
+ * Subclasses only need to supply the transform itself.
+ */
+public abstract class AbstractFFTEngine implements IFFTEngine
+{
+	/**
+	 * Number of points in the FFT.
+	 */
+	protected final int iFFT_size;
+
+	/**
+	 * Array used to store real part of data.
+	 */
+	protected final double[] adRealData;
+
+	/**
+	 * Array used to store imag part of data.
+	 */
+	protected final double[] adImagData;
+
+	/**
+	 * Output array containing spectra of FFT.
+	 */
+	protected final double[] adSpectra;
+
+	/**
+	 * shared, see FFTWindow.
+	 */
+	private final double[] adWindow;
+
+	private final double[] fftResult;
+
+	private LogMode eLogMode = LogMode.MAGNITUDE;
+
+	protected AbstractFFTEngine(int FFT_size, boolean useBlackmanWindow)
+	{
+		this(FFT_size, FFTWindow.get(useBlackmanWindow ? FFTWindow.Type.BLACKMAN : FFTWindow.Type.RECTANGULAR,
+				checkSize(FFT_size)));
+	}
+
+	protected AbstractFFTEngine(int FFT_size, FFTWindow oWindow)
+	{
+		checkSize(FFT_size);
+		if (oWindow.getSize() != FFT_size)
+		{
+			throw new IllegalArgumentException("window size " + oWindow.getSize() + " differs from the FFT size " + FFT_size);
+		}
+		this.iFFT_size = FFT_size;
+		this.adRealData = new double[FFT_size];
+		this.adImagData = new double[FFT_size];
+		this.adSpectra = new double[FFT_size];
+		this.adWindow = oWindow.getCoefficients();
+		fftResult = new double[FFT_size];
+	}
+
+	private static int checkSize(int FFT_size)
+	{
+		if (FFT_size <= 0)
+		{
+			throw new IllegalArgumentException("FFT size must be positive. " + FFT_size);
+		}
+		return FFT_size;
+	}
+
+	/**
+	 * @return the base-2 logarithm of the FFT size
+	 * @throws IllegalArgumentException if the size is not a power of two
+	 */
+	static int checkPowerOfTwo(int FFT_size)
+	{
+		if (FFT_size <= 0 || Integer.bitCount(FFT_size) != 1)
+		{
+			throw new IllegalArgumentException("FFT size must be a power of 2. " + FFT_size);
+		}
+		return Integer.numberOfTrailingZeros(FFT_size);
+	}
+
+	public final int getFFT_size()
+	{
+		return iFFT_size;
+	}
+
+	/**
+	 * @return the shared window coefficients, do not modify.
+	 */
+	protected final double[] getWindowCoefficients()
+	{
+		return adWindow;
+	}
+
+	public double[] getImagBuffer()
+	{
+		return adImagData;
+	}
+
+	public double[] getRealBuffer()
+	{
+		return adRealData;
+	}
+
+	/**
+	 * Similar to calculate(double[] rdata, double[] idata), but rely on the external program to directly manipulate the
+	 * internal arrays to save the time on creating arrays and moving the data around.
+	 *
+	 * @return an array of spectrum data. This array will be reused for next calculation, in order to avoid the
+	 *         unnecessary array-creation. Hence, don't modify and/or store the resultant array; rather copy the values
+	 *         then process the copied values.
+	 */
+	public double[] calculate(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy)
+	{
+		preFFTProcess(preFFTScalingFactor);
+
+		runFFT();
+
+		final double[] spectra = logSpectra(postFFTScalingFactor, lostEnergy);
+
+		final int half = firstNegativeBin(spectra.length);
+
+		System.arraycopy(spectra, half, fftResult, 0, spectra.length - half);
+		System.arraycopy(spectra, 0, fftResult, spectra.length - half, half);
+
+		return fftResult;
+	}
+
+	/**
+	 * Same as calculate(double, double, double), but writes the result straight into a float array, which saves a copy
+	 * when the result is going to be displayed.
+	 *
+	 * @param output receives the N points of the spectrum, must be at least as long as the FFT size.
+	 */
+	public void calculate(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy, float[] output)
+	{
+		preFFTProcess(preFFTScalingFactor);
+
+		runFFT();
+
+		final double[] spectra = logSpectra(postFFTScalingFactor, lostEnergy);
+
+		// write the negative frequencies first, so that DC ends up in the centre
+		final int half = firstNegativeBin(spectra.length);
+		for (int i = half, j = 0; i < spectra.length; ++i, ++j)
+		{
+			output[j] = (float) spectra[i];
+		}
+		for (int i = 0, j = spectra.length - half; i < half; ++i, ++j)
+		{
+			output[j] = (float) spectra[i];
+		}
+	}
+
+	public void setLogMode(LogMode eLogMode)
+	{
+		if (eLogMode == null)
+		{
+			throw new IllegalArgumentException("log mode may not be null");
+		}
+		this.eLogMode = eLogMode;
+	}
+
+	public LogMode getLogMode()
+	{
+		return eLogMode;
+	}
+
+	/**
+	 * Convert the result of the FFT to a log-scaled spectrum, in natural bin order, according to the log mode.
+	 */
+	private double[] logSpectra(double postFFTScalingFactor, double lostEnergy)
+	{
+		if (eLogMode == LogMode.MAGNITUDE)
+		{
+			final double[] spectra = calculateSpectra();
+			for (int i = 0; i < spectra.length; ++i)
+			{
+				spectra[i] = logScale(spectra[i], postFFTScalingFactor, lostEnergy);
+			}
+			return spectra;
+		}
+
+		// log(m) = log(m^2)/2
+		final int[] aiPerm = getOutputPermutation();
+		final double floor = logScale(0, postFFTScalingFactor, lostEnergy);
+		if (eLogMode == LogMode.POWER)
+		{
+			final double factor = postFFTScalingFactor * 0.5;
+			for (int i = 0; i < iFFT_size; i++)
+			{
+				final int p = aiPerm[i];
+				final double power = adRealData[p] * adRealData[p] + adImagData[p] * adImagData[p];
+				adSpectra[i] = power <= 0 ? floor : Math.log(power) * factor + lostEnergy;
+			}
+		}
+		else
+		{
+			final double factor = postFFTScalingFactor * 0.5 * FastLog.LN_2;
+			for (int i = 0; i < iFFT_size; i++)
+			{
+				final int p = aiPerm[i];
+				final double power = adRealData[p] * adRealData[p] + adImagData[p] * adImagData[p];
+				adSpectra[i] = power <= 0 ? floor : FastLog.log2(power) * factor + lostEnergy;
+			}
+		}
+		return adSpectra;
+	}
+
+	static double logScale(double m, double postFFTScalingFactor, double lostEnergy)
+	{
+		if (m <= 0) // avoid zero, so the log of m won't be NaN
+		{
+			m = Double.MIN_VALUE;
+		}
+		return Math.log(m) * postFFTScalingFactor + lostEnergy;
+	}
+
+	/**
+	 * Apply the window and the scaling factor to the internal buffers. Package-private for FFTBenchmark.
+	 */
+	void preFFTProcess(double preFFTScalingFactor)
+	{
+		for (int i = 0, len = adRealData.length; i < len; ++i)
+		{
+			final double coefficient = adWindow[i] * preFFTScalingFactor;
+			adRealData[i] *= coefficient;
+			adImagData[i] *= coefficient;
+		}
+	}
+
+	/**
+	 * @return the index of the first bin that is displayed to the left of DC, i.e. N/2 for even sizes (the Nyquist bin
+	 *         is shown as a negative frequency, as it always has been), and (N+1)/2 for odd sizes.
+	 */
+	static int firstNegativeBin(int FFT_size)
+	{
+		return (FFT_size + 1) / 2;
+	}
+
+	/**
+	 * Calculate the spectra following an FFT calculation.
+	 *
+	 * @return the spectra of the FFT
+	 */
+	public double[] calculateSpectra()
+	{
+		final int[] aiPerm = getOutputPermutation();
+		for (int i = 0; i < iFFT_size; i++)
+		{
+			int p = aiPerm[i];
+
+			double real = adRealData[p];
+			double imaginary = adImagData[p];
+
+			// Calculate power magnitude
+			adSpectra[i] = Math.sqrt((real * real) + (imaginary * imaginary));
+		}
+
+		return adSpectra;
+	}
+}
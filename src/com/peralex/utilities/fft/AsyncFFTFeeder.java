@@ -0,0 +1,312 @@
+package com.peralex.utilities.fft;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Feeds an FFTGraph from a worker thread of it's own, so that the threads that produce the samples (typically network
+ * threads) never wait for the FFT, or for the graph.
+ *
+ * Producers call offer(), which copies the block into a bounded ring buffer and returns immediately. The worker takes
+ * blocks out of the ring in order and passes them to FFTGraph.computeFFT(). When the producers are faster than the
+ * worker, the ring fills up, and blocks are dropped according to the DropPolicy. Since the graph only ever displays the
+ * most recent spectrum that was handed to it, a backlog of spectra never builds up in the graph itself.
+ *
+ * The ring buffer is allocated up front, so offer() does not allocate.
+ */
+public class AsyncFFTFeeder
+{
+	private static final Logger logger = Logger.getLogger(AsyncFFTFeeder.class);
+
+	/**
+	 * What to do with a block when the ring is full.
+	 */
+	public enum DropPolicy
+	{
+		/** drop the oldest queued blocks to make space for the new block. Keeps the display as current as possible. */
+		OLDEST,
+		/** drop the new block. Keeps the queued blocks contiguous. */
+		NEWEST,
+		/**
+		 * drop every second block once the ring is more than half full, so that the display keeps moving at a reduced
+		 * rate, and drop the new block when the ring is full.
+		 */
+		DECIMATE
+	}
+
+	private final FFTGraph oGraph;
+
+	private final Thread oWorker;
+
+	private final Object oLock = new Object();
+
+	/**
+	 * interleaved (real, imaginary) values, guarded by oLock.
+	 */
+	private final short[] asRing;
+
+	private int iRingHead = 0;
+
+	private int iRingCount = 0;
+
+	/**
+	 * the length of each queued block, in values, guarded by oLock.
+	 */
+	private final int[] aiBlockLengths;
+
+	private int iBlockHead = 0;
+
+	private int iBlockCount = 0;
+
+	private volatile DropPolicy eDropPolicy;
+
+	private boolean bDecimateSkip = false;
+
+	private boolean bRunning = true;
+
+	private long lBlocksReceived = 0;
+
+	private long lBlocksProcessed = 0;
+
+	private long lBlocksDropped = 0;
+
+	/**
+	 * only used by the worker.
+	 */
+	private short[] asWork = new short[0];
+
+	/**
+	 * Creates the feeder and starts it's worker thread.
+	 *
+	 * @param iCapacity the size of the ring, in complex samples
+	 */
+	public AsyncFFTFeeder(FFTGraph oGraph, int iCapacity, DropPolicy eDropPolicy)
+	{
+		if (iCapacity < 1)
+		{
+			throw new IllegalArgumentException("capacity must be positive, " + iCapacity);
+		}
+		if (eDropPolicy == null)
+		{
+			throw new IllegalArgumentException("drop policy may not be null");
+		}
+		this.oGraph = oGraph;
+		this.eDropPolicy = eDropPolicy;
+		this.asRing = new short[2 * iCapacity];
+		this.aiBlockLengths = new int[iCapacity];
+		this.oWorker = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				workerLoop();
+			}
+		}, "AsyncFFTFeeder");
+		oWorker.setDaemon(true);
+		oWorker.start();
+	}
+
+	public void setDropPolicy(DropPolicy eDropPolicy)
+	{
+		if (eDropPolicy == null)
+		{
+			throw new IllegalArgumentException("drop policy may not be null");
+		}
+		this.eDropPolicy = eDropPolicy;
+	}
+
+	public DropPolicy getDropPolicy()
+	{
+		return eDropPolicy;
+	}
+
+	/**
+	 * @return the size of the ring, in complex samples
+	 */
+	public int getCapacity()
+	{
+		return asRing.length / 2;
+	}
+
+	/**
+	 * Queue a block for the FFT. Never blocks for longer than it takes to copy the block.
+	 *
+	 * @param input an array containing real and imaginary value alternating (ie, [real] [imag] [real] [imag]...)
+	 * @return false if the block was dropped
+	 */
+	public boolean offer(short[] input)
+	{
+		final int length = input.length;
+		if ((length % 2) == 1)
+		{
+			throw new IllegalArgumentException("the sample counts for the reals, differs from the counts for imaginaries");
+		}
+		synchronized (oLock)
+		{
+			lBlocksReceived++;
+			if (!bRunning || length == 0 || length > asRing.length)
+			{
+				lBlocksDropped++;
+				return false;
+			}
+
+			final DropPolicy dropPolicy = this.eDropPolicy;
+			if (dropPolicy == DropPolicy.DECIMATE && iRingCount > asRing.length / 2)
+			{
+				bDecimateSkip = !bDecimateSkip;
+				if (bDecimateSkip)
+				{
+					lBlocksDropped++;
+					return false;
+				}
+			}
+			if (asRing.length - iRingCount < length)
+			{
+				if (dropPolicy != DropPolicy.OLDEST)
+				{
+					lBlocksDropped++;
+					return false;
+				}
+				while (asRing.length - iRingCount < length)
+				{
+					removeOldestBlock();
+					lBlocksDropped++;
+				}
+			}
+
+			// copy in, in two parts if it wraps around the end of the ring
+			final int tail = (iRingHead + iRingCount) % asRing.length;
+			final int firstPart = Math.min(length, asRing.length - tail);
+			System.arraycopy(input, 0, asRing, tail, firstPart);
+			System.arraycopy(input, firstPart, asRing, 0, length - firstPart);
+			iRingCount += length;
+			aiBlockLengths[(iBlockHead + iBlockCount) % aiBlockLengths.length] = length;
+			iBlockCount++;
+
+			oLock.notifyAll();
+			return true;
+		}
+	}
+
+	/**
+	 * must be called with oLock held.
+	 *
+	 * @return the length of the block
+	 */
+	private int removeOldestBlock()
+	{
+		final int length = aiBlockLengths[iBlockHead];
+		iBlockHead = (iBlockHead + 1) % aiBlockLengths.length;
+		iBlockCount--;
+		iRingHead = (iRingHead + length) % asRing.length;
+		iRingCount -= length;
+		return length;
+	}
+
+	private void workerLoop()
+	{
+		while (true)
+		{
+			final short[] block;
+			synchronized (oLock)
+			{
+				while (bRunning && iBlockCount == 0)
+				{
+					try
+					{
+						oLock.wait();
+					}
+					catch (InterruptedException ex)
+					{
+						bRunning = false;
+					}
+				}
+				if (!bRunning)
+				{
+					return;
+				}
+				final int head = iRingHead;
+				final int length = removeOldestBlock();
+				// blocks are normally all the same size, so this hardly ever allocates
+				if (asWork.length != length)
+				{
+					asWork = new short[length];
+				}
+				block = asWork;
+				final int firstPart = Math.min(length, asRing.length - head);
+				System.arraycopy(asRing, head, block, 0, firstPart);
+				System.arraycopy(asRing, 0, block, firstPart, length - firstPart);
+			}
+
+			// the FFT and the graph update happen without holding the lock
+			try
+			{
+				oGraph.computeFFT(block);
+			}
+			catch (RuntimeException ex)
+			{
+				logger.error("FFT of queued block failed", ex);
+			}
+			synchronized (oLock)
+			{
+				lBlocksProcessed++;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of blocks waiting for the worker
+	 */
+	public int getQueuedBlocks()
+	{
+		synchronized (oLock)
+		{
+			return iBlockCount;
+		}
+	}
+
+	public long getBlocksReceived()
+	{
+		synchronized (oLock)
+		{
+			return lBlocksReceived;
+		}
+	}
+
+	public long getBlocksProcessed()
+	{
+		synchronized (oLock)
+		{
+			return lBlocksProcessed;
+		}
+	}
+
+	public long getBlocksDropped()
+	{
+		synchronized (oLock)
+		{
+			return lBlocksDropped;
+		}
+	}
+
+	public void resetCounters()
+	{
+		synchronized (oLock)
+		{
+			lBlocksReceived = 0;
+			lBlocksProcessed = 0;
+			lBlocksDropped = 0;
+		}
+	}
+
+	/**
+	 * Stop the worker thread. Blocks that are still queued are discarded, and blocks offered afterwards are dropped.
+	 */
+	public void shutdown()
+	{
+		synchronized (oLock)
+		{
+			bRunning = false;
+			lBlocksDropped += iBlockCount;
+			oLock.notifyAll();
+		}
+	}
+}
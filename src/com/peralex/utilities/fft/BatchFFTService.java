@@ -0,0 +1,264 @@
+package com.peralex.utilities.fft;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the spectra of many FFT frames at once, spread over the threads of a ForkJoinPool.
+ *
+ * The frames can come from one channel (consecutive frames in one sample array) or from many channels (one frame per
+ * channel). Every worker thread owns it's own FFT engine, so no buffers are shared between threads.
+ *
+ * The input format is the same as FFTGraph.computeFFT(), i.e. interleaved real and imaginary values. The output format
+ * is the same as IFFTEngine.calculate(), i.e. a log-scaled spectrum with DC in the centre.
+ */
+public class BatchFFTService
+{
+	private final int iFFT_size;
+
+	private final ForkJoinPool oPool;
+
+	/**
+	 * true if we created the pool, and are therefore responsible for shutting it down.
+	 */
+	private final boolean bOwnPool;
+
+	/**
+	 * one FFT engine per worker thread.
+	 */
+	private final ThreadLocal<IFFTEngine> oEngines;
+
+	private final Object statsLock = new Object();
+	private long lBatchCount = 0;
+	private long lLastBatchLatency_ns = 0;
+	private long lMaxBatchLatency_ns = 0;
+	private long lTotalBatchLatency_ns = 0;
+
+	/**
+	 * Creates a service with it's own pool, one thread per CPU.
+	 */
+	public BatchFFTService(int FFT_size, boolean useBlackmanWindow, IFFTEngineFactory engineFactory)
+	{
+		this(FFT_size, useBlackmanWindow, engineFactory, new ForkJoinPool(), true);
+	}
+
+	/**
+	 * Creates a service that runs on a shared pool. The pool is not shut down by shutdown().
+	 */
+	public BatchFFTService(int FFT_size, boolean useBlackmanWindow, IFFTEngineFactory engineFactory, ForkJoinPool oPool)
+	{
+		this(FFT_size, useBlackmanWindow, engineFactory, oPool, false);
+	}
+
+	private BatchFFTService(final int FFT_size, final boolean useBlackmanWindow, final IFFTEngineFactory engineFactory,
+			ForkJoinPool oPool, boolean bOwnPool)
+	{
+		this.iFFT_size = FFT_size;
+		this.oPool = oPool;
+		this.bOwnPool = bOwnPool;
+		// create one engine up front, so that we fail early if the size is not supported
+		final IFFTEngine oFirstEngine = engineFactory.createEngine(FFT_size, useBlackmanWindow);
+		this.oEngines = new ThreadLocal<IFFTEngine>()
+		{
+			private IFFTEngine oUnclaimedEngine = oFirstEngine;
+
+			@Override
+			protected synchronized IFFTEngine initialValue()
+			{
+				if (oUnclaimedEngine != null)
+				{
+					final IFFTEngine engine = oUnclaimedEngine;
+					oUnclaimedEngine = null;
+					return engine;
+				}
+				return engineFactory.createEngine(FFT_size, useBlackmanWindow);
+			}
+		};
+	}
+
+	public final int getFFT_size()
+	{
+		return iFFT_size;
+	}
+
+	/**
+	 * Compute one spectrum per frame, where each frame comes from a different channel.
+	 *
+	 * @param frames each array contains at least FFT_size interleaved (real, imaginary) samples
+	 * @param spectra receives the results, one array of at least FFT_size points per frame
+	 */
+	public void calculate(short[][] frames, float[][] spectra, double preFFTScalingFactor,
+			double postFFTScalingFactor, double lostEnergy)
+	{
+		if (frames.length != spectra.length)
+		{
+			throw new IllegalArgumentException("need one output array per frame, " + frames.length + "!=" + spectra.length);
+		}
+		for (short[] frame : frames)
+		{
+			checkFrameLength(frame.length);
+		}
+		final int[] offsets = new int[frames.length];
+		run(new FrameTask(frames, offsets, spectra, 0, frames.length, preFFTScalingFactor, postFFTScalingFactor,
+				lostEnergy));
+	}
+
+	/**
+	 * Compute one spectrum per frame, where the frames are consecutive blocks of one channel's samples.
+	 *
+	 * @param samples contains at least spectra.length * FFT_size interleaved (real, imaginary) samples
+	 * @param spectra receives the results, one array of at least FFT_size points per frame
+	 */
+	public void calculate(short[] samples, float[][] spectra, double preFFTScalingFactor, double postFFTScalingFactor,
+			double lostEnergy)
+	{
+		if (samples.length < spectra.length * iFFT_size * 2)
+		{
+			throw new IllegalArgumentException("not enough samples for " + spectra.length + " frames, " + samples.length);
+		}
+		final short[][] frames = new short[spectra.length][];
+		final int[] offsets = new int[spectra.length];
+		for (int i = 0; i < spectra.length; i++)
+		{
+			frames[i] = samples;
+			offsets[i] = i * iFFT_size * 2;
+		}
+		run(new FrameTask(frames, offsets, spectra, 0, spectra.length, preFFTScalingFactor, postFFTScalingFactor,
+				lostEnergy));
+	}
+
+	private void checkFrameLength(int frameLength)
+	{
+		if (frameLength < iFFT_size * 2)
+		{
+			throw new IllegalArgumentException("frame too short, need " + (iFFT_size * 2) + " values, got " + frameLength);
+		}
+	}
+
+	private void run(FrameTask task)
+	{
+		final long start = System.nanoTime();
+		oPool.invoke(task);
+		final long latency = System.nanoTime() - start;
+		synchronized (statsLock)
+		{
+			lBatchCount++;
+			lLastBatchLatency_ns = latency;
+			lMaxBatchLatency_ns = Math.max(lMaxBatchLatency_ns, latency);
+			lTotalBatchLatency_ns += latency;
+		}
+	}
+
+	/**
+	 * Splits a range of frames in half until there is only one left, which is then calculated.
+	 */
+	private final class FrameTask extends RecursiveAction
+	{
+		private final short[][] frames;
+		private final int[] offsets;
+		private final float[][] spectra;
+		private final int from;
+		private final int to;
+		private final double preFFTScalingFactor;
+		private final double postFFTScalingFactor;
+		private final double lostEnergy;
+
+		FrameTask(short[][] frames, int[] offsets, float[][] spectra, int from, int to, double preFFTScalingFactor,
+				double postFFTScalingFactor, double lostEnergy)
+		{
+			this.frames = frames;
+			this.offsets = offsets;
+			this.spectra = spectra;
+			this.from = from;
+			this.to = to;
+			this.preFFTScalingFactor = preFFTScalingFactor;
+			this.postFFTScalingFactor = postFFTScalingFactor;
+			this.lostEnergy = lostEnergy;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1)
+			{
+				final int mid = (from + to) >>> 1;
+				invokeAll(new FrameTask(frames, offsets, spectra, from, mid, preFFTScalingFactor, postFFTScalingFactor,
+						lostEnergy), new FrameTask(frames, offsets, spectra, mid, to, preFFTScalingFactor,
+						postFFTScalingFactor, lostEnergy));
+				return;
+			}
+			if (to == from)
+			{
+				return;
+			}
+
+			final IFFTEngine engine = oEngines.get();
+			final double[] re = engine.getRealBuffer();
+			final double[] im = engine.getImagBuffer();
+			final short[] input = frames[from];
+			for (int i = 0, index = offsets[from]; i < iFFT_size; i++, index += 2)
+			{
+				re[i] = input[index];
+				im[i] = input[index + 1];
+			}
+			engine.calculate(preFFTScalingFactor, postFFTScalingFactor, lostEnergy, spectra[from]);
+		}
+	}
+
+	/**
+	 * @return the wall-clock time taken by the most recent batch.
+	 */
+	public long getLastBatchLatency_ns()
+	{
+		synchronized (statsLock)
+		{
+			return lLastBatchLatency_ns;
+		}
+	}
+
+	public long getMaxBatchLatency_ns()
+	{
+		synchronized (statsLock)
+		{
+			return lMaxBatchLatency_ns;
+		}
+	}
+
+	public long getAverageBatchLatency_ns()
+	{
+		synchronized (statsLock)
+		{
+			return lBatchCount == 0 ? 0 : lTotalBatchLatency_ns / lBatchCount;
+		}
+	}
+
+	public long getBatchCount()
+	{
+		synchronized (statsLock)
+		{
+			return lBatchCount;
+		}
+	}
+
+	public void resetStatistics()
+	{
+		synchronized (statsLock)
+		{
+			lBatchCount = 0;
+			lLastBatchLatency_ns = 0;
+			lMaxBatchLatency_ns = 0;
+			lTotalBatchLatency_ns = 0;
+		}
+	}
+
+	/**
+	 * Shut down the pool, if this service created it.
+	 */
+	public void shutdown()
+	{
+		if (bOwnPool)
+		{
+			oPool.shutdown();
+		}
+	}
+}
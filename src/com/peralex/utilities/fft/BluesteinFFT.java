@@ -0,0 +1,194 @@
+package com.peralex.utilities.fft;
+
+import java.util.Arrays;
+
+/**
+ * Bluestein's chirp-z FFT, which handles any size (including primes) by expressing the DFT as a convolution, which is
+ * then done with power-of-two Radix4FFTs of at least 2N-1 points.
+ *
+ * This is roughly 3 to 6 times slower than a power-of-two FFT of similar size, so MixedRadixFFT should be preferred for
+ * sizes that only have factors of 2, 3 and 5. The chirp and the transformed convolution filter of each size are
+ * computed once and shared, see FFTTables.getBluesteinPlan().
+ *
+ * The output is in natural order.
+ */
+public class BluesteinFFT extends AbstractFFTEngine
+{
+	public static final IFFTEngineFactory FACTORY = new IFFTEngineFactory()
+	{
+		public IFFTEngine createEngine(int FFT_size, boolean useBlackmanWindow)
+		{
+			return new BluesteinFFT(FFT_size, useBlackmanWindow);
+		}
+	};
+
+	private final Plan oPlan;
+
+	/**
+	 * does the convolution.
+	 */
+	private final Radix4FFT oConvolutionFFT;
+
+	/**
+	 * used to re-order the product of the spectra before the inverse transform.
+	 */
+	private final double[] adScratchReal;
+
+	private final double[] adScratchImag;
+
+	public BluesteinFFT(int FFT_size, boolean useBlackmanWindow)
+	{
+		super(FFT_size, useBlackmanWindow);
+		oPlan = FFTTables.getBluesteinPlan(FFT_size);
+		oConvolutionFFT = new Radix4FFT(oPlan.iConvolutionSize, false);
+		adScratchReal = new double[oPlan.iConvolutionSize];
+		adScratchImag = new double[oPlan.iConvolutionSize];
+	}
+
+	public BluesteinFFT(int FFT_size, FFTWindow oWindow)
+	{
+		super(FFT_size, oWindow);
+		oPlan = FFTTables.getBluesteinPlan(FFT_size);
+		oConvolutionFFT = new Radix4FFT(oPlan.iConvolutionSize, false);
+		adScratchReal = new double[oPlan.iConvolutionSize];
+		adScratchImag = new double[oPlan.iConvolutionSize];
+	}
+
+	/**
+	 * The output of this FFT is in natural order.
+	 */
+	public int[] getOutputPermutation()
+	{
+		return oPlan.aiPermLUT;
+	}
+
+	public void runFFT()
+	{
+		final int n = iFFT_size;
+		final int m = oPlan.iConvolutionSize;
+		final double[] chirp = oPlan.adChirp;
+		final double[] filterRe = oPlan.adFilterReal;
+		final double[] filterIm = oPlan.adFilterImag;
+		final double[] cr = oConvolutionFFT.getRealBuffer();
+		final double[] ci = oConvolutionFFT.getImagBuffer();
+		final int[] aiPerm = oConvolutionFFT.getOutputPermutation();
+
+		// a[k] = x[k] * w[k], zero-padded
+		for (int k = 0, t = 0; k < n; k++, t += 2)
+		{
+			final double xr = adRealData[k];
+			final double xi = adImagData[k];
+			cr[k] = xr * chirp[t] - xi * chirp[t + 1];
+			ci[k] = xr * chirp[t + 1] + xi * chirp[t];
+		}
+		Arrays.fill(cr, n, m, 0);
+		Arrays.fill(ci, n, m, 0);
+
+		oConvolutionFFT.runFFT();
+
+		/*
+		 * Multiply by the filter, which is stored in the same (bit-reversed) order as the FFT output. Then put the product
+		 * back into natural order, conjugated, so that a forward FFT does the inverse transform.
+		 */
+		for (int k = 0; k < m; k++)
+		{
+			final int p = aiPerm[k];
+			final double ar = cr[p];
+			final double ai = ci[p];
+			adScratchReal[k] = ar * filterRe[p] - ai * filterIm[p];
+			adScratchImag[k] = -(ar * filterIm[p] + ai * filterRe[p]);
+		}
+		System.arraycopy(adScratchReal, 0, cr, 0, m);
+		System.arraycopy(adScratchImag, 0, ci, 0, m);
+
+		oConvolutionFFT.runFFT();
+
+		// X[k] = w[k] * conj(c[k]), the 1/M of the inverse transform is already in the filter
+		for (int k = 0, t = 0; k < n; k++, t += 2)
+		{
+			final int p = aiPerm[k];
+			final double yr = cr[p];
+			final double yi = -ci[p];
+			adRealData[k] = yr * chirp[t] - yi * chirp[t + 1];
+			adImagData[k] = yr * chirp[t + 1] + yi * chirp[t];
+		}
+	}
+
+	/**
+	 * Everything about a size that does not change between transforms. Immutable, and shared between engines.
+	 */
+	static final class Plan
+	{
+		/**
+		 * the power-of-two size of the convolution, at least 2N-1.
+		 */
+		final int iConvolutionSize;
+
+		/**
+		 * w[k] = e^(-i*pi*k^2/N) for k=0..N-1, stored interleaved as (re,im).
+		 */
+		final double[] adChirp;
+
+		/**
+		 * The FFT of conj(w[k]) for k=-(N-1)..N-1 (wrapped around), divided by the convolution size. Stored in the output
+		 * order of Radix4FFT.
+		 */
+		final double[] adFilterReal;
+
+		final double[] adFilterImag;
+
+		/**
+		 * the output is in natural order.
+		 */
+		final int[] aiPermLUT;
+
+		Plan(int FFT_size)
+		{
+			if (FFT_size <= 0)
+			{
+				throw new IllegalArgumentException("FFT size must be positive. " + FFT_size);
+			}
+			int m = 4;
+			while (m < 2 * FFT_size - 1)
+			{
+				m <<= 1;
+			}
+			iConvolutionSize = m;
+
+			adChirp = new double[2 * FFT_size];
+			final long period = 2L * FFT_size;
+			for (int k = 0; k < FFT_size; k++)
+			{
+				// k^2 mod 2N, so that we don't lose precision for large k
+				final double theta = -Math.PI * (((long) k * k) % period) / FFT_size;
+				adChirp[2 * k] = Math.cos(theta);
+				adChirp[2 * k + 1] = Math.sin(theta);
+			}
+
+			final Radix4FFT fft = new Radix4FFT(m, false);
+			final double[] re = fft.getRealBuffer();
+			final double[] im = fft.getImagBuffer();
+			re[0] = adChirp[0];
+			im[0] = -adChirp[1];
+			for (int k = 1; k < FFT_size; k++)
+			{
+				re[k] = re[m - k] = adChirp[2 * k];
+				im[k] = im[m - k] = -adChirp[2 * k + 1];
+			}
+			fft.runFFT();
+			adFilterReal = new double[m];
+			adFilterImag = new double[m];
+			for (int i = 0; i < m; i++)
+			{
+				adFilterReal[i] = re[i] / m;
+				adFilterImag[i] = im[i] / m;
+			}
+
+			aiPermLUT = new int[FFT_size];
+			for (int k = 0; k < FFT_size; k++)
+			{
+				aiPermLUT[k] = k;
+			}
+		}
+	}
+}
@@ -0,0 +1,385 @@
+package com.peralex.utilities.fft;
+
+import java.util.Arrays;
+
+import com.peralex.sharedlibs.dsphostl.TimeStamp;
+import com.peralex.utilities.ui.graphs.waterfallGraph.AmplitudeDetectionWaterfallGraph;
+
+/**
+ * A constant-false-alarm-rate detector, which compares each bin of a spectrum against the noise level estimated from
+ * the bins around it (the training cells), skipping the bins right next to it (the guard cells) so that a signal does
+ * not raise it's own threshold.
+ *
+ * In CELL_AVERAGING mode, the noise level is the mean power of the training cells, which is kept as a running sum, so
+ * the cost per bin does not depend on the number of training cells. ORDERED_STATISTIC mode uses a chosen percentile of
+ * the training cells instead, which is not pulled up by strong neighbouring signals, and keeps the training cells in a
+ * sorted window, which costs more per bin (see Mode.ORDERED_STATISTIC).
+ *
+ * At the edges of the spectrum, only the training cells on the one side are used.
+ *
+ * The output is in the format of AmplitudeDetectionWaterfallGraph.setDetectionData(), i.e. the level of the bin in
+ * hundredths of a dBm where a signal is detected, and NOT_DETECTED elsewhere.
+ *
+ * Not thread-safe, spectra must be fed in from one thread.
+ */
+public class CFARDetector
+{
+	public enum Mode
+	{
+		/** noise level is the mean of the training cells. O(1) per bin. */
+		CELL_AVERAGING,
+		/**
+		 * noise level is a percentile of the training cells. O(training cells) per bin: each bin moves up to 2*training
+		 * cells values along the sorted window. From 64 training cells on, the positions are found with a binary search and
+		 * the values moved with System.arraycopy(), below that a linear scan is faster.
+		 */
+		ORDERED_STATISTIC
+	}
+
+	/**
+	 * the value of a bin in which nothing was detected.
+	 */
+	public static final short NOT_DETECTED = -32767;
+
+	private static final double DB_TO_NEPER = Math.log(10) / 10;
+
+	/**
+	 * below this many cells in the window, a linear scan is faster than a binary search, whose branches can't be
+	 * predicted on noise.
+	 */
+	private static final int BINARY_SEARCH_CELLS = 128;
+
+	private final Mode eMode;
+
+	private final int iTrainingCells;
+
+	private final int iGuardCells;
+
+	/**
+	 * how far above the noise level a bin must be, as a power ratio.
+	 */
+	private double dThresholdFactor;
+
+	private double dThreshold_dB;
+
+	private double dOrderStatistic = 0.75;
+
+	/**
+	 * the spectrum as linear power, and it's running sum, re-used between frames.
+	 */
+	private double[] adPower = new double[0];
+
+	private double[] adPrefixSum = new double[1];
+
+	/**
+	 * the sorted training cells, for ORDERED_STATISTIC mode.
+	 */
+	private final double[] adWindow;
+
+	private int iWindowCount;
+
+	private AmplitudeDetectionWaterfallGraph oGraph;
+
+	private long lFirstBinFrequency_Hz;
+
+	private long lFrequencyResolution_cHz;
+
+	private SignalEventTracker oEventTracker;
+
+	/**
+	 * @param iTrainingCells the number of training cells on either side of the bin
+	 * @param iGuardCells the number of guard cells on either side of the bin
+	 * @param dThreshold_dB how far above the noise level a bin must be to count as a detection
+	 */
+	public CFARDetector(Mode eMode, int iTrainingCells, int iGuardCells, double dThreshold_dB)
+	{
+		if (iTrainingCells < 1)
+		{
+			throw new IllegalArgumentException("need at least one training cell, " + iTrainingCells);
+		}
+		if (iGuardCells < 0)
+		{
+			throw new IllegalArgumentException("guard cells may not be negative, " + iGuardCells);
+		}
+		this.eMode = eMode;
+		this.iTrainingCells = iTrainingCells;
+		this.iGuardCells = iGuardCells;
+		this.adWindow = new double[2 * iTrainingCells];
+		setThreshold_dB(dThreshold_dB);
+	}
+
+	public Mode getMode()
+	{
+		return eMode;
+	}
+
+	public int getTrainingCells()
+	{
+		return iTrainingCells;
+	}
+
+	public int getGuardCells()
+	{
+		return iGuardCells;
+	}
+
+	public void setThreshold_dB(double dThreshold_dB)
+	{
+		this.dThreshold_dB = dThreshold_dB;
+		this.dThresholdFactor = Math.exp(dThreshold_dB * DB_TO_NEPER);
+	}
+
+	public double getThreshold_dB()
+	{
+		return dThreshold_dB;
+	}
+
+	/**
+	 * The percentile does not change the cost, which in ORDERED_STATISTIC mode is O(training cells) per bin, see
+	 * Mode.ORDERED_STATISTIC.
+	 * 
+	 * @param dOrderStatistic the percentile of the training cells used as the noise level in ORDERED_STATISTIC mode, 0
+	 *          to 1. Defaults to 0.75.
+	 */
+	public void setOrderStatistic(double dOrderStatistic)
+	{
+		if (dOrderStatistic < 0 || dOrderStatistic > 1)
+		{
+			throw new IllegalArgumentException("order statistic must be between 0 and 1, " + dOrderStatistic);
+		}
+		this.dOrderStatistic = dOrderStatistic;
+	}
+
+	public double getOrderStatistic()
+	{
+		return dOrderStatistic;
+	}
+
+	/**
+	 * Send the detections of process() to the detection overlay of a waterfall.
+	 *
+	 * @param oGraph null to only set the frequencies
+	 * @param lFirstBinFrequency_Hz the frequency of the first bin of the spectra
+	 * @param lFrequencyResolution_cHz the bin spacing, in hundredths of a Hz
+	 */
+	public void setWaterfallGraph(AmplitudeDetectionWaterfallGraph oGraph, long lFirstBinFrequency_Hz,
+			long lFrequencyResolution_cHz)
+	{
+		this.oGraph = oGraph;
+		this.lFirstBinFrequency_Hz = lFirstBinFrequency_Hz;
+		this.lFrequencyResolution_cHz = lFrequencyResolution_cHz;
+	}
+
+	/**
+	 * Send the detections of process() to a tracker, to be grouped into signal events. The frequencies are those set by
+	 * setWaterfallGraph().
+	 *
+	 * @param oEventTracker null to stop
+	 */
+	public void setEventTracker(SignalEventTracker oEventTracker)
+	{
+		this.oEventTracker = oEventTracker;
+	}
+
+	/**
+	 * Detect the signals in a spectrum, and send them to the waterfall and the event tracker, if there are any. Must be called before the
+	 * spectrum's amplitude data is passed to the waterfall, because that is when the waterfall draws the detections.
+	 *
+	 * @param afSpectrum_dBm e.g. the output of IFFTEngine.calculate()
+	 * @return the number of bins in which a signal was detected
+	 */
+	public int process(TimeStamp oTimeStamp, float[] afSpectrum_dBm)
+	{
+		// the waterfall keeps the array until the next call, so it needs a new one every time
+		final short[] detections = new short[afSpectrum_dBm.length];
+		final int count = detect(afSpectrum_dBm, detections);
+		final AmplitudeDetectionWaterfallGraph graph = oGraph;
+		if (graph != null)
+		{
+			graph.setDetectionData(oTimeStamp.getTime_msec(), (short) oTimeStamp.getTime_usec(), lFirstBinFrequency_Hz,
+					lFrequencyResolution_cHz, detections);
+		}
+		final SignalEventTracker tracker = oEventTracker;
+		if (tracker != null)
+		{
+			tracker.process(oTimeStamp, lFirstBinFrequency_Hz, lFrequencyResolution_cHz, detections);
+		}
+		return count;
+	}
+
+	/**
+	 * Detect the signals in a spectrum.
+	 *
+	 * @param afSpectrum_dBm e.g. the output of IFFTEngine.calculate()
+	 * @param awDetection_cdBm receives the level of the detected bins in hundredths of a dBm, and NOT_DETECTED for the
+	 *          others. Must be at least as long as the spectrum.
+	 * @return the number of bins in which a signal was detected
+	 */
+	public int detect(float[] afSpectrum_dBm, short[] awDetection_cdBm)
+	{
+		final int n = afSpectrum_dBm.length;
+		if (adPower.length != n)
+		{
+			adPower = new double[n];
+			adPrefixSum = new double[n + 1];
+		}
+		final double[] power = adPower;
+		for (int i = 0; i < n; i++)
+		{
+			// a NaN bin counts as no power, so that it is never detected, and does not upset the running sum or the sorted
+			// window
+			final float level_dBm = afSpectrum_dBm[i];
+			power[i] = Float.isNaN(level_dBm) ? 0 : Math.exp(level_dBm * DB_TO_NEPER);
+		}
+
+		if (eMode == Mode.CELL_AVERAGING)
+		{
+			final double[] prefix = adPrefixSum;
+			for (int i = 0; i < n; i++)
+			{
+				prefix[i + 1] = prefix[i] + power[i];
+			}
+		}
+		else
+		{
+			iWindowCount = 0;
+			// the right-hand training cells of bin 0, the left-hand side is empty
+			for (int j = iGuardCells + 1; j <= iGuardCells + iTrainingCells && j < n; j++)
+			{
+				insert(power[j]);
+			}
+		}
+
+		int detected = 0;
+		for (int i = 0; i < n; i++)
+		{
+			final double noise = eMode == Mode.CELL_AVERAGING ? cellAverage(i, n) : orderedStatistic(i, n);
+			if (noise > 0 && power[i] > noise * dThresholdFactor)
+			{
+				awDetection_cdBm[i] = toCentiDecibels(afSpectrum_dBm[i]);
+				detected++;
+			}
+			else
+			{
+				awDetection_cdBm[i] = NOT_DETECTED;
+			}
+		}
+		return detected;
+	}
+
+	private static short toCentiDecibels(float fLevel_dBm)
+	{
+		return (short) Math.max(NOT_DETECTED + 1, Math.min(Short.MAX_VALUE, Math.round(fLevel_dBm * 100)));
+	}
+
+	/**
+	 * @return the mean power of the training cells of bin i
+	 */
+	private double cellAverage(int i, int n)
+	{
+		final double[] prefix = adPrefixSum;
+		final int leftEnd = Math.max(0, i - iGuardCells);
+		final int leftStart = Math.max(0, i - iGuardCells - iTrainingCells);
+		final int rightStart = Math.min(n, i + iGuardCells + 1);
+		final int rightEnd = Math.min(n, i + iGuardCells + iTrainingCells + 1);
+		final int count = (leftEnd - leftStart) + (rightEnd - rightStart);
+		if (count == 0)
+		{
+			return 0;
+		}
+		final double sum = (prefix[leftEnd] - prefix[leftStart]) + (prefix[rightEnd] - prefix[rightStart]);
+		return sum / count;
+	}
+
+	/**
+	 * Slide the window to bin i, and return the chosen percentile of it.
+	 */
+	private double orderedStatistic(int i, int n)
+	{
+		final double[] power = adPower;
+		if (i > 0)
+		{
+			// the left-hand window loses it's oldest cell, and gains the cell that the guard cells have moved off. The right-hand
+			// window loses the cell that the guard cells have moved onto, and gains a new one. Removing first keeps the window
+			// within it's capacity.
+			final int leftIn = i - iGuardCells - 1;
+			final int leftOut = leftIn - iTrainingCells;
+			final int rightOut = i + iGuardCells;
+			final int rightIn = rightOut + iTrainingCells;
+			if (leftOut >= 0)
+			{
+				remove(power[leftOut]);
+			}
+			if (rightOut < n)
+			{
+				remove(power[rightOut]);
+			}
+			if (leftIn >= 0)
+			{
+				insert(power[leftIn]);
+			}
+			if (rightIn < n)
+			{
+				insert(power[rightIn]);
+			}
+		}
+		if (iWindowCount == 0)
+		{
+			return 0;
+		}
+		return adWindow[(int) (dOrderStatistic * (iWindowCount - 1))];
+	}
+
+	private void insert(double value)
+	{
+		final double[] window = adWindow;
+		final int count = iWindowCount;
+		if (count < BINARY_SEARCH_CELLS)
+		{
+			int j = count;
+			while (j > 0 && window[j - 1] > value)
+			{
+				window[j] = window[j - 1];
+				j--;
+			}
+			window[j] = value;
+		}
+		else
+		{
+			int j = Arrays.binarySearch(window, 0, count, value);
+			if (j < 0)
+			{
+				j = -j - 1;
+			}
+			System.arraycopy(window, j, window, j + 1, count - j);
+			window[j] = value;
+		}
+		iWindowCount = count + 1;
+	}
+
+	private void remove(double value)
+	{
+		final double[] window = adWindow;
+		final int count = iWindowCount - 1;
+		int j;
+		if (count < BINARY_SEARCH_CELLS)
+		{
+			j = 0;
+			while (j < count && window[j] != value)
+			{
+				j++;
+			}
+		}
+		else
+		{
+			j = Arrays.binarySearch(window, 0, count + 1, value);
+			if (j < 0)
+			{
+				// can't happen, the powers are never NaN, but stay within the window
+				j = Math.min(-j - 1, count);
+			}
+		}
+		System.arraycopy(window, j + 1, window, j, count - j);
+		iWindowCount = count;
+	}
+}
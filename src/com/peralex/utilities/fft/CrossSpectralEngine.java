@@ -0,0 +1,615 @@
+package com.peralex.utilities.fft;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.peralex.sharedlibs.dsphostl.TimeStamp;
+import com.peralex.utilities.ui.graphs.polarGraph.PolarDirectionGraph;
+import com.peralex.utilities.ui.graphs.waterfallGraph.AmplitudeDetectionWaterfallGraph;
+
+/**
+ * Calculates the averaged cross-spectral density matrix of N coherent channels, one matrix per FFT bin, and from that,
+ * the bearing of the signal in each bin.
+ *
+ * The FFTs are done one channel per task, and the matrix and the bearings a range of bins per task, on a ForkJoinPool,
+ * same as BatchFFTService. The spectra are stored bin-major (all of the channels of a bin next to each other), so that
+ * the per-bin work runs through memory in order.
+ *
+ * The matrix is Hermitian, so only the upper triangle is kept. The bearings come from a Bartlett (delay-and-sum) scan
+ * in one degree steps, using the array geometry passed to setArrayGeometry(). The array is assumed to be narrowband,
+ * i.e. the steering vectors at the centre frequency are used for all bins. A signal arriving from bearing theta is taken
+ * to reach antenna n with a phase of e^(i*2*pi*(x*sin(theta) + y*cos(theta))/lambda), where (x,y) is the position of
+ * the antenna, with y pointing north.
+ *
+ * Bins are kept in display order, i.e. negative frequencies first, with DC in the centre.
+ */
+public class CrossSpectralEngine
+{
+	private static final double SPEED_OF_LIGHT_m_s = 299792458.0;
+
+	/**
+	 * the amplitude passed to the waterfall for bins without a result.
+	 */
+	private static final short NO_DATA_cdBm = Short.MIN_VALUE;
+
+	/**
+	 * the smallest number of bins that is worth handing to a task of it's own.
+	 */
+	private static final int BINS_PER_TASK = 64;
+
+	private static final int STAGE_FFT = 0;
+
+	private static final int STAGE_ACCUMULATE = 1;
+
+	private static final int STAGE_BEARINGS = 2;
+
+	private final int iChannelCount;
+
+	private final int iFFT_size;
+
+	/**
+	 * N*(N+1)/2, the number of entries in the upper triangle of the matrix.
+	 */
+	private final int iPairCount;
+
+	private final IFFTEngine[] aoEngines;
+
+	private final double[] adWindow;
+
+	private final ForkJoinPool oPool;
+
+	private final boolean bOwnPool;
+
+	/**
+	 * X[bin][channel], interleaved (re,im).
+	 */
+	private final double[] adSpectra;
+
+	/**
+	 * R[bin][pair], interleaved (re,im), pairs (m,n) with m<=n in row order.
+	 */
+	private final double[] adMatrix;
+
+	/**
+	 * the frame that the FFT stage is working on.
+	 */
+	private short[][] asFrames;
+
+	private double dAveragingFactor = 0.1;
+
+	private int iFramesAveraged = 0;
+
+	private int iFramesPerOutput = 1;
+
+	private int iFramesSinceOutput = 0;
+
+	/** time of the last line sent to the waterfall graph, in microseconds */
+	private long lLastOutput_us = Long.MIN_VALUE;
+
+	/**
+	 * Null until the geometry has been set. Replaced as a whole by setArrayGeometry(), so that a scan running on the pool
+	 * threads always sees a matching pair of tables.
+	 */
+	private volatile SteeringTables oSteering;
+
+	private double dPreScalingFactor = 1.0;
+
+	private double dPostScalingFactor = 1.0;
+
+	private double dLostEnergy = 0;
+
+	private double dThreshold_dBm = Double.NEGATIVE_INFINITY;
+
+	private final short[] awAzimuth_cdeg;
+
+	private final short[] awAmplitude_cdBm;
+
+	/**
+	 * the power in each bin, weighted into the bearing histogram.
+	 */
+	private final double[] adBinPower;
+
+	private final int[] aiDirection = new int[360];
+
+	private PolarDirectionGraph oPolarGraph;
+
+	private AmplitudeDetectionWaterfallGraph oWaterfallGraph;
+
+	/**
+	 * Creates an engine with it's own pool, one thread per CPU.
+	 */
+	public CrossSpectralEngine(int iChannelCount, int FFT_size, IFFTEngineFactory engineFactory)
+	{
+		this(iChannelCount, FFT_size, engineFactory, new ForkJoinPool(), true);
+	}
+
+	/**
+	 * Creates an engine that runs on a shared pool. The pool is not shut down by shutdown().
+	 */
+	public CrossSpectralEngine(int iChannelCount, int FFT_size, IFFTEngineFactory engineFactory, ForkJoinPool oPool)
+	{
+		this(iChannelCount, FFT_size, engineFactory, oPool, false);
+	}
+
+	private CrossSpectralEngine(int iChannelCount, int FFT_size, IFFTEngineFactory engineFactory, ForkJoinPool oPool,
+			boolean bOwnPool)
+	{
+		if (iChannelCount < 2)
+		{
+			throw new IllegalArgumentException("need at least 2 channels, " + iChannelCount);
+		}
+		this.iChannelCount = iChannelCount;
+		this.iFFT_size = FFT_size;
+		this.iPairCount = iChannelCount * (iChannelCount + 1) / 2;
+		this.oPool = oPool;
+		this.bOwnPool = bOwnPool;
+		this.aoEngines = new IFFTEngine[iChannelCount];
+		for (int i = 0; i < iChannelCount; i++)
+		{
+			aoEngines[i] = engineFactory.createEngine(FFT_size, false);
+		}
+		this.adWindow = FFTWindow.get(FFTWindow.Type.BLACKMAN, FFT_size).getCoefficients();
+		this.adSpectra = new double[2 * FFT_size * iChannelCount];
+		this.adMatrix = new double[2 * FFT_size * iPairCount];
+		this.awAzimuth_cdeg = new short[FFT_size];
+		this.awAmplitude_cdBm = new short[FFT_size];
+		this.adBinPower = new double[FFT_size];
+	}
+
+	public final int getFFT_size()
+	{
+		return iFFT_size;
+	}
+
+	public int getChannelCount()
+	{
+		return iChannelCount;
+	}
+
+	/**
+	 * @param x_m the east position of each antenna, in metres
+	 * @param y_m the north position of each antenna, in metres
+	 * @param dCentreFrequency_Hz the RF frequency of the centre of the band
+	 */
+	public void setArrayGeometry(double[] x_m, double[] y_m, double dCentreFrequency_Hz)
+	{
+		if (x_m.length != iChannelCount || y_m.length != iChannelCount)
+		{
+			throw new IllegalArgumentException("need one position per channel, " + x_m.length + "," + y_m.length);
+		}
+		final double k = 2 * Math.PI * dCentreFrequency_Hz / SPEED_OF_LIGHT_m_s;
+		final int crossPairs = iChannelCount * (iChannelCount - 1) / 2;
+		final double[][] steeringCos = new double[360][crossPairs];
+		final double[][] steeringSin = new double[360][crossPairs];
+		for (int deg = 0; deg < 360; deg++)
+		{
+			final double theta = Math.toRadians(deg);
+			final double ux = Math.sin(theta);
+			final double uy = Math.cos(theta);
+			int pair = 0;
+			for (int m = 0; m < iChannelCount; m++)
+			{
+				for (int n = m + 1; n < iChannelCount; n++, pair++)
+				{
+					final double phase = k * ((x_m[m] - x_m[n]) * ux + (y_m[m] - y_m[n]) * uy);
+					steeringCos[deg][pair] = Math.cos(phase);
+					steeringSin[deg][pair] = Math.sin(phase);
+				}
+			}
+		}
+		this.oSteering = new SteeringTables(steeringCos, steeringSin);
+	}
+
+	/**
+	 * @param iFrames the time constant of the exponential average, in frames. Until that many frames have been seen,
+	 *          the average is a plain mean.
+	 */
+	public void setAveraging(int iFrames)
+	{
+		if (iFrames < 1)
+		{
+			throw new IllegalArgumentException("frames must be at least 1, " + iFrames);
+		}
+		this.dAveragingFactor = 1.0 / iFrames;
+	}
+
+	/**
+	 * @param iFramesPerOutput the number of frames between updates of the graphs
+	 */
+	public void setFramesPerOutput(int iFramesPerOutput)
+	{
+		if (iFramesPerOutput < 1)
+		{
+			throw new IllegalArgumentException("frames per output must be at least 1, " + iFramesPerOutput);
+		}
+		this.iFramesPerOutput = iFramesPerOutput;
+	}
+
+	/**
+	 * Same parameters as IFFTEngine.calculate(), used for the amplitudes passed to the waterfall.
+	 */
+	public void setScaling(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy)
+	{
+		this.dPreScalingFactor = preFFTScalingFactor;
+		this.dPostScalingFactor = postFFTScalingFactor;
+		this.dLostEnergy = lostEnergy;
+	}
+
+	/**
+	 * Bins below this level do not count towards the directions passed to the PolarDirectionGraph.
+	 */
+	public void setDirectionThreshold_dBm(double dThreshold_dBm)
+	{
+		this.dThreshold_dBm = dThreshold_dBm;
+	}
+
+	public void setPolarGraph(PolarDirectionGraph oPolarGraph)
+	{
+		this.oPolarGraph = oPolarGraph;
+	}
+
+	public void setWaterfallGraph(AmplitudeDetectionWaterfallGraph oWaterfallGraph)
+	{
+		this.oWaterfallGraph = oWaterfallGraph;
+	}
+
+	/**
+	 * Forget the averaged matrices.
+	 */
+	public void reset()
+	{
+		Arrays.fill(adMatrix, 0);
+		iFramesAveraged = 0;
+	}
+
+	/**
+	 * Add one frame of every channel to the average, and update the graphs if it is time to. The frame is stamped with
+	 * the current time.
+	 *
+	 * @param frames one array per channel, each containing at least FFT_size interleaved (real, imaginary) samples,
+	 *          sampled at the same instants
+	 */
+	public void process(short[][] frames)
+	{
+		process(frames, new TimeStamp());
+	}
+
+	/**
+	 * Add one frame of every channel to the average, and update the graphs if it is time to.
+	 *
+	 * @param frames one array per channel, each containing at least FFT_size interleaved (real, imaginary) samples,
+	 *          sampled at the same instants
+	 * @param oFrameTime the time of the first sample of the frame. The waterfall graph only scrolls when a line is later
+	 *          than the previous one, so a line that is not is moved to 1us after it.
+	 */
+	public void process(short[][] frames, TimeStamp oFrameTime)
+	{
+		if (frames.length != iChannelCount)
+		{
+			throw new IllegalArgumentException("need one frame per channel, " + frames.length + "!=" + iChannelCount);
+		}
+		for (short[] frame : frames)
+		{
+			if (frame.length < iFFT_size * 2)
+			{
+				throw new IllegalArgumentException("frame too short, need " + (iFFT_size * 2) + " values, got "
+						+ frame.length);
+			}
+		}
+		asFrames = frames;
+		oPool.invoke(new RangeAction(STAGE_FFT, 0, iChannelCount, 1));
+		asFrames = null;
+		iFramesAveraged++;
+		oPool.invoke(new RangeAction(STAGE_ACCUMULATE, 0, iFFT_size, BINS_PER_TASK));
+
+		iFramesSinceOutput++;
+		if (iFramesSinceOutput >= iFramesPerOutput && oSteering != null
+				&& (oPolarGraph != null || oWaterfallGraph != null))
+		{
+			iFramesSinceOutput = 0;
+			publish(oFrameTime);
+		}
+	}
+
+	private void publish(TimeStamp oFrameTime)
+	{
+		calculateBearings(awAzimuth_cdeg, awAmplitude_cdBm);
+		final PolarDirectionGraph polarGraph = oPolarGraph;
+		if (polarGraph != null)
+		{
+			polarGraph.updateDirection(getDirectionHistogram(aiDirection));
+		}
+		final AmplitudeDetectionWaterfallGraph waterfallGraph = oWaterfallGraph;
+		if (waterfallGraph != null)
+		{
+			long lTime_us = oFrameTime.getPeriod_usec();
+			if (lTime_us <= lLastOutput_us)
+			{
+				lTime_us = lLastOutput_us + 1;
+			}
+			lLastOutput_us = lTime_us;
+			waterfallGraph.setDirectionAzimuthData(TimeStamp.from_usec(lTime_us), awAmplitude_cdBm, awAzimuth_cdeg);
+		}
+	}
+
+	/**
+	 * Calculate the bearing and level of every bin from the current averages.
+	 *
+	 * @param awAzimuth_cdeg receives the bearing of each bin, in hundredths of a degree, -18000 to 17999
+	 * @param awAmplitude_cdBm receives the mean power of the channels in each bin, in hundredths of a dBm (as scaled by
+	 *          setScaling())
+	 */
+	public void calculateBearings(short[] awAzimuth_cdeg, short[] awAmplitude_cdBm)
+	{
+		// read once, so that all of the bins are scanned with the same geometry
+		final SteeringTables steering = oSteering;
+		if (steering == null)
+		{
+			throw new IllegalStateException("array geometry has not been set");
+		}
+		final RangeAction action = new RangeAction(STAGE_BEARINGS, 0, iFFT_size, BINS_PER_TASK);
+		action.oSteering = steering;
+		action.awAzimuth_cdeg = awAzimuth_cdeg;
+		action.awAmplitude_cdBm = awAmplitude_cdBm;
+		oPool.invoke(action);
+	}
+
+	/**
+	 * Sum the power of the bins above the threshold by bearing, using the results of the last calculateBearings().
+	 *
+	 * @param aiDirection receives 360 values, scaled so that the largest is 10000
+	 */
+	private int[] getDirectionHistogram(int[] aiDirection)
+	{
+		final double[] histogram = new double[360];
+		for (int bin = 0; bin < iFFT_size; bin++)
+		{
+			if (awAmplitude_cdBm[bin] != NO_DATA_cdBm && awAmplitude_cdBm[bin] >= dThreshold_dBm * 100)
+			{
+				final int deg = ((awAzimuth_cdeg[bin] / 100) + 360) % 360;
+				histogram[deg] += adBinPower[bin];
+			}
+		}
+		double max = 0;
+		for (int deg = 0; deg < 360; deg++)
+		{
+			max = Math.max(max, histogram[deg]);
+		}
+		for (int deg = 0; deg < 360; deg++)
+		{
+			aiDirection[deg] = max == 0 ? 0 : (int) Math.round(histogram[deg] / max * 10000);
+		}
+		return aiDirection;
+	}
+
+	/**
+	 * Copy the averaged cross-spectral matrix of one bin.
+	 *
+	 * @param iBin in display order, DC at FFT_size/2
+	 * @param re receives R[m][n] at [m*N+n], for all m and n
+	 * @param im same as re
+	 */
+	public void getMatrix(int iBin, double[] re, double[] im)
+	{
+		final int base = 2 * iBin * iPairCount;
+		int pair = 0;
+		for (int m = 0; m < iChannelCount; m++)
+		{
+			for (int n = m; n < iChannelCount; n++, pair++)
+			{
+				re[m * iChannelCount + n] = re[n * iChannelCount + m] = adMatrix[base + 2 * pair];
+				im[m * iChannelCount + n] = adMatrix[base + 2 * pair + 1];
+				im[n * iChannelCount + m] = -adMatrix[base + 2 * pair + 1];
+			}
+		}
+	}
+
+	/**
+	 * Window and transform one channel, and store the result bin-major, in display order.
+	 */
+	private void transformChannel(int channel)
+	{
+		final IFFTEngine engine = aoEngines[channel];
+		final double[] re = engine.getRealBuffer();
+		final double[] im = engine.getImagBuffer();
+		final short[] input = asFrames[channel];
+		for (int i = 0, index = 0; i < iFFT_size; i++, index += 2)
+		{
+			re[i] = input[index] * adWindow[i];
+			im[i] = input[index + 1] * adWindow[i];
+		}
+		engine.runFFT();
+		final int[] aiPerm = engine.getOutputPermutation();
+		final int half = AbstractFFTEngine.firstNegativeBin(iFFT_size);
+		final int stride = 2 * iChannelCount;
+		for (int bin = 0; bin < iFFT_size; bin++)
+		{
+			final int k = bin < iFFT_size - half ? bin + half : bin - (iFFT_size - half);
+			final int p = aiPerm[k];
+			final int index = bin * stride + 2 * channel;
+			adSpectra[index] = re[p];
+			adSpectra[index + 1] = im[p];
+		}
+	}
+
+	/**
+	 * R = (1-a)*R + a*x*x^H, for a range of bins.
+	 */
+	private void accumulate(int from, int to)
+	{
+		final double a = Math.max(dAveragingFactor, 1.0 / iFramesAveraged);
+		final double b = 1 - a;
+		final int n = iChannelCount;
+		for (int bin = from; bin < to; bin++)
+		{
+			final int x = bin * 2 * n;
+			int r = bin * 2 * iPairCount;
+			for (int i = 0; i < n; i++)
+			{
+				final double xr = adSpectra[x + 2 * i];
+				final double xi = adSpectra[x + 2 * i + 1];
+				for (int j = i; j < n; j++, r += 2)
+				{
+					// x_i * conj(x_j)
+					final double yr = adSpectra[x + 2 * j];
+					final double yi = adSpectra[x + 2 * j + 1];
+					adMatrix[r] = b * adMatrix[r] + a * (xr * yr + xi * yi);
+					adMatrix[r + 1] = b * adMatrix[r + 1] + a * (xi * yr - xr * yi);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bartlett scan, P(theta) = sum of R[n][n] + 2 * sum over m<n of Re(R[m][n] * e^(-i*phase[m][n](theta))).
+	 */
+	private void bearings(int from, int to, SteeringTables steering, short[] azimuth_cdeg, short[] amplitude_cdBm)
+	{
+		final double[][] steeringCos = steering.adCos;
+		final double[][] steeringSin = steering.adSin;
+		final int n = iChannelCount;
+		final int crossPairs = steeringCos[0].length;
+		final double[] crossReal = new double[crossPairs];
+		final double[] crossImag = new double[crossPairs];
+		for (int bin = from; bin < to; bin++)
+		{
+			final int base = bin * 2 * iPairCount;
+			double diagonal = 0;
+			int pair = 0;
+			int cross = 0;
+			for (int m = 0; m < n; m++)
+			{
+				for (int k = m; k < n; k++, pair++)
+				{
+					if (k == m)
+					{
+						diagonal += adMatrix[base + 2 * pair];
+					}
+					else
+					{
+						crossReal[cross] = adMatrix[base + 2 * pair];
+						crossImag[cross] = adMatrix[base + 2 * pair + 1];
+						cross++;
+					}
+				}
+			}
+
+			double best = Double.NEGATIVE_INFINITY;
+			int bestDeg = 0;
+			for (int deg = 0; deg < 360; deg++)
+			{
+				final double[] cos = steeringCos[deg];
+				final double[] sin = steeringSin[deg];
+				double p = 0;
+				for (int c = 0; c < crossPairs; c++)
+				{
+					p += crossReal[c] * cos[c] + crossImag[c] * sin[c];
+				}
+				if (p > best)
+				{
+					best = p;
+					bestDeg = deg;
+				}
+			}
+			azimuth_cdeg[bin] = (short) ((bestDeg >= 180 ? bestDeg - 360 : bestDeg) * 100);
+
+			// the mean power of the channels
+			final double power = diagonal / n;
+			adBinPower[bin] = power;
+			if (power <= 0)
+			{
+				amplitude_cdBm[bin] = NO_DATA_cdBm;
+			}
+			else
+			{
+				final double level = AbstractFFTEngine.logScale(Math.sqrt(power) * dPreScalingFactor, dPostScalingFactor,
+						dLostEnergy);
+				final long level_cdBm = Math.round(level * 100);
+				amplitude_cdBm[bin] = (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, level_cdBm));
+			}
+		}
+	}
+
+	/**
+	 * cos and sin of the steering phase of each pair with m<n, by degree, [degree][pair], so that the scan runs through
+	 * them in order.
+	 */
+	private static final class SteeringTables
+	{
+		final double[][] adCos;
+		final double[][] adSin;
+
+		SteeringTables(double[][] adCos, double[][] adSin)
+		{
+			this.adCos = adCos;
+			this.adSin = adSin;
+		}
+	}
+
+	/**
+	 * Splits a range of channels or bins in half until it is small enough, and then runs one stage on it.
+	 */
+	private final class RangeAction extends RecursiveAction
+	{
+		private final int iStage;
+		private final int from;
+		private final int to;
+		private final int grain;
+		SteeringTables oSteering;
+		short[] awAzimuth_cdeg;
+		short[] awAmplitude_cdBm;
+
+		RangeAction(int iStage, int from, int to, int grain)
+		{
+			this.iStage = iStage;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > grain)
+			{
+				final int mid = (from + to) >>> 1;
+				final RangeAction left = new RangeAction(iStage, from, mid, grain);
+				final RangeAction right = new RangeAction(iStage, mid, to, grain);
+				left.oSteering = right.oSteering = oSteering;
+				left.awAzimuth_cdeg = right.awAzimuth_cdeg = awAzimuth_cdeg;
+				left.awAmplitude_cdBm = right.awAmplitude_cdBm = awAmplitude_cdBm;
+				invokeAll(left, right);
+				return;
+			}
+			switch (iStage)
+			{
+			case STAGE_FFT:
+				for (int channel = from; channel < to; channel++)
+				{
+					transformChannel(channel);
+				}
+				break;
+			case STAGE_ACCUMULATE:
+				accumulate(from, to);
+				break;
+			case STAGE_BEARINGS:
+				bearings(from, to, oSteering, awAzimuth_cdeg, awAmplitude_cdBm);
+				break;
+			default:
+				throw new IllegalStateException("unknown stage " + iStage);
+			}
+		}
+	}
+
+	/**
+	 * Shut down the pool, if this engine created it.
+	 */
+	public void shutdown()
+	{
+		if (bOwnPool)
+		{
+			oPool.shutdown();
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package com.peralex.utilities.fft;
 
-import java.util.Arrays;
-
 /**
  * 
  * History: 
@@ -12,46 +10,33 @@ import java.util.Arrays;
  *   - Further modified by David Lee.
  *   
  */
-public class FFT
+public class FFT extends AbstractFFTEngine
 {
 	/**
-	 * FFT must be a power of two.
+	 * Creates instances of this reference implementation.
 	 */
-	private int iFFT_size = 0;
+	public static final IFFTEngineFactory FACTORY = new IFFTEngineFactory()
+	{
+		public IFFTEngine createEngine(int FFT_size, boolean useBlackmanWindow)
+		{
+			return new FFT(FFT_size, useBlackmanWindow);
+		}
+	};
 
 	/**
 	 * The order of the FFT.
 	 */
-	private int iFFT_order = 0;
+	private final int iFFT_order;
 
 	/**
-	 * Permutation LUT.
+	 * Permutation LUT. Shared, see FFTTables.
 	 */
-	private int[] aiPermLUT;
+	private final int[] aiPermLUT;
 
 	/**
-	 * Sine LUT.
+	 * Sine LUT, a sampling of sin(x) for x = 0 to 2pi step d, where d is 2pi/N. Shared, see FFTTables.
 	 */
-	private double[] adSineLUT;
-
-	/**
-	 * Array used to store real part of result, not ordered.
-	 */
-	private double[] adRealData;
-
-	/**
-	 * Array used to store imag part of result, not ordered.
-	 */
-	private double[] adImagData;
-
-	/**
-	 * Output array containing spectra of FFT.
-	 */
-	private double[] adSpectra;
-
-	private final double[] blackmanWindow;
-
-	private final double[] fftResult;
+	private final double[] adSineLUT;
 
 	/**
 	 * Constructor specifying FFT size.
@@ -60,140 +45,34 @@ public class FFT
 	 */
 	public FFT(int FFT_size, boolean useBlackmanWindow)
 	{
-		setupFFT(FFT_size);
-		if (useBlackmanWindow)
-		{
-			blackmanWindow = FFT.blackmanWindow(FFT_size);
-		}
-		else
-		{
-			blackmanWindow = new double[FFT_size];
-			Arrays.fill(blackmanWindow, 1.0);
-		}
-		fftResult = new double[FFT_size];
-	}
-
-	/**
-	 * Initialization routine precalculates information in order to speed up subsequent FFT calculations.
-	 */
-	private void setupFFT(int FFT_size)
-	{
-		if (iFFT_size == FFT_size)
-		{
-			return;
-		}
+		super(FFT_size, useBlackmanWindow);
 
 		// Input data array length must be a power of two
-		iFFT_order = (int) (Math.log(FFT_size) / Math.log(2.0));
-		if ((1 << iFFT_order) != FFT_size)
-		{
-			iFFT_order = 0;
-			throw new IllegalArgumentException("FFT size must be a power of 2. " + FFT_size);
-		}
-
-		iFFT_size = FFT_size;
-
-		/*
-		 * Build table of sines. The table is a sampling of sin(x) for x = 0 to 2pi step d, where d is 2pi/N. N is the total
-		 * number of samples.
-		 */
-		adSineLUT = new double[iFFT_size];
-		for (int i = 0; i < iFFT_size; i++)
-		{
-			adSineLUT[i] = Math.sin((i * (2 * Math.PI)) / iFFT_size);
-		}
-
-		// A place to hold the data
-		adRealData = new double[iFFT_size];
-		adImagData = new double[iFFT_size];
-
-		// Resulting FFT is put in adSpectra
-		adSpectra = new double[iFFT_size];
-
-		// Build the bit reversal lookup table
-		aiPermLUT = new int[iFFT_size];
-		int result;
-		for (int index = 0; index < iFFT_size; index++)
-		{
-			result = 0;
-			for (int loop = 0; loop < iFFT_order; loop++)
-			{
-				if ((index & (1 << loop)) != 0)
-				{
-					result |= (1 << (iFFT_order - 1 - loop));
-				}
-			}
-			aiPermLUT[index] = result;
-		}
+		iFFT_order = checkPowerOfTwo(FFT_size);
+		adSineLUT = FFTTables.getSineTable(iFFT_size);
+		aiPermLUT = FFTTables.getBitReversalTable(iFFT_size);
 	}
 
 	/**
-	 * Get the size that the FFT processor has been setup for.
-	 */
-	public final int getFFT_size()
-	{
-		return iFFT_size;
-	}
-
-	/**
-	 * Similar to calculate(double[] rdata, double[] idata), but rely on the external program to directly manipulate the
-	 * internal arrays to save the time on creating arrays and moving the data around.
+	 * Constructor specifying FFT size and window.
 	 * 
-	 * @return an array of spectrum data. This array will be reused for next calculation, in order to avoid the
-	 *         unnecessary array-creation. Hence, don't modify and/or store the resultant array; rather copy the values
-	 *         then process the copied values.
+	 * @param FFT_size Number of samples to FFT at a time. Must be a power of two.
 	 */
-	public double[] calculate(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy)
-	{
-		preFFTProcess(preFFTScalingFactor);
-
-		runFFT();
-
-		double[] spectra = calculateSpectra();
-
-		postFFTProcess(spectra, postFFTScalingFactor, lostEnergy);
-
-		return fftResult;
-	}
-
-	private void preFFTProcess(double preFFTScalingFactor)
-	{
-		for (int i = 0, len = adRealData.length; i < len; ++i)
-		{
-			final double coefficient = blackmanWindow[i] * preFFTScalingFactor;
-			adRealData[i] *= coefficient;
-			adImagData[i] *= coefficient;
-		}
-	}
-
-	private void postFFTProcess(double[] spectra, double postFFTScalingFactor, double lostEnergy)
+	public FFT(int FFT_size, FFTWindow oWindow)
 	{
-		for (int i = 0; i < spectra.length; ++i)
-		{
-			double m = spectra[i];
-			if (m <= 0) // avoid zero, so the log of m won't be NaN
-			{
-				m = Double.MIN_VALUE;
-			}
-
-			// dMagnitude[i] = (Math.log( dMagnitude[i] ) / Math.log( 10 )) * scalingFactor;
-			spectra[i] = Math.log(m) * postFFTScalingFactor + lostEnergy;
-		}
-
-		int half = spectra.length / 2;
-
-		System.arraycopy(spectra, half, fftResult, 0, half);
-		System.arraycopy(spectra, 0, fftResult, half, half);
-	}
+		super(FFT_size, oWindow);
 
-	public double[] getImagBuffer()
-	{
-		return adImagData;
+		iFFT_order = checkPowerOfTwo(FFT_size);
+		adSineLUT = FFTTables.getSineTable(iFFT_size);
+		aiPermLUT = FFTTables.getBitReversalTable(iFFT_size);
 	}
 
-	public double[] getRealBuffer()
+	/**
+	 * The output of this FFT is in bit-reversed order.
+	 */
+	public int[] getOutputPermutation()
 	{
-		return adRealData;
+		return aiPermLUT;
 	}
 
 	public void runFFT()
@@ -245,27 +124,6 @@ public class FFT
 		}
 	}
 
-	/**
-	 * Calculate the spectra following an FFT calculation.
-	 * 
-	 * @return the spectra of the FFT
-	 */
-	public final double[] calculateSpectra()
-	{
-		for (int i = 0; i < iFFT_size; i++)
-		{
-			int p = aiPermLUT[i];
-
-			double real = adRealData[p];
-			double imaginary = adImagData[p];
-
-			// Calculate power magnitude
-			adSpectra[i] = Math.sqrt((real * real) + (imaginary * imaginary));
-		}
-
-		return adSpectra;
-	}
-
 	public static final double[] blackmanWindow(final int iSize)
 	{
 		double[] adBlackmanWindow = new double[iSize];
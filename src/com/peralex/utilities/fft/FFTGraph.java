@@ -1,8 +1,14 @@
 package com.peralex.utilities.fft;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import com.peralex.utilities.ui.graphs.graphBase.ZoomAdapter;
+import com.peralex.utilities.ui.graphs.lineGraph.GeneratedLineData;
 import com.peralex.utilities.ui.graphs.lineGraph.SingleLineGraph;
 
 /**
@@ -12,7 +18,11 @@ import com.peralex.utilities.ui.graphs.lineGraph.SingleLineGraph;
  */
 public class FFTGraph extends SingleLineGraph
 {
-	private static final short[] RESOLUTION_LIST = new short[] { 256, 512, 1024, 2048, 4096, 8192, 16384 };
+	/**
+	 * 1000, 1600 and 3200 match the native frame lengths of some receivers, and are handled by MixedRadixFFT.
+	 */
+	private static final short[] RESOLUTION_LIST = new short[] { 256, 512, 1000, 1024, 1600, 2048, 3200, 4096, 8192,
+			16384 };
 
 	private static final List<Short> resolutionList = new ArrayList<Short>(20);
 	static
@@ -25,7 +35,51 @@ public class FFTGraph extends SingleLineGraph
 
 	private short currentFFTResolution = resolutionList.get(0).shortValue();
 
-	private FFT oFFT;
+	private IFFTEngine oFFT;
+
+	/**
+	 * creates the engine whenever the resolution changes.
+	 */
+	private IFFTEngineFactory oFFTEngineFactory = MixedRadixFFT.ANY_SIZE_FACTORY;
+
+	/**
+	 * the factory that created the current engine, so that we can detect when the factory has been changed.
+	 */
+	private IFFTEngineFactory oCurrentFFTEngineFactory;
+
+	/**
+	 * used instead of oFFT when the input is real-valued.
+	 */
+	private RealFFT oRealFFT;
+
+	/**
+	 * the factory that created oRealFFT.
+	 */
+	private IFFTEngineFactory oCurrentRealFFTEngineFactory;
+
+	/**
+	 * computeRealFFT() keeps it's own frame and counters, so that it does not corrupt a frame that computeFFT() is
+	 * filling up, and vice versa.
+	 */
+	private int realFFTBufferIndex = 0;
+
+	private int realDumpingCounter = 0;
+
+	private boolean reInitialiseRealFFT_Buffer = false;
+
+	/**
+	 * used instead of oFFT when single precision is enabled.
+	 */
+	private FloatFFT oFloatFFT;
+
+	private boolean bSinglePrecision = false;
+
+	private LogMode eLogMode = LogMode.MAGNITUDE;
+
+	/**
+	 * the precision of the current engine, so that we can detect when the precision has been changed.
+	 */
+	private boolean bCurrentSinglePrecision;
 
 	private int fftBufferIndex = 0;
 
@@ -36,10 +90,86 @@ public class FFTGraph extends SingleLineGraph
 
 	private int dumpingCounterMax = 1;
 
-	private float [] displayData;
+	/**
+	 * re-used for converting buffers when the zoom-FFT or averaging needs the samples as shorts.
+	 */
+	private short[] asConversionBuffer = new short[0];
+
+	/**
+	 * re-used for every frame, the FFT result is written directly into it's Y values.
+	 */
+	private GeneratedLineData oDisplayLineData = new GeneratedLineData();
+
+	/**
+	 * the X range of oDisplayLineData, which is never changed once the line data has been passed to the graph.
+	 */
+	private double dDisplayMinimumX = 0;
+
+	private double dDisplayMaximumX = 0;
+
+	/**
+	 * when not null, overlapping frames are averaged instead of dropped.
+	 */
+	private WelchEstimator.AveragingMode eAveragingMode = null;
+
+	private WelchEstimator.Overlap eOverlap = WelchEstimator.Overlap.HALF;
+
+	private int iTransformsPerFrame = 4;
+
+	private WelchEstimator oWelchEstimator;
+
+	/**
+	 * the factory that created the Welch estimator's engine.
+	 */
+	private IFFTEngineFactory oWelchEngineFactory;
 	
+	/**
+	 * when enabled, zooming in along the X-axis switches to a zoom-FFT of the visible band.
+	 */
+	private boolean bZoomFFTEnabled = false;
+
+	/**
+	 * the visible X range {min, max}, as last reported to the zoom listener.
+	 */
+	private volatile double[] adZoomBand = null;
+
+	private ZoomFFT oZoomFFT;
+
+	/**
+	 * the factory that created the zoom-FFT's engine.
+	 */
+	private IFFTEngineFactory oZoomEngineFactory;
+
+	/**
+	 * Limits the zoom-FFT's decimation, because a frame needs decimation * resolution input samples.
+	 */
+	private static final int MAX_ZOOM_DECIMATION = 256;
+
 	public FFTGraph()
 	{
+		addZoomListener(new ZoomAdapter()
+		{
+			@Override
+			public void graphZoomChanged(double fMinimumX, double fMaximumX, double fMinimumY, double fMaximumY)
+			{
+				adZoomBand = new double[] { fMinimumX, fMaximumX };
+			}
+		});
+	}
+
+	/**
+	 * When enabled, and the graph is zoomed in to less than half of the X-axis, the visible band is mixed down,
+	 * decimated and then transformed, which gives true high resolution inside the zoomed band (see ZoomFFT). This takes
+	 * precedence over averaging and single precision.
+	 */
+	public void setZoomFFTEnabled(boolean bZoomFFTEnabled)
+	{
+		this.bZoomFFTEnabled = bZoomFFTEnabled;
+	}
+
+	public boolean isZoomFFTEnabled()
+	{
+		return bZoomFFTEnabled;
 	}
 
 	/**
@@ -52,57 +182,202 @@ public class FFTGraph extends SingleLineGraph
 	}
 	
 	/**
-	 * Convert input from a double[] into a float[] of subset of input data
+	 * Average the power spectra of overlapping frames, instead of dropping frames to limit the CPU usage. One spectrum is
+	 * displayed for every iTransformsPerFrame transforms. See WelchEstimator.
 	 * 
-	 * @return a (newly created) float array based on the input double array
+	 * @param eAveragingMode null to go back to dropping frames
 	 */
-	private float[] convertToDoubleArray(double[] inputData)
+	public void setAveraging(WelchEstimator.AveragingMode eAveragingMode, WelchEstimator.Overlap eOverlap,
+			int iTransformsPerFrame)
 	{
-		// Cache the array to reduce GC overhead.
-		if (displayData==null || displayData.length!=inputData.length)
+		if (iTransformsPerFrame < 1)
+		{
+			throw new IllegalArgumentException("transforms per frame must be at least 1, " + iTransformsPerFrame);
+		}
+		this.eOverlap = eOverlap;
+		this.iTransformsPerFrame = iTransformsPerFrame;
+		this.eAveragingMode = eAveragingMode;
+	}
+
+	/**
+	 * @return null if averaging is disabled
+	 */
+	public WelchEstimator.AveragingMode getAveragingMode()
+	{
+		return eAveragingMode;
+	}
+
+	public WelchEstimator.Overlap getAveragingOverlap()
+	{
+		return eOverlap;
+	}
+
+	public int getTransformsPerFrame()
+	{
+		return iTransformsPerFrame;
+	}
+
+	/**
+	 * Select the FFT implementation. The change takes effect once the frame that is currently being filled up has been
+	 * completed. The factory must support all of the resolutions that are going to be used, the default
+	 * (MixedRadixFFT.ANY_SIZE_FACTORY) supports all of them.
+	 */
+	public void setFFTEngineFactory(IFFTEngineFactory oFFTEngineFactory)
+	{
+		if (oFFTEngineFactory == null)
 		{
-			displayData = new float[inputData.length];
+			throw new IllegalArgumentException("FFT engine factory may not be null");
 		}
-		for (int i = 0; i < inputData.length; ++i)
+		this.oFFTEngineFactory = oFFTEngineFactory;
+	}
+
+	public IFFTEngineFactory getFFTEngineFactory()
+	{
+		return oFFTEngineFactory;
+	}
+
+	/**
+	 * Compute the FFT in single precision, which is plenty for display purposes, and halves the memory bandwidth.
+	 * When enabled, the engine factory is ignored for power-of-two resolutions (other resolutions are still done in
+	 * double precision). The change takes effect once the frame that is currently being
+	 * filled up has been completed.
+	 */
+	public void setSinglePrecision(boolean bSinglePrecision)
+	{
+		this.bSinglePrecision = bSinglePrecision;
+	}
+
+	public boolean isSinglePrecision()
+	{
+		return bSinglePrecision;
+	}
+
+	/**
+	 * Select the trade-off between accuracy and speed of the conversion to dB. The default is LogMode.MAGNITUDE.
+	 * LogMode.POWER gives the same result to within rounding error without the square root, which only helps where
+	 * square roots are slow. LogMode.FAST_POWER is faster, with an error of less than 0.00001dB.
+	 */
+	public void setLogMode(LogMode eLogMode)
+	{
+		if (eLogMode == null)
 		{
-			displayData[i] = (float) inputData[i];
+			throw new IllegalArgumentException("log mode may not be null");
 		}
-		return displayData;
+		this.eLogMode = eLogMode;
+	}
+
+	public LogMode getLogMode()
+	{
+		return eLogMode;
 	}
 
 	/**
+	 * @return the Y values of the display line data, (re)allocated to the right length.
+	 */
+	private float[] getDisplayBuffer(int length)
+	{
+		// Cache the array to reduce GC overhead.
+		if (oDisplayLineData.getNumberOfPoints() != length)
+		{
+			// don't resize the line data that is currently being displayed, the paint code might be busy with it
+			oDisplayLineData = new GeneratedLineData(0, 0, length, new float[length]);
+			dDisplayMinimumX = 0;
+			dDisplayMaximumX = 0;
+		}
+		return oDisplayLineData.getYValues();
+	}
+
+	/**
+	 * Runs the FFT on the calling thread. See AsyncFFTFeeder for running it on a worker thread instead.
+	 * 
 	 * @param input an array containing real and imaginary value alternating (ie, [real] [imag] [real] [imag]...)
 	 */
 	public void computeFFT(short[] input)
 	{
 		// Ensure input size is correct
-		final int inputLen = input.length;
-		if ((inputLen % 2) == 1)
+		if ((input.length % 2) == 1)
 		{
 			throw new IllegalArgumentException("the sample counts for the reals, differs from the counts for imaginaries");
 		}
+		computeFFT(new ShortArraySource(input), input.length / 2);
+	}
+
+	/**
+	 * Same as computeFFT(short[]), but the samples are read straight out of the buffer, from it's position up to it's
+	 * limit, and the position is then advanced to the limit.
+	 */
+	public void computeFFT(ShortBuffer input)
+	{
+		if ((input.remaining() % 2) == 1)
+		{
+			throw new IllegalArgumentException("the sample counts for the reals, differs from the counts for imaginaries");
+		}
+		computeFFT(new ShortBufferSource(input), input.remaining() / 2);
+		input.position(input.limit());
+	}
 
+	/**
+	 * Same as computeFFT(short[]), but the samples are read straight out of the buffer, which can be a heap buffer, a
+	 * direct buffer, or a MappedByteBuffer of a recording. The samples from the buffer's position up to it's limit are
+	 * used, and the position is then advanced to the limit. The buffer's own byte order is not changed.
+	 * 
+	 * Note: when the zoom-FFT or averaging is enabled, the samples are first converted into a re-used short array.
+	 */
+	public void computeFFT(ByteBuffer input, SampleFormat eFormat, ByteOrder eByteOrder)
+	{
+		final int bytesPerSample = eFormat.getBytesPerSample();
+		if ((input.remaining() % bytesPerSample) != 0)
+		{
+			throw new IllegalArgumentException("the buffer does not contain a whole number of samples, " + input.remaining()
+					+ " bytes");
+		}
+		final ByteBuffer buffer = input.order() == eByteOrder ? input : input.duplicate().order(eByteOrder);
+		computeFFT(new ByteBufferSource(buffer, eFormat), input.remaining() / bytesPerSample);
+		input.position(input.limit());
+	}
+
+	private void computeFFT(SampleSource source, final int sampleSize)
+	{
 		// The GUI thread might change the current resolution.
 		// Make a local copy of it (instead of synchronization)
 		final int currentResolution = this.currentFFTResolution;
+		final IFFTEngineFactory currentFactory = this.oFFTEngineFactory;
+		final boolean singlePrecision = this.bSinglePrecision;
+
+		final ZoomFFT zoomFFT = getZoomFFT(currentResolution, currentFactory);
+		if (zoomFFT != null)
+		{
+			zoomFFT.setScaling(getPreFFTScalingFactor(currentResolution), POST_FFT_SCALING_FACTOR, LOST_ENERGY);
+			zoomFFT.setLogMode(eLogMode);
+			zoomFFT.process(source.toShortArray(sampleSize));
+			return;
+		}
+
+		final WelchEstimator.AveragingMode averagingMode = this.eAveragingMode;
+		if (averagingMode != null)
+		{
+			computeAveragedFFT(source.toShortArray(sampleSize), currentResolution, currentFactory, averagingMode);
+			return;
+		}
 
 		// Initialise oFFT buffer if it's empty
-		if (oFFT == null)
+		if (oFFT == null && oFloatFFT == null)
 		{
-			initialiseFFT_Buffer(currentResolution);
+			initialiseFFT_Buffer(currentResolution, currentFactory, singlePrecision);
 		}
-		else if (oFFT.getFFT_size() != currentResolution)
+		else if (getCurrentFFTSize() != currentResolution || oCurrentFFTEngineFactory != currentFactory
+				|| bCurrentSinglePrecision != singlePrecision)
 		{
 			// if it's currently filling up data, only change oFFT size when the filling-up process finishes.
 			// (otherwise oFFT will start at a random point which may contain discontinuity.)
 			reInitialiseFFT_Buffer = true;
 		}
 
-		// Set up length and get oFFT's internal buffer
-		final int sampleSize = inputLen / 2;
-		final int bufferLen = oFFT.getRealBuffer().length;
+		int bufferLen = getCurrentFFTSize();
 
-		for (int i = 0; i < sampleSize; i++)
+		// copy the samples across a frame at a time
+		int i = 0;
+		while (i < sampleSize)
 		{
 			final boolean isBufferFull = fftBufferIndex >= bufferLen;
 			// Do oFFT computation if there is sufficient data
@@ -110,7 +385,8 @@ public class FFTGraph extends SingleLineGraph
 			{
 				if (reInitialiseFFT_Buffer)
 				{
-					initialiseFFT_Buffer(currentResolution);
+					initialiseFFT_Buffer(currentResolution, currentFactory, singlePrecision);
+					bufferLen = getCurrentFFTSize();
 					fftBufferIndex = 0;
 					reInitialiseFFT_Buffer = false;
 					continue;
@@ -128,47 +404,401 @@ public class FFTGraph extends SingleLineGraph
 				// reset bufferindex to start filling up again
 				fftBufferIndex = 0;
 			}
-      
-      final int index = i * 2;
-      oFFT.getRealBuffer()[fftBufferIndex] = input[index];
-      oFFT.getImagBuffer()[fftBufferIndex] = input[index + 1];
-      ++fftBufferIndex;
+
+			final int count = Math.min(sampleSize - i, bufferLen - fftBufferIndex);
+			if (oFloatFFT != null)
+			{
+				source.read(i, oFloatFFT.getRealBuffer(), oFloatFFT.getImagBuffer(), fftBufferIndex, count);
+			}
+			else
+			{
+				source.read(i, oFFT.getRealBuffer(), oFFT.getImagBuffer(), fftBufferIndex, count);
+			}
+			fftBufferIndex += count;
+			i += count;
 		}
 	}
 
-	private void initialiseFFT_Buffer(final int currentResolution)
+	/**
+	 * @return a re-used array of exactly the given length, for converting samples into.
+	 */
+	private short[] getConversionBuffer(int length)
+	{
+		if (asConversionBuffer.length != length)
+		{
+			asConversionBuffer = new short[length];
+		}
+		return asConversionBuffer;
+	}
+
+	/**
+	 * Where computeFFT() gets it's samples from.
+	 */
+	private abstract class SampleSource
 	{
-		oFFT = new FFT(currentResolution, true);
+		/**
+		 * Copy count complex samples, starting at the given sample, into re[offset..] and im[offset..].
+		 */
+		abstract void read(int sample, double[] re, double[] im, int offset, int count);
+
+		abstract void read(int sample, float[] re, float[] im, int offset, int count);
+
+		/**
+		 * @return all of the samples as interleaved shorts.
+		 */
+		abstract short[] toShortArray(int sampleCount);
+	}
+
+	private final class ShortArraySource extends SampleSource
+	{
+		private final short[] input;
+
+		ShortArraySource(short[] input)
+		{
+			this.input = input;
+		}
+
+		@Override
+		void read(int sample, double[] re, double[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count, index = sample * 2; i < end; i++, index += 2)
+			{
+				re[i] = input[index];
+				im[i] = input[index + 1];
+			}
+		}
+
+		@Override
+		void read(int sample, float[] re, float[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count, index = sample * 2; i < end; i++, index += 2)
+			{
+				re[i] = input[index];
+				im[i] = input[index + 1];
+			}
+		}
+
+		@Override
+		short[] toShortArray(int sampleCount)
+		{
+			return input;
+		}
+	}
+
+	private final class ShortBufferSource extends SampleSource
+	{
+		private final ShortBuffer input;
+
+		private final int iStart;
+
+		ShortBufferSource(ShortBuffer input)
+		{
+			this.input = input;
+			this.iStart = input.position();
+		}
+
+		@Override
+		void read(int sample, double[] re, double[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count, index = iStart + sample * 2; i < end; i++, index += 2)
+			{
+				re[i] = input.get(index);
+				im[i] = input.get(index + 1);
+			}
+		}
+
+		@Override
+		void read(int sample, float[] re, float[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count, index = iStart + sample * 2; i < end; i++, index += 2)
+			{
+				re[i] = input.get(index);
+				im[i] = input.get(index + 1);
+			}
+		}
+
+		@Override
+		short[] toShortArray(int sampleCount)
+		{
+			final short[] output = getConversionBuffer(sampleCount * 2);
+			input.duplicate().get(output);
+			return output;
+		}
+	}
+
+	private final class ByteBufferSource extends SampleSource
+	{
+		private final ByteBuffer input;
+
+		private final SampleFormat eFormat;
+
+		private final int iStart;
+
+		ByteBufferSource(ByteBuffer input, SampleFormat eFormat)
+		{
+			this.input = input;
+			this.eFormat = eFormat;
+			this.iStart = input.position();
+		}
+
+		@Override
+		void read(int sample, double[] re, double[] im, int offset, int count)
+		{
+			eFormat.read(input, iStart + sample * eFormat.getBytesPerSample(), re, im, offset, count);
+		}
+
+		@Override
+		void read(int sample, float[] re, float[] im, int offset, int count)
+		{
+			eFormat.read(input, iStart + sample * eFormat.getBytesPerSample(), re, im, offset, count);
+		}
+
+		@Override
+		short[] toShortArray(int sampleCount)
+		{
+			final short[] output = getConversionBuffer(sampleCount * 2);
+			eFormat.read(input, iStart, output, 0, output.length);
+			return output;
+		}
+	}
+
+	/**
+	 * Same as computeFFT, but for real-valued input. Only the positive-frequency half of the spectrum is displayed, at the
+	 * same resolution as the complex case, for roughly half the CPU cost.
+	 * 
+	 * This method and computeFFT() fill up separate frames, so calls to them can be mixed on the same graph, though the
+	 * display will then alternate between the two spectra.
+	 * 
+	 * @param input an array containing real-valued samples
+	 */
+	public void computeRealFFT(short[] input)
+	{
+		// The GUI thread might change the current resolution.
+		// Make a local copy of it (instead of synchronization)
+		final int currentResolution = this.currentFFTResolution;
+		final IFFTEngineFactory currentFactory = this.oFFTEngineFactory;
+
+		if (oRealFFT == null)
+		{
+			initialiseRealFFT_Buffer(currentResolution, currentFactory);
+		}
+		else if (oRealFFT.getFFT_size() != currentResolution || oCurrentRealFFTEngineFactory != currentFactory)
+		{
+			// only change the size when the filling-up process finishes.
+			reInitialiseRealFFT_Buffer = true;
+		}
+
+		double[] buffer = oRealFFT.getInputBuffer();
+
+		for (int i = 0; i < input.length; i++)
+		{
+			if (realFFTBufferIndex >= buffer.length)
+			{
+				if (reInitialiseRealFFT_Buffer)
+				{
+					initialiseRealFFT_Buffer(currentResolution, currentFactory);
+					buffer = oRealFFT.getInputBuffer();
+					reInitialiseRealFFT_Buffer = false;
+				}
+				else
+				{
+					// if we exceed the max data rate, we start dumping frames to keep the CPU usage reasonable
+					++realDumpingCounter;
+					if (realDumpingCounter > dumpingCounterMax)
+					{
+						doRealFFT(currentResolution);
+
+						realDumpingCounter = 0;
+					}
+
+					// reset bufferindex to start filling up again
+					realFFTBufferIndex = 0;
+				}
+			}
+
+			buffer[realFFTBufferIndex] = input[i];
+			++realFFTBufferIndex;
+		}
+	}
+
+	private void initialiseRealFFT_Buffer(final int currentResolution, final IFFTEngineFactory factory)
+	{
+		oRealFFT = new RealFFT(currentResolution, true, factory);
+		oCurrentRealFFTEngineFactory = factory;
+		// when we resize the oFFT, we need to reset the buffer index
+		realFFTBufferIndex = 0;
+		// set this in such a way that we will do an oFFT as soon as possible
+		realDumpingCounter = dumpingCounterMax;
+	}
+
+	private void computeAveragedFFT(short[] input, final int currentResolution, final IFFTEngineFactory factory,
+			final WelchEstimator.AveragingMode averagingMode)
+	{
+		if (oWelchEstimator == null || oWelchEstimator.getFFT_size() != currentResolution || oWelchEngineFactory != factory)
+		{
+			oWelchEstimator = new WelchEstimator(currentResolution, true, factory);
+			oWelchEngineFactory = factory;
+			oWelchEstimator.setListener(new WelchEstimator.ISpectrumListener()
+			{
+				public void spectrumReady(WelchEstimator source)
+				{
+					source.getSpectrum(getDisplayBuffer(source.getFFT_size()));
+					publishDisplayData();
+				}
+			});
+		}
+		oWelchEstimator.setAveragingMode(averagingMode);
+		oWelchEstimator.setOverlap(eOverlap);
+		oWelchEstimator.setTransformsPerFrame(iTransformsPerFrame);
+		oWelchEstimator.setScaling(getPreFFTScalingFactor(currentResolution), LOST_ENERGY);
+		oWelchEstimator.setLogMode(eLogMode);
+		oWelchEstimator.process(input);
+	}
+
+	/**
+	 * @return the zoom-FFT for the current zoom band, or null if the normal FFT should be used.
+	 */
+	private ZoomFFT getZoomFFT(final int currentResolution, final IFFTEngineFactory factory)
+	{
+		final double[] zoomBand = this.adZoomBand;
+		final double bandwidth = getMaximumXZoomLimit() - getMinimumXZoomLimit();
+		if (!bZoomFFTEnabled || zoomBand == null || bandwidth <= 0 || zoomBand[1] <= zoomBand[0])
+		{
+			oZoomFFT = null;
+			return null;
+		}
+		final int decimation = (int) Math.min(MAX_ZOOM_DECIMATION, Math.floor(bandwidth / (zoomBand[1] - zoomBand[0])));
+		if (decimation < 2)
+		{
+			oZoomFFT = null;
+			return null;
+		}
+		double centre = ((zoomBand[0] + zoomBand[1]) / 2 - getMinimumXZoomLimit()) / bandwidth - 0.5;
+		centre = Math.max(-0.5, Math.min(0.5, centre));
+
+		if (oZoomFFT == null || oZoomFFT.getFFT_size() != currentResolution || oZoomFFT.getDecimation() != decimation
+				|| oZoomFFT.getCentreFrequency() != centre || oZoomEngineFactory != factory)
+		{
+			oZoomFFT = new ZoomFFT(currentResolution, decimation, centre, true, factory);
+			oZoomEngineFactory = factory;
+			oZoomFFT.setListener(new ZoomFFT.ISpectrumListener()
+			{
+				public void spectrumReady(ZoomFFT source)
+				{
+					source.getSpectrum(getDisplayBuffer(source.getFFT_size()));
+					final double fullBandwidth = getMaximumXZoomLimit() - getMinimumXZoomLimit();
+					final double centre_Hz = getMinimumXZoomLimit() + fullBandwidth * (0.5 + source.getCentreFrequency());
+					final double bandwidth_Hz = fullBandwidth * source.getBandwidth();
+					publishDisplayData(centre_Hz - (bandwidth_Hz / 2), centre_Hz + (bandwidth_Hz / 2));
+				}
+			});
+		}
+		return oZoomFFT;
+	}
+
+	private int getCurrentFFTSize()
+	{
+		return oFloatFFT != null ? oFloatFFT.getFFT_size() : oFFT.getFFT_size();
+	}
+
+	private void initialiseFFT_Buffer(final int currentResolution, final IFFTEngineFactory factory,
+			final boolean singlePrecision)
+	{
+		if (singlePrecision && Integer.bitCount(currentResolution) == 1)
+		{
+			oFloatFFT = new FloatFFT(currentResolution, true);
+			oFFT = null;
+		}
+		else
+		{
+			oFFT = factory.createEngine(currentResolution, true);
+			oFloatFFT = null;
+		}
+		oCurrentFFTEngineFactory = factory;
+		bCurrentSinglePrecision = singlePrecision;
 		// when we resize the oFFT, we need to reset the fftBufferIndex
 		fftBufferIndex = 0;
 		// set this in such a way that we will do an oFFT as soon as possible
 		dumpingCounter = dumpingCounterMax;
 	}
 
-	private void doFFT(final int currentResolution)
+	private double getPreFFTScalingFactor(final int currentResolution)
 	{
 		final double fullScaleAmplitude_dBm = getMaximumYZoomLimit();
-		final double preFFTScalingFactor = Math.pow(10.0, fullScaleAmplitude_dBm / 20.0)
-				/ ((long) Short.MAX_VALUE * currentResolution);
+		return Math.pow(10.0, fullScaleAmplitude_dBm / 20.0) / ((long) Short.MAX_VALUE * currentResolution);
+	}
+
+	private static final double POST_FFT_SCALING_FACTOR = 20.0 / Math.log(10);
 
-		final double postFFTScalingFactor = 20.0 / Math.log(10);
+	// This is just an estimate of the difference between PXGViewer and PXGAnalysis
+	private static final double LOST_ENERGY = 6.87;
 
-		// This is just an estimate of the difference between PXGViewer and PXGAnalysis
-		final double lostEnergy = 6.87;
+	private void doFFT(final int currentResolution)
+	{
+		final double preFFTScalingFactor = getPreFFTScalingFactor(currentResolution);
+		final double postFFTScalingFactor = POST_FFT_SCALING_FACTOR;
+		final double lostEnergy = LOST_ENERGY;
 
 		/*
-		 * Calculate oFFT and get the spectra. 
-		 * Returning a temporary array that will be reused for next calculation, in
-		 * order to avoid the unnecessary array-creation. 
-		 * Hence, don't modify and/or store the resultant array; rather copy
-		 * the values then process the copied values.
+		 * Calculate oFFT and write the spectra straight into the display line data.
 		 */
-		final double[] dMagnitude = oFFT.calculate(preFFTScalingFactor, postFFTScalingFactor, lostEnergy);
+		final float[] afDisplayData = getDisplayBuffer(currentResolution);
+		final LogMode logMode = this.eLogMode;
+		if (oFloatFFT != null)
+		{
+			oFloatFFT.setLogMode(logMode);
+			oFloatFFT.calculate((float) preFFTScalingFactor, (float) postFFTScalingFactor, (float) lostEnergy,
+					oDisplayLineData);
+		}
+		else
+		{
+			oFFT.setLogMode(logMode);
+			oFFT.calculate(preFFTScalingFactor, postFFTScalingFactor, lostEnergy, afDisplayData);
+		}
 
+		publishDisplayData();
+	}
+
+	/**
+	 * Display the spectrum that has been written into the display line data.
+	 */
+	private void publishDisplayData()
+	{
 		final double bandwidth_Hz = getMaximumXZoomLimit() - getMinimumXZoomLimit();
 		final double centreFrequency_Hz = getMinimumXZoomLimit() + (bandwidth_Hz/2f);
-		setGraphData(centreFrequency_Hz - (bandwidth_Hz / 2), centreFrequency_Hz + (bandwidth_Hz / 2),
-				convertToDoubleArray(dMagnitude));
+		publishDisplayData(centreFrequency_Hz - (bandwidth_Hz / 2), centreFrequency_Hz + (bandwidth_Hz / 2));
+	}
+
+	private void publishDisplayData(double minimumX, double maximumX)
+	{
+		if (minimumX != dDisplayMinimumX || maximumX != dDisplayMaximumX)
+		{
+			// don't change the X range of the line data that is currently being displayed, the paint code might be busy
+			// with it. The Y values can still be shared.
+			oDisplayLineData = new GeneratedLineData(minimumX, maximumX, oDisplayLineData.getNumberOfPoints(),
+					oDisplayLineData.getYValues());
+			dDisplayMinimumX = minimumX;
+			dDisplayMaximumX = maximumX;
+		}
+		setGraphData(oDisplayLineData);
+	}
+
+	private void doRealFFT(final int currentResolution)
+	{
+		final float[] afDisplayData = getDisplayBuffer(currentResolution / 2 + 1);
+		oRealFFT.setLogMode(eLogMode);
+		oRealFFT.calculate(getPreFFTScalingFactor(currentResolution), POST_FFT_SCALING_FACTOR, LOST_ENERGY,
+				afDisplayData);
+
+		publishDisplayData(getMinimumXZoomLimit(), getMaximumXZoomLimit());
+	}
+
+	/**
+	 * @return the resolutions that setFFTResolution() accepts, in ascending order
+	 */
+	public static List<Short> getResolutionList()
+	{
+		return Collections.unmodifiableList(resolutionList);
 	}
 
 	public static boolean isValidResolution(short resolution)
@@ -0,0 +1,215 @@
+package com.peralex.utilities.fft;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the lookup tables used by the FFT engines.
+ *
+ * The tables (and the plans of the engines that support arbitrary sizes) only depend on the FFT size, so every engine
+ * of a given size shares one copy. With dozens of channels at large FFT sizes, this saves megabytes of duplicate tables,
+ * and makes creating a new engine almost free.
+ *
+ * The returned arrays are shared, so they must never be modified.
+ */
+final class FFTTables
+{
+	private static final Map<Integer, int[]> bitReversalTables = new HashMap<Integer, int[]>();
+
+	private static final Map<Integer, double[]> sineTables = new HashMap<Integer, double[]>();
+
+	private static final Map<Integer, double[][]> radix4Twiddles = new HashMap<Integer, double[][]>();
+
+	private static final Map<Integer, double[][][]> planarRadix4Twiddles = new HashMap<Integer, double[][][]>();
+
+	private static final Map<Integer, float[][]> floatRadix4Twiddles = new HashMap<Integer, float[][]>();
+
+	private static final Map<Integer, double[]> realFFTTwiddles = new HashMap<Integer, double[]>();
+
+	private static final Map<Integer, MixedRadixFFT.Plan> mixedRadixPlans = new HashMap<Integer, MixedRadixFFT.Plan>();
+
+	private static final Map<Integer, BluesteinFFT.Plan> bluesteinPlans = new HashMap<Integer, BluesteinFFT.Plan>();
+
+	/** not meant to be instantiated. */
+	private FFTTables()
+	{
+	}
+
+	/**
+	 * @return the bit reversal lookup table.
+	 */
+	public static synchronized int[] getBitReversalTable(int FFT_size)
+	{
+		int[] table = bitReversalTables.get(Integer.valueOf(FFT_size));
+		if (table == null)
+		{
+			final int order = AbstractFFTEngine.checkPowerOfTwo(FFT_size);
+			table = new int[FFT_size];
+			for (int index = 0; index < FFT_size; index++)
+			{
+				int result = 0;
+				for (int loop = 0; loop < order; loop++)
+				{
+					if ((index & (1 << loop)) != 0)
+					{
+						result |= (1 << (order - 1 - loop));
+					}
+				}
+				table[index] = result;
+			}
+			bitReversalTables.put(Integer.valueOf(FFT_size), table);
+		}
+		return table;
+	}
+
+	/**
+	 * @return a sampling of sin(x) for x = 0 to 2pi step d, where d is 2pi/N.
+	 */
+	public static synchronized double[] getSineTable(int FFT_size)
+	{
+		double[] table = sineTables.get(Integer.valueOf(FFT_size));
+		if (table == null)
+		{
+			table = new double[FFT_size];
+			for (int i = 0; i < FFT_size; i++)
+			{
+				table[i] = Math.sin((i * (2 * Math.PI)) / FFT_size);
+			}
+			sineTables.put(Integer.valueOf(FFT_size), table);
+		}
+		return table;
+	}
+
+	/**
+	 * For each radix-4 stage with quarter-span h (from N/4 down to 1), the twiddle factors W^j, W^2j, W^3j
+	 * (W = e^(-2*pi*i/4h)) for j=0..h-1, stored interleaved as (re,im,re,im,re,im).
+	 */
+	public static synchronized double[][] getRadix4Twiddles(int FFT_size)
+	{
+		double[][] tables = radix4Twiddles.get(Integer.valueOf(FFT_size));
+		if (tables == null)
+		{
+			final int order = AbstractFFTEngine.checkPowerOfTwo(FFT_size);
+			tables = new double[order / 2][];
+			int h = FFT_size >> 2;
+			for (int stage = 0; stage < tables.length; stage++, h >>= 2)
+			{
+				final double[] tw = new double[6 * h];
+				final double theta = -2 * Math.PI / (4 * h);
+				for (int j = 0; j < h; j++)
+				{
+					tw[6 * j] = Math.cos(theta * j);
+					tw[6 * j + 1] = Math.sin(theta * j);
+					tw[6 * j + 2] = Math.cos(theta * 2 * j);
+					tw[6 * j + 3] = Math.sin(theta * 2 * j);
+					tw[6 * j + 4] = Math.cos(theta * 3 * j);
+					tw[6 * j + 5] = Math.sin(theta * 3 * j);
+				}
+				tables[stage] = tw;
+			}
+			radix4Twiddles.put(Integer.valueOf(FFT_size), tables);
+		}
+		return tables;
+	}
+
+	/**
+	 * The same values as getRadix4Twiddles(), but with each of W^j.re, W^j.im, W^2j.re, W^2j.im, W^3j.re, W^3j.im in
+	 * it's own array, indexed by j, so that consecutive j's can be loaded into a vector register at once.
+	 */
+	public static synchronized double[][][] getPlanarRadix4Twiddles(int FFT_size)
+	{
+		double[][][] tables = planarRadix4Twiddles.get(Integer.valueOf(FFT_size));
+		if (tables == null)
+		{
+			final double[][] adTables = getRadix4Twiddles(FFT_size);
+			tables = new double[adTables.length][6][];
+			for (int stage = 0; stage < adTables.length; stage++)
+			{
+				final int h = adTables[stage].length / 6;
+				for (int component = 0; component < 6; component++)
+				{
+					final double[] table = new double[h];
+					for (int j = 0; j < h; j++)
+					{
+						table[j] = adTables[stage][6 * j + component];
+					}
+					tables[stage][component] = table;
+				}
+			}
+			planarRadix4Twiddles.put(Integer.valueOf(FFT_size), tables);
+		}
+		return tables;
+	}
+
+	/**
+	 * Single-precision version of getRadix4Twiddles().
+	 */
+	public static synchronized float[][] getFloatRadix4Twiddles(int FFT_size)
+	{
+		float[][] tables = floatRadix4Twiddles.get(Integer.valueOf(FFT_size));
+		if (tables == null)
+		{
+			final double[][] adTables = getRadix4Twiddles(FFT_size);
+			tables = new float[adTables.length][];
+			for (int stage = 0; stage < adTables.length; stage++)
+			{
+				tables[stage] = toFloat(adTables[stage]);
+			}
+			floatRadix4Twiddles.put(Integer.valueOf(FFT_size), tables);
+		}
+		return tables;
+	}
+
+	/**
+	 * @return cos/sin of 2*pi*k/N for k=0..N/2-1, interleaved.
+	 */
+	public static synchronized double[] getRealFFTTwiddles(int FFT_size)
+	{
+		double[] table = realFFTTwiddles.get(Integer.valueOf(FFT_size));
+		if (table == null)
+		{
+			final int half = FFT_size / 2;
+			table = new double[2 * half];
+			for (int k = 0; k < half; k++)
+			{
+				final double theta = (2 * Math.PI * k) / FFT_size;
+				table[2 * k] = Math.cos(theta);
+				table[2 * k + 1] = Math.sin(theta);
+			}
+			realFFTTwiddles.put(Integer.valueOf(FFT_size), table);
+		}
+		return table;
+	}
+
+	public static synchronized MixedRadixFFT.Plan getMixedRadixPlan(int FFT_size)
+	{
+		MixedRadixFFT.Plan plan = mixedRadixPlans.get(Integer.valueOf(FFT_size));
+		if (plan == null)
+		{
+			plan = new MixedRadixFFT.Plan(FFT_size);
+			mixedRadixPlans.put(Integer.valueOf(FFT_size), plan);
+		}
+		return plan;
+	}
+
+	public static synchronized BluesteinFFT.Plan getBluesteinPlan(int FFT_size)
+	{
+		BluesteinFFT.Plan plan = bluesteinPlans.get(Integer.valueOf(FFT_size));
+		if (plan == null)
+		{
+			plan = new BluesteinFFT.Plan(FFT_size);
+			bluesteinPlans.put(Integer.valueOf(FFT_size), plan);
+		}
+		return plan;
+	}
+
+	static float[] toFloat(double[] values)
+	{
+		final float[] result = new float[values.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			result[i] = (float) values[i];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,268 @@
+package com.peralex.utilities.fft;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of FFT window functions.
+ *
+ * Windows are created once per (type, size, parameter) and then shared, so the coefficient arrays must never be
+ * modified. Each window knows it's coherent gain and equivalent noise bandwidth (ENBW), which are needed to correct
+ * the amplitude of tones and the level of the noise floor respectively.
+ *
+ * Except for BLACKMAN, which is kept exactly as FFT.blackmanWindow() has always calculated it, the windows are
+ * periodic (DFT-even), which is the correct form for spectral analysis.
+ */
+public final class FFTWindow
+{
+	public static enum Type
+	{
+		RECTANGULAR, HANN, HAMMING, BLACKMAN, BLACKMAN_HARRIS, FLAT_TOP, KAISER
+	}
+
+	/**
+	 * The beta used for KAISER windows when none is specified, gives sidelobes roughly 90dB down.
+	 */
+	public static final double DEFAULT_KAISER_BETA = 12.0;
+
+	private static final Map<Key, FFTWindow> cache = new HashMap<Key, FFTWindow>();
+
+	private final Type eType;
+
+	private final double dParameter;
+
+	private final double[] adCoefficients;
+
+	private final float[] afCoefficients;
+
+	private final double dCoherentGain;
+
+	private final double dENBW;
+
+	/**
+	 * @return the shared window of the given type and size. KAISER windows use DEFAULT_KAISER_BETA.
+	 */
+	public static FFTWindow get(Type eType, int iSize)
+	{
+		return get(eType, iSize, eType == Type.KAISER ? DEFAULT_KAISER_BETA : 0);
+	}
+
+	/**
+	 * @return the shared Kaiser window of the given size and beta.
+	 */
+	public static FFTWindow getKaiser(int iSize, double dBeta)
+	{
+		return get(Type.KAISER, iSize, dBeta);
+	}
+
+	private static synchronized FFTWindow get(Type eType, int iSize, double dParameter)
+	{
+		if (iSize <= 0)
+		{
+			throw new IllegalArgumentException("window size must be positive " + iSize);
+		}
+		final Key key = new Key(eType, iSize, dParameter);
+		FFTWindow window = cache.get(key);
+		if (window == null)
+		{
+			window = new FFTWindow(eType, dParameter, calculate(eType, iSize, dParameter));
+			cache.put(key, window);
+		}
+		return window;
+	}
+
+	private FFTWindow(Type eType, double dParameter, double[] adCoefficients)
+	{
+		this.eType = eType;
+		this.dParameter = dParameter;
+		this.adCoefficients = adCoefficients;
+		this.afCoefficients = FFTTables.toFloat(adCoefficients);
+
+		double sum = 0;
+		double sumSquares = 0;
+		for (double w : adCoefficients)
+		{
+			sum += w;
+			sumSquares += w * w;
+		}
+		this.dCoherentGain = sum / adCoefficients.length;
+		this.dENBW = adCoefficients.length * sumSquares / (sum * sum);
+	}
+
+	private static double[] calculate(Type eType, int iSize, double dParameter)
+	{
+		final double[] w = new double[iSize];
+		final double x = (2 * Math.PI) / iSize;
+		switch (eType)
+		{
+		case RECTANGULAR:
+			for (int n = 0; n < iSize; n++)
+			{
+				w[n] = 1.0;
+			}
+			break;
+		case HANN:
+			for (int n = 0; n < iSize; n++)
+			{
+				w[n] = 0.5 - 0.5 * Math.cos(x * n);
+			}
+			break;
+		case HAMMING:
+			for (int n = 0; n < iSize; n++)
+			{
+				w[n] = 0.54 - 0.46 * Math.cos(x * n);
+			}
+			break;
+		case BLACKMAN:
+			return FFT.blackmanWindow(iSize);
+		case BLACKMAN_HARRIS:
+			for (int n = 0; n < iSize; n++)
+			{
+				w[n] = 0.35875 - 0.48829 * Math.cos(x * n) + 0.14128 * Math.cos(2 * x * n) - 0.01168
+						* Math.cos(3 * x * n);
+			}
+			break;
+		case FLAT_TOP:
+			for (int n = 0; n < iSize; n++)
+			{
+				w[n] = 0.21557895 - 0.41663158 * Math.cos(x * n) + 0.277263158 * Math.cos(2 * x * n) - 0.083578947
+						* Math.cos(3 * x * n) + 0.006947368 * Math.cos(4 * x * n);
+			}
+			break;
+		case KAISER:
+			final double denominator = besselI0(dParameter);
+			for (int n = 0; n < iSize; n++)
+			{
+				final double r = (2.0 * n) / iSize - 1.0;
+				w[n] = besselI0(dParameter * Math.sqrt(1 - r * r)) / denominator;
+			}
+			break;
+		}
+		return w;
+	}
+
+	/**
+	 * Zeroth-order modified Bessel function of the first kind, by power series.
+	 */
+	private static double besselI0(double x)
+	{
+		final double quarterX2 = x * x / 4;
+		double sum = 1;
+		double term = 1;
+		for (int k = 1; k < 500; k++)
+		{
+			term *= quarterX2 / (k * (double) k);
+			sum += term;
+			if (term < sum * 1e-17)
+			{
+				break;
+			}
+		}
+		return sum;
+	}
+
+	public Type getType()
+	{
+		return eType;
+	}
+
+	/**
+	 * @return beta for Kaiser windows, otherwise 0
+	 */
+	public double getParameter()
+	{
+		return dParameter;
+	}
+
+	public int getSize()
+	{
+		return adCoefficients.length;
+	}
+
+	/**
+	 * @return the shared coefficients, do not modify.
+	 */
+	public double[] getCoefficients()
+	{
+		return adCoefficients;
+	}
+
+	/**
+	 * @return the shared coefficients, do not modify.
+	 */
+	public float[] getFloatCoefficients()
+	{
+		return afCoefficients;
+	}
+
+	/**
+	 * @return the mean of the window, i.e. the factor by which the window reduces the amplitude of a tone.
+	 */
+	public double getCoherentGain()
+	{
+		return dCoherentGain;
+	}
+
+	/**
+	 * @return the amount in dB that needs to be added to a tone's level to correct for the coherent gain.
+	 */
+	public double getCoherentGainCorrection_dB()
+	{
+		return -20 * Math.log10(dCoherentGain);
+	}
+
+	/**
+	 * @return the equivalent noise bandwidth, in bins.
+	 */
+	public double getENBW()
+	{
+		return dENBW;
+	}
+
+	/**
+	 * @return the amount in dB that needs to be subtracted from the noise level per bin to get the noise level per
+	 *         unit bin-width.
+	 */
+	public double getENBWCorrection_dB()
+	{
+		return 10 * Math.log10(dENBW);
+	}
+
+	private static final class Key
+	{
+		private final Type eType;
+		private final int iSize;
+		private final double dParameter;
+
+		Key(Type eType, int iSize, double dParameter)
+		{
+			this.eType = eType;
+			this.iSize = iSize;
+			this.dParameter = dParameter;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + eType.hashCode();
+			result = prime * result + iSize;
+			final long temp = Double.doubleToLongBits(dParameter);
+			result = prime * result + (int) (temp ^ (temp >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			final Key other = (Key) obj;
+			return eType == other.eType && iSize == other.iSize
+					&& Double.doubleToLongBits(dParameter) == Double.doubleToLongBits(other.dParameter);
+		}
+	}
+}
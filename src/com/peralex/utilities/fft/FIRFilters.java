@@ -0,0 +1,36 @@
+package com.peralex.utilities.fft;
+
+/**
+ * Filter design for the classes in this package that need a low-pass filter before decimating.
+ */
+final class FIRFilters
+{
+	/** not meant to be instantiated. */
+	private FIRFilters()
+	{
+	}
+
+	/**
+	 * Blackman-windowed sinc, with unity gain at DC.
+	 *
+	 * @param cutoff the -6dB point, normalised to the sample rate
+	 */
+	static double[] lowPass(int length, double cutoff)
+	{
+		final double[] window = FFT.blackmanWindow(length);
+		final double middle = (length - 1) / 2.0;
+		final double[] filter = new double[length];
+		double sum = 0;
+		for (int i = 0; i < length; i++)
+		{
+			final double x = 2 * Math.PI * cutoff * (i - middle);
+			filter[i] = (x == 0 ? 1.0 : Math.sin(x) / x) * window[i];
+			sum += filter[i];
+		}
+		for (int i = 0; i < length; i++)
+		{
+			filter[i] /= sum;
+		}
+		return filter;
+	}
+}
@@ -0,0 +1,94 @@
+package com.peralex.utilities.fft;
+
+/**
+ * A fast approximation of the logarithm, for converting spectra to dB.
+ *
+ * The exponent is taken straight from the bits of the floating-point number, and the log of the mantissa is interpolated
+ * linearly in a table of 1024 entries. The absolute error of log2() is less than 2E-7, i.e. less than 1E-6 dB.
+ */
+public final class FastLog
+{
+	private static final int TABLE_BITS = 10;
+
+	/**
+	 * log2(1 + i/1024) for i=0..1024.
+	 */
+	private static final double[] LOG2_TABLE = new double[(1 << TABLE_BITS) + 1];
+
+	private static final int DOUBLE_FRACTION_BITS = 52 - TABLE_BITS;
+
+	private static final long DOUBLE_FRACTION_MASK = (1L << DOUBLE_FRACTION_BITS) - 1;
+
+	private static final double DOUBLE_FRACTION_SCALE = 1.0 / (1L << DOUBLE_FRACTION_BITS);
+
+	private static final int FLOAT_FRACTION_BITS = 23 - TABLE_BITS;
+
+	private static final int FLOAT_FRACTION_MASK = (1 << FLOAT_FRACTION_BITS) - 1;
+
+	private static final float FLOAT_FRACTION_SCALE = 1.0f / (1 << FLOAT_FRACTION_BITS);
+
+	/**
+	 * used to normalise subnormal numbers.
+	 */
+	private static final double TWO_POW_54 = 18014398509481984.0;
+
+	private static final float TWO_POW_25 = 33554432.0f;
+
+	public static final double LN_2 = Math.log(2);
+
+	static
+	{
+		for (int i = 0; i < LOG2_TABLE.length; i++)
+		{
+			LOG2_TABLE[i] = Math.log(1 + (double) i / (1 << TABLE_BITS)) / LN_2;
+		}
+	}
+
+	/** not meant to be instantiated. */
+	private FastLog()
+	{
+	}
+
+	/**
+	 * @param x must be positive and finite
+	 */
+	public static double log2(double x)
+	{
+		final long bits = Double.doubleToRawLongBits(x);
+		final int exponent = (int) (bits >>> 52);
+		if (exponent == 0)
+		{
+			return log2(x * TWO_POW_54) - 54;
+		}
+		final int index = (int) ((bits >>> DOUBLE_FRACTION_BITS) & ((1 << TABLE_BITS) - 1));
+		final double fraction = (bits & DOUBLE_FRACTION_MASK) * DOUBLE_FRACTION_SCALE;
+		final double lower = LOG2_TABLE[index];
+		return (exponent - 1023) + lower + (LOG2_TABLE[index + 1] - lower) * fraction;
+	}
+
+	/**
+	 * @param x must be positive and finite
+	 */
+	public static float log2(float x)
+	{
+		final int bits = Float.floatToRawIntBits(x);
+		final int exponent = bits >>> 23;
+		if (exponent == 0)
+		{
+			return log2(x * TWO_POW_25) - 25;
+		}
+		final int index = (bits >>> FLOAT_FRACTION_BITS) & ((1 << TABLE_BITS) - 1);
+		final float fraction = (bits & FLOAT_FRACTION_MASK) * FLOAT_FRACTION_SCALE;
+		final float lower = (float) LOG2_TABLE[index];
+		return (exponent - 127) + lower + ((float) LOG2_TABLE[index + 1] - lower) * fraction;
+	}
+
+	/**
+	 * @param x must be positive and finite
+	 * @return an approximation of Math.log(x)
+	 */
+	public static double log(double x)
+	{
+		return log2(x) * LN_2;
+	}
+}
@@ -0,0 +1,268 @@
+package com.peralex.utilities.fft;
+
+import com.peralex.utilities.ui.graphs.lineGraph.GeneratedLineData;
+
+/**
+ * A single-precision version of Radix4FFT, for spectra that are only going to be displayed.
+ *
+ * Float buffers halve the memory traffic of the double-precision engines, and the log-magnitude result is written
+ * straight into the caller's float array (typically the Y values of the line data being displayed), so there is no
+ * intermediate copy.
+ */
+public class FloatFFT
+{
+	/**
+	 * Number of points in the FFT.
+	 */
+	private final int iFFT_size;
+
+	/**
+	 * true if we need a radix-2 stage after the radix-4 stages.
+	 */
+	private final boolean bRadix2Stage;
+
+	/**
+	 * Permutation LUT.
+	 */
+	private final int[] aiPermLUT;
+
+	/**
+	 * Same layout as Radix4FFT's twiddle tables. Shared, see FFTTables.
+	 */
+	private final float[][] afTwiddles;
+
+	private final float[] afRealData;
+
+	private final float[] afImagData;
+
+	/**
+	 * shared, see FFTWindow.
+	 */
+	private final float[] afWindow;
+
+	private LogMode eLogMode = LogMode.MAGNITUDE;
+
+	/**
+	 * converts log2 of the power to the natural log of the magnitude.
+	 */
+	private static final float FAST_LOG_FACTOR = (float) (FastLog.LN_2 * 0.5);
+
+	/**
+	 * Constructor specifying FFT size.
+	 *
+	 * @param FFT_size Number of samples to FFT at a time. Must be a power of two.
+	 */
+	public FloatFFT(int FFT_size, boolean useBlackmanWindow)
+	{
+		this(FFT_size, FFTWindow.get(useBlackmanWindow ? FFTWindow.Type.BLACKMAN : FFTWindow.Type.RECTANGULAR,
+				FFT_size));
+	}
+
+	/**
+	 * Constructor specifying FFT size and window.
+	 *
+	 * @param FFT_size Number of samples to FFT at a time. Must be a power of two.
+	 */
+	public FloatFFT(int FFT_size, FFTWindow oWindow)
+	{
+		final int order = AbstractFFTEngine.checkPowerOfTwo(FFT_size);
+		if (oWindow.getSize() != FFT_size)
+		{
+			throw new IllegalArgumentException("window size " + oWindow.getSize() + " differs from the FFT size " + FFT_size);
+		}
+		this.iFFT_size = FFT_size;
+		this.bRadix2Stage = (order & 1) == 1;
+		this.aiPermLUT = FFTTables.getBitReversalTable(FFT_size);
+		this.afTwiddles = FFTTables.getFloatRadix4Twiddles(FFT_size);
+		this.afWindow = oWindow.getFloatCoefficients();
+		this.afRealData = new float[FFT_size];
+		this.afImagData = new float[FFT_size];
+	}
+
+	/**
+	 * Get the size that the FFT processor has been setup for.
+	 */
+	public final int getFFT_size()
+	{
+		return iFFT_size;
+	}
+
+	public float[] getRealBuffer()
+	{
+		return afRealData;
+	}
+
+	public float[] getImagBuffer()
+	{
+		return afImagData;
+	}
+
+	/**
+	 * After runFFT(), frequency bin k is stored at index getOutputPermutation()[k] of the internal buffers.
+	 */
+	public int[] getOutputPermutation()
+	{
+		return aiPermLUT;
+	}
+
+	/**
+	 * Apply the window, run the FFT and write the log-scaled spectrum, with the DC bin in the centre, into the output
+	 * array.
+	 *
+	 * @param output must be at least as long as the FFT size.
+	 */
+	public void calculate(float preFFTScalingFactor, float postFFTScalingFactor, float lostEnergy, float[] output)
+	{
+		for (int i = 0; i < iFFT_size; ++i)
+		{
+			final float coefficient = afWindow[i] * preFFTScalingFactor;
+			afRealData[i] *= coefficient;
+			afImagData[i] *= coefficient;
+		}
+
+		runFFT();
+
+		// write the upper half of the spectrum first, so that DC ends up in the centre
+		final int half = iFFT_size / 2;
+		for (int i = half, j = 0; i < iFFT_size; ++i, ++j)
+		{
+			output[j] = logValue(aiPermLUT[i], postFFTScalingFactor, lostEnergy);
+		}
+		for (int i = 0, j = iFFT_size - half; i < half; ++i, ++j)
+		{
+			output[j] = logValue(aiPermLUT[i], postFFTScalingFactor, lostEnergy);
+		}
+	}
+
+	/**
+	 * Same as calculate(float, float, float, float[]), but writes into the Y values of the line data, which must have the
+	 * same number of points as the FFT.
+	 */
+	public void calculate(float preFFTScalingFactor, float postFFTScalingFactor, float lostEnergy,
+			GeneratedLineData oLineData)
+	{
+		final float[] afYValues = oLineData.getYValues();
+		if (afYValues == null || afYValues.length != iFFT_size)
+		{
+			throw new IllegalArgumentException("line data must have the same number of points as the FFT, " + iFFT_size);
+		}
+		calculate(preFFTScalingFactor, postFFTScalingFactor, lostEnergy, afYValues);
+	}
+
+	/**
+	 * Select how calculate() does the log conversion, the default is LogMode.MAGNITUDE.
+	 */
+	public void setLogMode(LogMode eLogMode)
+	{
+		if (eLogMode == null)
+		{
+			throw new IllegalArgumentException("log mode may not be null");
+		}
+		this.eLogMode = eLogMode;
+	}
+
+	public LogMode getLogMode()
+	{
+		return eLogMode;
+	}
+
+	private float logValue(int p, float postFFTScalingFactor, float lostEnergy)
+	{
+		final float real = afRealData[p];
+		final float imaginary = afImagData[p];
+		if (eLogMode == LogMode.MAGNITUDE)
+		{
+			float m = (float) Math.sqrt((real * real) + (imaginary * imaginary));
+			if (m <= 0) // avoid zero, so the log of m won't be NaN
+			{
+				m = Float.MIN_VALUE;
+			}
+			return (float) Math.log(m) * postFFTScalingFactor + lostEnergy;
+		}
+
+		// log(m) = log(m^2)/2
+		final float power = (real * real) + (imaginary * imaginary);
+		if (power <= 0) // same value as a magnitude of zero
+		{
+			return (float) Math.log(Float.MIN_VALUE) * postFFTScalingFactor + lostEnergy;
+		}
+		if (eLogMode == LogMode.FAST_POWER)
+		{
+			return FastLog.log2(power) * (FAST_LOG_FACTOR * postFFTScalingFactor) + lostEnergy;
+		}
+		return (float) Math.log(power) * (0.5f * postFFTScalingFactor) + lostEnergy;
+	}
+
+	/**
+	 * Perform the FFT in-place on the internal buffers.
+	 */
+	public void runFFT()
+	{
+		final float[] re = afRealData;
+		final float[] im = afImagData;
+		final int n = iFFT_size;
+
+		int h = n >> 2;
+		for (int stage = 0; stage < afTwiddles.length; stage++, h >>= 2)
+		{
+			final float[] tw = afTwiddles[stage];
+			final int blockSize = h << 2;
+			for (int block = 0; block < n; block += blockSize)
+			{
+				for (int j = 0, t = 0; j < h; j++, t += 6)
+				{
+					final int i0 = block + j;
+					final int i1 = i0 + h;
+					final int i2 = i1 + h;
+					final int i3 = i2 + h;
+
+					final float s0r = re[i0] + re[i2];
+					final float s0i = im[i0] + im[i2];
+					final float s1r = re[i0] - re[i2];
+					final float s1i = im[i0] - im[i2];
+					final float s2r = re[i1] + re[i3];
+					final float s2i = im[i1] + im[i3];
+					final float s3r = re[i1] - re[i3];
+					final float s3i = im[i1] - im[i3];
+
+					// y0 = a+b+c+d
+					re[i0] = s0r + s2r;
+					im[i0] = s0i + s2i;
+
+					// y1 = (a+c-b-d) * W^2j
+					final float y1r = s0r - s2r;
+					final float y1i = s0i - s2i;
+					re[i1] = y1r * tw[t + 2] - y1i * tw[t + 3];
+					im[i1] = y1r * tw[t + 3] + y1i * tw[t + 2];
+
+					// y2 = (a-c - i(b-d)) * W^j
+					final float y2r = s1r + s3i;
+					final float y2i = s1i - s3r;
+					re[i2] = y2r * tw[t] - y2i * tw[t + 1];
+					im[i2] = y2r * tw[t + 1] + y2i * tw[t];
+
+					// y3 = (a-c + i(b-d)) * W^3j
+					final float y3r = s1r - s3i;
+					final float y3i = s1i + s3r;
+					re[i3] = y3r * tw[t + 4] - y3i * tw[t + 5];
+					im[i3] = y3r * tw[t + 5] + y3i * tw[t + 4];
+				}
+			}
+		}
+
+		if (bRadix2Stage)
+		{
+			for (int i = 0; i < n; i += 2)
+			{
+				final float ar = re[i];
+				final float ai = im[i];
+				final float br = re[i + 1];
+				final float bi = im[i + 1];
+				re[i] = ar + br;
+				im[i] = ai + bi;
+				re[i + 1] = ar - br;
+				im[i + 1] = ai - bi;
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.peralex.utilities.fft;
+
+/**
+ * A processor that performs a complex FFT of a fixed size.
+ * 
+ * The caller writes the time-domain data directly into the internal buffers returned by getRealBuffer() and
+ * getImagBuffer(), and then calls one of the calculation methods. After runFFT(), the buffers hold the frequency-domain
+ * data in an implementation-specific order, use getOutputPermutation() to locate a particular bin.
+ * 
+ * Implementations are not thread-safe, each thread needs it's own instance.
+ */
+public interface IFFTEngine
+{
+	/**
+	 * Get the size that the FFT processor has been setup for.
+	 */
+	int getFFT_size();
+
+	/**
+	 * the internal buffer holding the real part of the data. The FFT is performed in-place on this buffer.
+	 */
+	double[] getRealBuffer();
+
+	/**
+	 * the internal buffer holding the imaginary part of the data. The FFT is performed in-place on this buffer.
+	 */
+	double[] getImagBuffer();
+
+	/**
+	 * Perform the FFT in-place on the internal buffers.
+	 */
+	void runFFT();
+
+	/**
+	 * After runFFT(), frequency bin k is stored at index getOutputPermutation()[k] of the internal buffers.
+	 * 
+	 * @return a shared array, do not modify it.
+	 */
+	int[] getOutputPermutation();
+
+	/**
+	 * Calculate the magnitude spectra following an FFT calculation, in natural bin order.
+	 * 
+	 * @return the spectra of the FFT. This array will be reused for the next calculation.
+	 */
+	double[] calculateSpectra();
+
+	/**
+	 * Apply the window, run the FFT and convert the result to a log-scaled spectrum with the DC bin in the centre.
+	 * 
+	 * @return an array of spectrum data. This array will be reused for next calculation, in order to avoid the
+	 *         unnecessary array-creation. Hence, don't modify and/or store the resultant array; rather copy the values
+	 *         then process the copied values.
+	 */
+	double[] calculate(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy);
+
+	/**
+	 * Same as calculate(double, double, double), but writes the result straight into a float array, which saves a copy
+	 * when the result is going to be displayed.
+	 * 
+	 * @param output receives the N points of the spectrum, must be at least as long as the FFT size.
+	 */
+	void calculate(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy, float[] output);
+
+	/**
+	 * Select how the calculate() methods do the log conversion, the default is LogMode.MAGNITUDE.
+	 */
+	void setLogMode(LogMode eLogMode);
+
+	LogMode getLogMode();
+}
@@ -0,0 +1,9 @@
+package com.peralex.utilities.fft;
+
+/**
+ * Creates FFT engines. Used by FFTGraph to re-create it's engine when the resolution changes.
+ */
+public interface IFFTEngineFactory
+{
+	IFFTEngine createEngine(int FFT_size, boolean useBlackmanWindow);
+}
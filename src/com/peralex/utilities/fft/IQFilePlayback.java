@@ -0,0 +1,520 @@
+package com.peralex.utilities.fft;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.peralex.sharedlibs.dsphostl.TimeStamp;
+
+/**
+ * Plays back a recording of raw interleaved (real, imaginary) samples, by memory-mapping the file and handing the
+ * listeners one block at a time. The blocks are views of the mapped file, so nothing is copied, and files larger than
+ * the address space are mapped a window at a time.
+ *
+ * Playback runs on a thread of it's own, at real-time, at a multiple of real-time, or as fast as the listeners can take
+ * the blocks. step() can be used instead, to feed the blocks in on the calling thread, e.g. as a deterministic load for
+ * performance testing.
+ */
+public class IQFilePlayback
+{
+	private static final Logger logger = Logger.getLogger(IQFilePlayback.class);
+
+	/**
+	 * Notified on the playback thread (or the thread that calls step()).
+	 */
+	public interface IPlaybackListener
+	{
+		/**
+		 * @param block a read-only view of the samples, in the recording's byte order. Only valid for the duration of the
+		 *          call.
+		 * @param lSampleIndex the index of the first sample in the block
+		 */
+		void blockReady(IQFilePlayback source, ByteBuffer block, long lSampleIndex);
+
+		/**
+		 * The end of the recording was reached, and playback was paused (unless looping is enabled, and the recording is not
+		 * empty).
+		 */
+		void endOfRecording(IQFilePlayback source);
+	}
+
+	/**
+	 * the rate that makes playback go as fast as the listeners can process the blocks.
+	 */
+	public static final double AS_FAST_AS_POSSIBLE = 0;
+
+	/**
+	 * how much of the file is mapped at a time.
+	 */
+	private static final long MAPPING_WINDOW_SIZE = 64L << 20;
+
+	/**
+	 * if playback falls this far behind (e.g. because the listeners are too slow), it stops trying to catch up.
+	 */
+	private static final long MAX_LAG_ns = 1000000000L;
+
+	private final RandomAccessFile oFile;
+
+	private final FileChannel oChannel;
+
+	private final SampleFormat eFormat;
+
+	private final ByteOrder eByteOrder;
+
+	private final double dSampleRate_Hz;
+
+	private final TimeStamp oStartTime;
+
+	private final int iBlockSize;
+
+	private final long lSampleCount;
+
+	private final List<IPlaybackListener> oListeners = new CopyOnWriteArrayList<IPlaybackListener>();
+
+	private final Object oLock = new Object();
+
+	/**
+	 * the current mapping, and the byte offset in the file that it starts at.
+	 */
+	private MappedByteBuffer oMapping;
+
+	private long lMappingStart;
+
+	/**
+	 * the index of the next sample to be played, guarded by oLock.
+	 */
+	private long lPosition = 0;
+
+	private double dRate = 1.0;
+
+	private boolean bLooping = false;
+
+	private boolean bPlaying = false;
+
+	private boolean bClosed = false;
+
+	private Thread oThread;
+
+	/**
+	 * playback is paced from this point, which is reset whenever the position or the rate changes.
+	 */
+	private long lAnchorSample;
+
+	private long lAnchorTime_ns;
+
+	/**
+	 * @param oStartTime the time of the first sample in the recording
+	 * @param iBlockSize the number of samples passed to the listeners at a time
+	 */
+	public IQFilePlayback(File file, SampleFormat eFormat, ByteOrder eByteOrder, double dSampleRate_Hz,
+			TimeStamp oStartTime, int iBlockSize) throws IOException
+	{
+		if (dSampleRate_Hz <= 0)
+		{
+			throw new IllegalArgumentException("sample rate must be positive, " + dSampleRate_Hz);
+		}
+		if (iBlockSize < 1)
+		{
+			throw new IllegalArgumentException("block size must be positive, " + iBlockSize);
+		}
+		this.eFormat = eFormat;
+		this.eByteOrder = eByteOrder;
+		this.dSampleRate_Hz = dSampleRate_Hz;
+		this.oStartTime = oStartTime;
+		this.iBlockSize = iBlockSize;
+		this.oFile = new RandomAccessFile(file, "r");
+		this.oChannel = oFile.getChannel();
+		// a partial sample at the end of the file is ignored
+		this.lSampleCount = oChannel.size() / eFormat.getBytesPerSample();
+	}
+
+	public void addListener(IPlaybackListener oListener)
+	{
+		oListeners.add(oListener);
+	}
+
+	public void removeListener(IPlaybackListener oListener)
+	{
+		oListeners.remove(oListener);
+	}
+
+	/**
+	 * Convenience method that feeds the blocks straight into FFTGraph.computeFFT().
+	 */
+	public IPlaybackListener addGraph(final FFTGraph oGraph)
+	{
+		final IPlaybackListener listener = new IPlaybackListener()
+		{
+			public void blockReady(IQFilePlayback source, ByteBuffer block, long lSampleIndex)
+			{
+				oGraph.computeFFT(block, eFormat, eByteOrder);
+			}
+
+			public void endOfRecording(IQFilePlayback source)
+			{
+			}
+		};
+		addListener(listener);
+		return listener;
+	}
+
+	/**
+	 * Convenience method that feeds the blocks straight into SpectrogramStage.process(ByteBuffer, ...), stamped with the
+	 * time of their first sample. Also sets the stage's sample rate, so that each line gets the time of it's own frame.
+	 */
+	public IPlaybackListener addSpectrogram(final SpectrogramStage oStage)
+	{
+		oStage.setSampleRate_Hz(dSampleRate_Hz);
+		final IPlaybackListener listener = new IPlaybackListener()
+		{
+			public void blockReady(IQFilePlayback source, ByteBuffer block, long lSampleIndex)
+			{
+				oStage.process(block, eFormat, eByteOrder, getTime(lSampleIndex));
+			}
+
+			public void endOfRecording(IQFilePlayback source)
+			{
+			}
+		};
+		addListener(listener);
+		return listener;
+	}
+
+	public SampleFormat getSampleFormat()
+	{
+		return eFormat;
+	}
+
+	public ByteOrder getByteOrder()
+	{
+		return eByteOrder;
+	}
+
+	public double getSampleRate_Hz()
+	{
+		return dSampleRate_Hz;
+	}
+
+	public int getBlockSize()
+	{
+		return iBlockSize;
+	}
+
+	/**
+	 * @return the number of samples in the recording
+	 */
+	public long getSampleCount()
+	{
+		return lSampleCount;
+	}
+
+	public TimeStamp getStartTime()
+	{
+		return oStartTime;
+	}
+
+	/**
+	 * @return the time of the given sample
+	 */
+	public TimeStamp getTime(long lSampleIndex)
+	{
+		return oStartTime.add(TimeStamp.from_usec(Math.round(lSampleIndex * 1e6 / dSampleRate_Hz)));
+	}
+
+	/**
+	 * @return the index of the next sample to be played
+	 */
+	public long getPosition()
+	{
+		synchronized (oLock)
+		{
+			return lPosition;
+		}
+	}
+
+	/**
+	 * @param lSampleIndex clipped to the length of the recording
+	 */
+	public void seek(long lSampleIndex)
+	{
+		synchronized (oLock)
+		{
+			lPosition = Math.max(0, Math.min(lSampleCount, lSampleIndex));
+			resetPacing();
+		}
+	}
+
+	/**
+	 * Seek to the sample closest to the given time, clipped to the length of the recording.
+	 */
+	public void seek(TimeStamp oTime)
+	{
+		// not TimeStamp.subtract(), because the time may be before the start of the recording
+		final long offset_usec = oTime.getPeriod_usec() - oStartTime.getPeriod_usec();
+		seek(Math.round(offset_usec * dSampleRate_Hz / 1e6));
+	}
+
+	/**
+	 * @param dRate 1.0 for real-time, more for faster playback, or AS_FAST_AS_POSSIBLE
+	 */
+	public void setRate(double dRate)
+	{
+		if (dRate < 0)
+		{
+			throw new IllegalArgumentException("rate may not be negative, " + dRate);
+		}
+		synchronized (oLock)
+		{
+			this.dRate = dRate;
+			resetPacing();
+		}
+	}
+
+	public double getRate()
+	{
+		synchronized (oLock)
+		{
+			return dRate;
+		}
+	}
+
+	/**
+	 * When enabled, playback starts over at the beginning when it reaches the end.
+	 */
+	public void setLooping(boolean bLooping)
+	{
+		synchronized (oLock)
+		{
+			this.bLooping = bLooping;
+		}
+	}
+
+	public boolean isLooping()
+	{
+		synchronized (oLock)
+		{
+			return bLooping;
+		}
+	}
+
+	/**
+	 * Start (or resume) playback on the playback thread.
+	 */
+	public void play()
+	{
+		synchronized (oLock)
+		{
+			if (bClosed)
+			{
+				throw new IllegalStateException("playback has been closed");
+			}
+			if (oThread == null)
+			{
+				oThread = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						playbackLoop();
+					}
+				}, "IQFilePlayback");
+				oThread.setDaemon(true);
+				oThread.start();
+			}
+			bPlaying = true;
+			resetPacing();
+			oLock.notifyAll();
+		}
+	}
+
+	public void pause()
+	{
+		synchronized (oLock)
+		{
+			bPlaying = false;
+		}
+	}
+
+	public boolean isPlaying()
+	{
+		synchronized (oLock)
+		{
+			return bPlaying;
+		}
+	}
+
+	/**
+	 * Stop playback, and close the file.
+	 */
+	public void close() throws IOException
+	{
+		synchronized (oLock)
+		{
+			bClosed = true;
+			bPlaying = false;
+			oMapping = null;
+			oLock.notifyAll();
+		}
+		oFile.close();
+	}
+
+	/**
+	 * Pass the next block to the listeners, on the calling thread, without any pacing.
+	 *
+	 * @return false if the end of the recording has been reached
+	 */
+	public boolean step() throws IOException
+	{
+		final ByteBuffer block;
+		final long sampleIndex;
+		synchronized (oLock)
+		{
+			if (bClosed)
+			{
+				throw new IllegalStateException("playback has been closed");
+			}
+			sampleIndex = lPosition;
+			final int count = (int) Math.min(iBlockSize, lSampleCount - sampleIndex);
+			if (count <= 0)
+			{
+				return false;
+			}
+			block = mapBlock(sampleIndex, count);
+			lPosition = sampleIndex + count;
+		}
+		for (IPlaybackListener listener : oListeners)
+		{
+			listener.blockReady(this, block.duplicate().order(eByteOrder), sampleIndex);
+		}
+		return true;
+	}
+
+	/**
+	 * must be called with oLock held.
+	 *
+	 * @return a view of the block, re-mapping the file if the block is not inside the current mapping.
+	 */
+	private ByteBuffer mapBlock(long sampleIndex, int count) throws IOException
+	{
+		final int bytesPerSample = eFormat.getBytesPerSample();
+		final long start = sampleIndex * bytesPerSample;
+		final int length = count * bytesPerSample;
+		if (oMapping == null || start < lMappingStart || start + length > lMappingStart + oMapping.capacity())
+		{
+			final long size = Math.min(Math.max(MAPPING_WINDOW_SIZE, length), oChannel.size() - start);
+			oMapping = oChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			lMappingStart = start;
+		}
+		final ByteBuffer block = oMapping.duplicate();
+		final int offset = (int) (start - lMappingStart);
+		block.limit(offset + length);
+		block.position(offset);
+		return block.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * must be called with oLock held.
+	 */
+	private void resetPacing()
+	{
+		lAnchorSample = lPosition;
+		lAnchorTime_ns = System.nanoTime();
+	}
+
+	private void playbackLoop()
+	{
+		while (true)
+		{
+			final long delay_ns;
+			synchronized (oLock)
+			{
+				while (!bPlaying && !bClosed)
+				{
+					try
+					{
+						oLock.wait();
+					}
+					catch (InterruptedException ex)
+					{
+						return;
+					}
+				}
+				if (bClosed)
+				{
+					return;
+				}
+				if (dRate == AS_FAST_AS_POSSIBLE)
+				{
+					delay_ns = 0;
+				}
+				else
+				{
+					final long due_ns = lAnchorTime_ns
+							+ (long) ((lPosition - lAnchorSample) * 1e9 / (dRate * dSampleRate_Hz));
+					final long now_ns = System.nanoTime();
+					if (now_ns - due_ns > MAX_LAG_ns)
+					{
+						resetPacing();
+					}
+					delay_ns = due_ns - now_ns;
+				}
+			}
+
+			try
+			{
+				if (delay_ns > 0)
+				{
+					Thread.sleep(delay_ns / 1000000, (int) (delay_ns % 1000000));
+				}
+				if (!isPlaying())
+				{
+					continue;
+				}
+				if (!step())
+				{
+					// an empty recording would otherwise be re-started forever, without ever sleeping
+					if (isLooping() && lSampleCount > 0)
+					{
+						seek(0);
+					}
+					else
+					{
+						pause();
+						for (IPlaybackListener listener : oListeners)
+						{
+							listener.endOfRecording(this);
+						}
+					}
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				return;
+			}
+			catch (IOException ex)
+			{
+				logger.error("playback of recording failed", ex);
+				pause();
+			}
+			catch (RuntimeException ex)
+			{
+				synchronized (oLock)
+				{
+					if (bClosed)
+					{
+						// closed while we were busy
+						return;
+					}
+				}
+				logger.error("playback listener failed", ex);
+			}
+		}
+	}
+}
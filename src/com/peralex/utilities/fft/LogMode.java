@@ -0,0 +1,22 @@
+package com.peralex.utilities.fft;
+
+/**
+ * How the FFT engines convert the complex result of each bin into a log-scaled value.
+ */
+public enum LogMode
+{
+	/**
+	 * log(sqrt(re^2+im^2)), the original way, and the default.
+	 */
+	MAGNITUDE,
+	/**
+	 * log(re^2+im^2)/2, which gives the same result to within rounding error, without the square root. Whether that is
+	 * faster than MAGNITUDE depends on the CPU.
+	 */
+	POWER,
+	/**
+	 * Same as POWER, but with the table-based approximation of FastLog instead of Math.log(). The error is less than
+	 * 0.00001dB.
+	 */
+	FAST_POWER
+}
@@ -0,0 +1,380 @@
+package com.peralex.utilities.fft;
+
+/**
+ * A mixed-radix decimation-in-frequency FFT, for sizes whose only prime factors are 2, 3 and 5 (e.g. 1000, 1600, 3200),
+ * so that native frame lengths can be transformed without zero-padding or resampling.
+ *
+ * The factorisation, twiddle factors and output permutation of each size are computed once and shared, see
+ * FFTTables.getMixedRadixPlan(). As with the radix-2 and radix-4 engines, the output is left in digit-reversed order,
+ * and getOutputPermutation() says where each bin ended up.
+ */
+public class MixedRadixFFT extends AbstractFFTEngine
+{
+	public static final IFFTEngineFactory FACTORY = new IFFTEngineFactory()
+	{
+		public IFFTEngine createEngine(int FFT_size, boolean useBlackmanWindow)
+		{
+			return new MixedRadixFFT(FFT_size, useBlackmanWindow);
+		}
+	};
+
+	/**
+	 * Creates the fastest engine that supports the size: Radix4FFT for powers of two, MixedRadixFFT for sizes with only
+	 * factors of 2, 3 and 5, and BluesteinFFT for everything else.
+	 */
+	public static final IFFTEngineFactory ANY_SIZE_FACTORY = new IFFTEngineFactory()
+	{
+		public IFFTEngine createEngine(int FFT_size, boolean useBlackmanWindow)
+		{
+			if (FFT_size > 0 && Integer.bitCount(FFT_size) == 1)
+			{
+				return new Radix4FFT(FFT_size, useBlackmanWindow);
+			}
+			if (isSupportedSize(FFT_size))
+			{
+				return new MixedRadixFFT(FFT_size, useBlackmanWindow);
+			}
+			return new BluesteinFFT(FFT_size, useBlackmanWindow);
+		}
+	};
+
+	private static final double SIN_60 = Math.sqrt(3) / 2;
+
+	private static final double COS_72 = Math.cos(2 * Math.PI / 5);
+
+	private static final double SIN_72 = Math.sin(2 * Math.PI / 5);
+
+	private static final double COS_144 = Math.cos(4 * Math.PI / 5);
+
+	private static final double SIN_144 = Math.sin(4 * Math.PI / 5);
+
+	private final Plan oPlan;
+
+	public MixedRadixFFT(int FFT_size, boolean useBlackmanWindow)
+	{
+		super(FFT_size, useBlackmanWindow);
+		oPlan = FFTTables.getMixedRadixPlan(FFT_size);
+	}
+
+	public MixedRadixFFT(int FFT_size, FFTWindow oWindow)
+	{
+		super(FFT_size, oWindow);
+		oPlan = FFTTables.getMixedRadixPlan(FFT_size);
+	}
+
+	/**
+	 * @return true if the size has no prime factors other than 2, 3 and 5.
+	 */
+	public static boolean isSupportedSize(int FFT_size)
+	{
+		if (FFT_size <= 0)
+		{
+			return false;
+		}
+		int n = FFT_size;
+		for (int factor = 2; factor <= 5; factor++)
+		{
+			while (n % factor == 0)
+			{
+				n /= factor;
+			}
+		}
+		return n == 1;
+	}
+
+	/**
+	 * The output of this FFT is in digit-reversed order.
+	 */
+	public int[] getOutputPermutation()
+	{
+		return oPlan.aiPermLUT;
+	}
+
+	public void runFFT()
+	{
+		final double[] re = adRealData;
+		final double[] im = adImagData;
+		for (int stage = 0; stage < oPlan.aiRadices.length; stage++)
+		{
+			final int span = oPlan.aiSpans[stage];
+			final double[] tw = oPlan.adTwiddles[stage];
+			switch (oPlan.aiRadices[stage])
+			{
+			case 2:
+				radix2Stage(re, im, span, tw);
+				break;
+			case 3:
+				radix3Stage(re, im, span, tw);
+				break;
+			case 4:
+				radix4Stage(re, im, span, tw);
+				break;
+			case 5:
+				radix5Stage(re, im, span, tw);
+				break;
+			}
+		}
+	}
+
+	private void radix2Stage(final double[] re, final double[] im, final int span, final double[] tw)
+	{
+		final int n = iFFT_size;
+		final int blockSize = span * 2;
+		for (int block = 0; block < n; block += blockSize)
+		{
+			for (int j = 0, t = 0; j < span; j++, t += 2)
+			{
+				final int i0 = block + j;
+				final int i1 = i0 + span;
+
+				final double ar = re[i0];
+				final double ai = im[i0];
+				final double br = re[i1];
+				final double bi = im[i1];
+
+				re[i0] = ar + br;
+				im[i0] = ai + bi;
+
+				final double y1r = ar - br;
+				final double y1i = ai - bi;
+				re[i1] = y1r * tw[t] - y1i * tw[t + 1];
+				im[i1] = y1r * tw[t + 1] + y1i * tw[t];
+			}
+		}
+	}
+
+	private void radix3Stage(final double[] re, final double[] im, final int span, final double[] tw)
+	{
+		final int n = iFFT_size;
+		final int blockSize = span * 3;
+		for (int block = 0; block < n; block += blockSize)
+		{
+			for (int j = 0, t = 0; j < span; j++, t += 4)
+			{
+				final int i0 = block + j;
+				final int i1 = i0 + span;
+				final int i2 = i1 + span;
+
+				final double sr = re[i1] + re[i2];
+				final double si = im[i1] + im[i2];
+				final double dr = re[i1] - re[i2];
+				final double di = im[i1] - im[i2];
+				final double mr = re[i0] - 0.5 * sr;
+				final double mi = im[i0] - 0.5 * si;
+
+				// y0 = a+b+c
+				re[i0] += sr;
+				im[i0] += si;
+
+				// y1 = a - (b+c)/2 - i*sin(60)*(b-c)
+				final double y1r = mr + SIN_60 * di;
+				final double y1i = mi - SIN_60 * dr;
+				re[i1] = y1r * tw[t] - y1i * tw[t + 1];
+				im[i1] = y1r * tw[t + 1] + y1i * tw[t];
+
+				// y2 = a - (b+c)/2 + i*sin(60)*(b-c)
+				final double y2r = mr - SIN_60 * di;
+				final double y2i = mi + SIN_60 * dr;
+				re[i2] = y2r * tw[t + 2] - y2i * tw[t + 3];
+				im[i2] = y2r * tw[t + 3] + y2i * tw[t + 2];
+			}
+		}
+	}
+
+	private void radix4Stage(final double[] re, final double[] im, final int span, final double[] tw)
+	{
+		final int n = iFFT_size;
+		final int blockSize = span * 4;
+		for (int block = 0; block < n; block += blockSize)
+		{
+			for (int j = 0, t = 0; j < span; j++, t += 6)
+			{
+				final int i0 = block + j;
+				final int i1 = i0 + span;
+				final int i2 = i1 + span;
+				final int i3 = i2 + span;
+
+				final double s0r = re[i0] + re[i2];
+				final double s0i = im[i0] + im[i2];
+				final double s1r = re[i0] - re[i2];
+				final double s1i = im[i0] - im[i2];
+				final double s2r = re[i1] + re[i3];
+				final double s2i = im[i1] + im[i3];
+				final double s3r = re[i1] - re[i3];
+				final double s3i = im[i1] - im[i3];
+
+				// y0 = a+b+c+d
+				re[i0] = s0r + s2r;
+				im[i0] = s0i + s2i;
+
+				// y1 = (a-c - i(b-d)) * W^j
+				final double y1r = s1r + s3i;
+				final double y1i = s1i - s3r;
+				re[i1] = y1r * tw[t] - y1i * tw[t + 1];
+				im[i1] = y1r * tw[t + 1] + y1i * tw[t];
+
+				// y2 = (a+c-b-d) * W^2j
+				final double y2r = s0r - s2r;
+				final double y2i = s0i - s2i;
+				re[i2] = y2r * tw[t + 2] - y2i * tw[t + 3];
+				im[i2] = y2r * tw[t + 3] + y2i * tw[t + 2];
+
+				// y3 = (a-c + i(b-d)) * W^3j
+				final double y3r = s1r - s3i;
+				final double y3i = s1i + s3r;
+				re[i3] = y3r * tw[t + 4] - y3i * tw[t + 5];
+				im[i3] = y3r * tw[t + 5] + y3i * tw[t + 4];
+			}
+		}
+	}
+
+	private void radix5Stage(final double[] re, final double[] im, final int span, final double[] tw)
+	{
+		final int n = iFFT_size;
+		final int blockSize = span * 5;
+		for (int block = 0; block < n; block += blockSize)
+		{
+			for (int j = 0, t = 0; j < span; j++, t += 8)
+			{
+				final int i0 = block + j;
+				final int i1 = i0 + span;
+				final int i2 = i1 + span;
+				final int i3 = i2 + span;
+				final int i4 = i3 + span;
+
+				final double ar = re[i0];
+				final double ai = im[i0];
+				final double t1r = re[i1] + re[i4];
+				final double t1i = im[i1] + im[i4];
+				final double t2r = re[i2] + re[i3];
+				final double t2i = im[i2] + im[i3];
+				final double t3r = re[i1] - re[i4];
+				final double t3i = im[i1] - im[i4];
+				final double t4r = re[i2] - re[i3];
+				final double t4i = im[i2] - im[i3];
+
+				// y0 = a+b+c+d+e
+				re[i0] = ar + t1r + t2r;
+				im[i0] = ai + t1i + t2i;
+
+				final double m1r = ar + COS_72 * t1r + COS_144 * t2r;
+				final double m1i = ai + COS_72 * t1i + COS_144 * t2i;
+				final double m2r = ar + COS_144 * t1r + COS_72 * t2r;
+				final double m2i = ai + COS_144 * t1i + COS_72 * t2i;
+				final double n1r = SIN_72 * t3r + SIN_144 * t4r;
+				final double n1i = SIN_72 * t3i + SIN_144 * t4i;
+				final double n2r = SIN_144 * t3r - SIN_72 * t4r;
+				final double n2i = SIN_144 * t3i - SIN_72 * t4i;
+
+				// y1 = m1 - i*n1, y4 = m1 + i*n1
+				final double y1r = m1r + n1i;
+				final double y1i = m1i - n1r;
+				re[i1] = y1r * tw[t] - y1i * tw[t + 1];
+				im[i1] = y1r * tw[t + 1] + y1i * tw[t];
+
+				final double y4r = m1r - n1i;
+				final double y4i = m1i + n1r;
+				re[i4] = y4r * tw[t + 6] - y4i * tw[t + 7];
+				im[i4] = y4r * tw[t + 7] + y4i * tw[t + 6];
+
+				// y2 = m2 - i*n2, y3 = m2 + i*n2
+				final double y2r = m2r + n2i;
+				final double y2i = m2i - n2r;
+				re[i2] = y2r * tw[t + 2] - y2i * tw[t + 3];
+				im[i2] = y2r * tw[t + 3] + y2i * tw[t + 2];
+
+				final double y3r = m2r - n2i;
+				final double y3i = m2i + n2r;
+				re[i3] = y3r * tw[t + 4] - y3i * tw[t + 5];
+				im[i3] = y3r * tw[t + 5] + y3i * tw[t + 4];
+			}
+		}
+	}
+
+	/**
+	 * Everything about a size that does not change between transforms. Immutable, and shared between engines.
+	 */
+	static final class Plan
+	{
+		/**
+		 * the radix of each stage, radix-4 stages first.
+		 */
+		final int[] aiRadices;
+
+		/**
+		 * the distance between the inputs of a butterfly, for each stage.
+		 */
+		final int[] aiSpans;
+
+		/**
+		 * For each stage with radix r and span L, the twiddle factors W^(p*j) (W = e^(-2*pi*i/(r*L))) for j=0..L-1 and
+		 * p=1..r-1, stored interleaved as (re,im) so that the inner loop reads them sequentially.
+		 */
+		final double[][] adTwiddles;
+
+		final int[] aiPermLUT;
+
+		Plan(int FFT_size)
+		{
+			if (!isSupportedSize(FFT_size))
+			{
+				throw new IllegalArgumentException("FFT size must only have factors of 2, 3 and 5. " + FFT_size);
+			}
+
+			// factorise
+			final int[] radices = new int[32];
+			int stages = 0;
+			int n = FFT_size;
+			while (n % 4 == 0)
+			{
+				radices[stages++] = 4;
+				n /= 4;
+			}
+			for (int factor = 2; factor <= 5; factor++)
+			{
+				while (n % factor == 0)
+				{
+					radices[stages++] = factor;
+					n /= factor;
+				}
+			}
+			aiRadices = new int[stages];
+			System.arraycopy(radices, 0, aiRadices, 0, stages);
+
+			aiSpans = new int[stages];
+			adTwiddles = new double[stages][];
+			int span = FFT_size;
+			for (int stage = 0; stage < stages; stage++)
+			{
+				final int r = aiRadices[stage];
+				span /= r;
+				aiSpans[stage] = span;
+				final double[] tw = new double[2 * (r - 1) * span];
+				final double theta = -2 * Math.PI / (r * span);
+				for (int j = 0, t = 0; j < span; j++)
+				{
+					for (int p = 1; p < r; p++, t += 2)
+					{
+						tw[t] = Math.cos(theta * p * j);
+						tw[t + 1] = Math.sin(theta * p * j);
+					}
+				}
+				adTwiddles[stage] = tw;
+			}
+
+			// bin k = p1 + r1*(p2 + r2*(p3 + ...)) ends up at p1*L1 + p2*L2 + ...
+			aiPermLUT = new int[FFT_size];
+			for (int k = 0; k < FFT_size; k++)
+			{
+				int remainder = k;
+				int index = 0;
+				for (int stage = 0; stage < stages; stage++)
+				{
+					index += (remainder % aiRadices[stage]) * aiSpans[stage];
+					remainder /= aiRadices[stage];
+				}
+				aiPermLUT[k] = index;
+			}
+		}
+	}
+}
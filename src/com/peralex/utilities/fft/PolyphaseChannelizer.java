@@ -0,0 +1,326 @@
+package com.peralex.utilities.fft;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.peralex.utilities.ui.graphs.scrollingline.ScrollingLineGraph;
+
+/**
+ * A polyphase filter bank, which splits a complex stream into M adjacent channels, each 1/M of the input bandwidth
+ * wide, and each decimated by M (i.e. critically sampled). Every M input samples produce one output sample in every
+ * channel, at the cost of one FIR of M*P taps (P being the taps per phase) and one M-point FFT, rather than M separate
+ * mixers and filters.
+ *
+ * Frequencies are normalised to the input sample rate. Channel k is centred on k/M, so channels above M/2 are the
+ * negative frequencies, the same as the order of the bins of an FFT.
+ *
+ * The prototype filter is a Blackman-windowed sinc with it's -6dB point at the channel edges, and unity gain at DC, so
+ * a tone in the middle of a channel comes out with it's input amplitude. Because the channels are critically sampled,
+ * a tone near a channel edge also appears in the neighbouring channel.
+ *
+ * Not thread-safe, samples must be fed in from one thread.
+ */
+public class PolyphaseChannelizer
+{
+	/**
+	 * Notified on the feeding thread whenever there is a new output sample in each of the channels.
+	 */
+	public interface IChannelListener
+	{
+		void channelsReady(PolyphaseChannelizer source);
+	}
+
+	public static final int DEFAULT_TAPS_PER_PHASE = 16;
+
+	private final int iChannelCount;
+
+	private final int iTapsPerPhase;
+
+	private final IFFTEngine oEngine;
+
+	/**
+	 * the prototype filter, with the taps re-arranged by phase: adPolyphaseFilter[p][q] = h[q*M + p].
+	 */
+	private final double[][] adPolyphaseFilter;
+
+	/**
+	 * the most recent M*P samples, stored twice so that they are always contiguous, same as ZoomFFT.
+	 */
+	private final double[] adHistoryReal;
+
+	private final double[] adHistoryImag;
+
+	private int iHistoryIndex = 0;
+
+	private int iSamplesSinceOutput = 0;
+
+	/**
+	 * the most recent output sample of each channel.
+	 */
+	private final double[] adChannelReal;
+
+	private final double[] adChannelImag;
+
+	private ScrollingLineGraph oGraph;
+
+	private int[] aiGraphChannels = new int[0];
+
+	private int iGraphInterval = 1;
+
+	private int iOutputsSinceGraph = 0;
+
+	private double dPreScalingFactor = 1.0;
+
+	private double dPostScalingFactor = 1.0;
+
+	private double dLostEnergy = 0;
+
+	private IChannelListener oListener;
+
+	public PolyphaseChannelizer(int iChannelCount, IFFTEngineFactory engineFactory)
+	{
+		this(iChannelCount, DEFAULT_TAPS_PER_PHASE, engineFactory);
+	}
+
+	/**
+	 * @param iChannelCount M, any size that the engine factory supports
+	 * @param iTapsPerPhase P, more taps give a sharper cutoff at the channel edges
+	 */
+	public PolyphaseChannelizer(int iChannelCount, int iTapsPerPhase, IFFTEngineFactory engineFactory)
+	{
+		if (iChannelCount < 2)
+		{
+			throw new IllegalArgumentException("need at least 2 channels, " + iChannelCount);
+		}
+		if (iTapsPerPhase < 1)
+		{
+			throw new IllegalArgumentException("taps per phase must be positive, " + iTapsPerPhase);
+		}
+		this.iChannelCount = iChannelCount;
+		this.iTapsPerPhase = iTapsPerPhase;
+		this.oEngine = engineFactory.createEngine(iChannelCount, false);
+
+		final int filterLength = iChannelCount * iTapsPerPhase;
+		final double[] filter = FIRFilters.lowPass(filterLength, 0.5 / iChannelCount);
+		adPolyphaseFilter = new double[iChannelCount][iTapsPerPhase];
+		for (int p = 0; p < iChannelCount; p++)
+		{
+			for (int q = 0; q < iTapsPerPhase; q++)
+			{
+				adPolyphaseFilter[p][q] = filter[q * iChannelCount + p];
+			}
+		}
+		adHistoryReal = new double[2 * filterLength];
+		adHistoryImag = new double[2 * filterLength];
+		adChannelReal = new double[iChannelCount];
+		adChannelImag = new double[iChannelCount];
+	}
+
+	public int getChannelCount()
+	{
+		return iChannelCount;
+	}
+
+	public int getTapsPerPhase()
+	{
+		return iTapsPerPhase;
+	}
+
+	/**
+	 * @return the centre of the channel, normalised to the input sample rate, -0.5 to 0.5
+	 */
+	public double getChannelCentreFrequency(int iChannel)
+	{
+		final int k = iChannel < firstNegativeChannel() ? iChannel : iChannel - iChannelCount;
+		return (double) k / iChannelCount;
+	}
+
+	/**
+	 * @return the channel that the frequency falls in
+	 */
+	public int getChannel(double dFrequency)
+	{
+		final int k = (int) Math.round(dFrequency * iChannelCount);
+		return ((k % iChannelCount) + iChannelCount) % iChannelCount;
+	}
+
+	private int firstNegativeChannel()
+	{
+		return AbstractFFTEngine.firstNegativeBin(iChannelCount);
+	}
+
+	public void setListener(IChannelListener oListener)
+	{
+		this.oListener = oListener;
+	}
+
+	/**
+	 * Same parameters as IFFTEngine.calculate(), used for the levels passed to the ScrollingLineGraph.
+	 */
+	public void setScaling(double preScalingFactor, double postScalingFactor, double lostEnergy)
+	{
+		this.dPreScalingFactor = preScalingFactor;
+		this.dPostScalingFactor = postScalingFactor;
+		this.dLostEnergy = lostEnergy;
+	}
+
+	/**
+	 * Display the level of some of the channels as lines on a graph, keyed by Integer channel number.
+	 *
+	 * @param oGraph null to stop
+	 * @param iInterval the number of output samples between updates of the graph
+	 * @param aiChannels the channels to display
+	 */
+	public void setGraph(ScrollingLineGraph oGraph, int iInterval, int... aiChannels)
+	{
+		if (iInterval < 1)
+		{
+			throw new IllegalArgumentException("interval must be positive, " + iInterval);
+		}
+		for (int channel : aiChannels)
+		{
+			if (channel < 0 || channel >= iChannelCount)
+			{
+				throw new IllegalArgumentException("no such channel " + channel);
+			}
+		}
+		this.aiGraphChannels = aiChannels.clone();
+		this.iGraphInterval = iInterval;
+		this.oGraph = oGraph;
+	}
+
+	/**
+	 * @param input an array containing real and imaginary value alternating (ie, [real] [imag] [real] [imag]...)
+	 */
+	public void process(short[] input)
+	{
+		if ((input.length % 2) == 1)
+		{
+			throw new IllegalArgumentException("the sample counts for the reals, differs from the counts for imaginaries");
+		}
+		final int filterLength = iChannelCount * iTapsPerPhase;
+		for (int i = 0; i < input.length; i += 2)
+		{
+			// the last filterLength samples are always at [iHistoryIndex+1, iHistoryIndex+filterLength]
+			adHistoryReal[iHistoryIndex] = adHistoryReal[iHistoryIndex + filterLength] = input[i];
+			adHistoryImag[iHistoryIndex] = adHistoryImag[iHistoryIndex + filterLength] = input[i + 1];
+			iHistoryIndex++;
+			if (iHistoryIndex == filterLength)
+			{
+				iHistoryIndex = 0;
+			}
+
+			iSamplesSinceOutput++;
+			if (iSamplesSinceOutput == iChannelCount)
+			{
+				iSamplesSinceOutput = 0;
+				filterAndTransform();
+			}
+		}
+	}
+
+	/**
+	 * Channel k is y_k = sum over m of h[m] * x[n-m] * e^(i*2*pi*k*m/M). Splitting m into q*M + p gives y_k = the sum
+	 * over p of u_p * e^(i*2*pi*k*p/M), where u_p = the sum over q of h[q*M+p] * x[n-q*M-p] is the output of the p'th
+	 * polyphase branch. That is an inverse DFT of u, which is done as a forward FFT, read out in reverse order.
+	 */
+	private void filterAndTransform()
+	{
+		final int m = iChannelCount;
+		final int filterLength = m * iTapsPerPhase;
+		final double[] re = oEngine.getRealBuffer();
+		final double[] im = oEngine.getImagBuffer();
+		// the newest sample, x[n]
+		final int newest = iHistoryIndex + filterLength - 1;
+		for (int p = 0; p < m; p++)
+		{
+			final double[] taps = adPolyphaseFilter[p];
+			double ur = 0;
+			double ui = 0;
+			for (int q = 0, h = newest - p; q < iTapsPerPhase; q++, h -= m)
+			{
+				ur += taps[q] * adHistoryReal[h];
+				ui += taps[q] * adHistoryImag[h];
+			}
+			re[p] = ur;
+			im[p] = ui;
+		}
+
+		oEngine.runFFT();
+
+		final int[] aiPerm = oEngine.getOutputPermutation();
+		adChannelReal[0] = re[aiPerm[0]];
+		adChannelImag[0] = im[aiPerm[0]];
+		for (int k = 1; k < m; k++)
+		{
+			final int index = aiPerm[m - k];
+			adChannelReal[k] = re[index];
+			adChannelImag[k] = im[index];
+		}
+
+		if (oListener != null)
+		{
+			oListener.channelsReady(this);
+		}
+		updateGraph();
+	}
+
+	private void updateGraph()
+	{
+		final ScrollingLineGraph graph = oGraph;
+		if (graph == null)
+		{
+			return;
+		}
+		iOutputsSinceGraph++;
+		if (iOutputsSinceGraph < iGraphInterval)
+		{
+			return;
+		}
+		iOutputsSinceGraph = 0;
+		final int[] channels = aiGraphChannels;
+		final Map<Object, Float> levels = new HashMap<Object, Float>();
+		for (int channel : channels)
+		{
+			levels.put(Integer.valueOf(channel), Float.valueOf(getLevel(channel)));
+		}
+		graph.addLineValues(levels);
+	}
+
+	/**
+	 * Copy the most recent output sample of every channel. Normally called from the listener.
+	 *
+	 * @param re must be at least as long as the number of channels
+	 * @param im must be at least as long as the number of channels
+	 */
+	public void getChannels(double[] re, double[] im)
+	{
+		System.arraycopy(adChannelReal, 0, re, 0, iChannelCount);
+		System.arraycopy(adChannelImag, 0, im, 0, iChannelCount);
+	}
+
+	/**
+	 * @return the level of the most recent output sample of the channel, scaled as per setScaling().
+	 */
+	public float getLevel(int iChannel)
+	{
+		final double r = adChannelReal[iChannel];
+		final double i = adChannelImag[iChannel];
+		return (float) AbstractFFTEngine.logScale(Math.sqrt(r * r + i * i) * dPreScalingFactor, dPostScalingFactor,
+				dLostEnergy);
+	}
+
+	/**
+	 * Calculate the level of the most recent output sample of every channel, in channel order, scaled as per
+	 * setScaling().
+	 *
+	 * @param output must be at least as long as the number of channels
+	 */
+	public void getLevels(float[] output)
+	{
+		for (int k = 0; k < iChannelCount; k++)
+		{
+			output[k] = getLevel(k);
+		}
+	}
+}
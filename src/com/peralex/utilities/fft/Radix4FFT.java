@@ -0,0 +1,197 @@
+package com.peralex.utilities.fft;
+
+/**
+ * A radix-4 decimation-in-frequency FFT, with a single radix-2 stage at the end when the order of the FFT is odd.
+ *
+ * Compared to the reference FFT, this needs 25% fewer multiplies, touches the data half as often, and
+ * reads it's twiddle factors sequentially out of a precomputed per-stage table, so there is no division or modulo in the
+ * inner loops.
+ *
+ * Like the reference FFT, the output is in bit-reversed order, so we never need a separate re-ordering pass.
+ */
+public class Radix4FFT extends AbstractFFTEngine
+{
+	public static final IFFTEngineFactory FACTORY = new IFFTEngineFactory()
+	{
+		public IFFTEngine createEngine(int FFT_size, boolean useBlackmanWindow)
+		{
+			return new Radix4FFT(FFT_size, useBlackmanWindow);
+		}
+	};
+
+	/**
+	 * true if we need a radix-2 stage after the radix-4 stages.
+	 */
+	private final boolean bRadix2Stage;
+
+	/**
+	 * Permutation LUT. Shared, see FFTTables.
+	 */
+	private final int[] aiPermLUT;
+
+	/**
+	 * For each radix-4 stage with quarter-span h, the twiddle factors W^j, W^2j, W^3j (W = e^(-2*pi*i/4h)) for j=0..h-1,
+	 * stored interleaved as (re,im,re,im,re,im) so that the inner loop reads them sequentially.
+	 * The last radix-4 stage has h=1, and does not need a table. Shared, see FFTTables.
+	 */
+	private final double[][] adTwiddles;
+
+	public Radix4FFT(int FFT_size, boolean useBlackmanWindow)
+	{
+		super(FFT_size, useBlackmanWindow);
+		final int order = checkPowerOfTwo(FFT_size);
+		bRadix2Stage = (order & 1) == 1;
+		aiPermLUT = FFTTables.getBitReversalTable(FFT_size);
+		adTwiddles = FFTTables.getRadix4Twiddles(FFT_size);
+	}
+
+	public Radix4FFT(int FFT_size, FFTWindow oWindow)
+	{
+		super(FFT_size, oWindow);
+		final int order = checkPowerOfTwo(FFT_size);
+		bRadix2Stage = (order & 1) == 1;
+		aiPermLUT = FFTTables.getBitReversalTable(FFT_size);
+		adTwiddles = FFTTables.getRadix4Twiddles(FFT_size);
+	}
+
+	/**
+	 * The output of this FFT is in bit-reversed order.
+	 */
+	public int[] getOutputPermutation()
+	{
+		return aiPermLUT;
+	}
+
+	public void runFFT()
+	{
+		final double[] re = adRealData;
+		final double[] im = adImagData;
+		final int n = iFFT_size;
+
+		int h = n >> 2;
+		for (int stage = 0; stage < adTwiddles.length; stage++, h >>= 2)
+		{
+			if (h == 1)
+			{
+				radix4LastStage(re, im, n);
+				break;
+			}
+			radix4Stage(re, im, n, h, adTwiddles[stage]);
+		}
+
+		if (bRadix2Stage)
+		{
+			radix2LastStage(re, im, n);
+		}
+	}
+
+	/**
+	 * Each radix-4 butterfly combines the points j, j+h, j+2h, j+3h of a block of 4h points, which is the same as two
+	 * consecutive radix-2 stages with spans 2h and h.
+	 */
+	static void radix4Stage(final double[] re, final double[] im, final int n, final int h, final double[] tw)
+	{
+		final int blockSize = h << 2;
+		for (int block = 0; block < n; block += blockSize)
+		{
+			for (int j = 0, t = 0; j < h; j++, t += 6)
+			{
+				final int i0 = block + j;
+				final int i1 = i0 + h;
+				final int i2 = i1 + h;
+				final int i3 = i2 + h;
+
+				final double ar = re[i0];
+				final double ai = im[i0];
+				final double br = re[i1];
+				final double bi = im[i1];
+				final double cr = re[i2];
+				final double ci = im[i2];
+				final double dr = re[i3];
+				final double di = im[i3];
+
+				final double s0r = ar + cr;
+				final double s0i = ai + ci;
+				final double s1r = ar - cr;
+				final double s1i = ai - ci;
+				final double s2r = br + dr;
+				final double s2i = bi + di;
+				final double s3r = br - dr;
+				final double s3i = bi - di;
+
+				// y0 = a+b+c+d
+				re[i0] = s0r + s2r;
+				im[i0] = s0i + s2i;
+
+				// y1 = (a+c-b-d) * W^2j
+				final double y1r = s0r - s2r;
+				final double y1i = s0i - s2i;
+				final double w2r = tw[t + 2];
+				final double w2i = tw[t + 3];
+				re[i1] = y1r * w2r - y1i * w2i;
+				im[i1] = y1r * w2i + y1i * w2r;
+
+				// y2 = (a-c - i(b-d)) * W^j
+				final double y2r = s1r + s3i;
+				final double y2i = s1i - s3r;
+				final double w1r = tw[t];
+				final double w1i = tw[t + 1];
+				re[i2] = y2r * w1r - y2i * w1i;
+				im[i2] = y2r * w1i + y2i * w1r;
+
+				// y3 = (a-c + i(b-d)) * W^3j
+				final double y3r = s1r - s3i;
+				final double y3i = s1i + s3r;
+				final double w3r = tw[t + 4];
+				final double w3i = tw[t + 5];
+				re[i3] = y3r * w3r - y3i * w3i;
+				im[i3] = y3r * w3i + y3i * w3r;
+			}
+		}
+	}
+
+	/**
+	 * The radix-2 stage needed after the radix-4 stages when the order of the FFT is odd.
+	 */
+	static void radix2LastStage(final double[] re, final double[] im, final int n)
+	{
+		for (int i = 0; i < n; i += 2)
+		{
+			final double ar = re[i];
+			final double ai = im[i];
+			final double br = re[i + 1];
+			final double bi = im[i + 1];
+			re[i] = ar + br;
+			im[i] = ai + bi;
+			re[i + 1] = ar - br;
+			im[i + 1] = ai - bi;
+		}
+	}
+
+	/**
+	 * The radix-4 stage with h=1, where all of the twiddle factors are 1.
+	 */
+	static void radix4LastStage(final double[] re, final double[] im, final int n)
+	{
+		for (int i0 = 0; i0 < n; i0 += 4)
+		{
+			final double s0r = re[i0] + re[i0 + 2];
+			final double s0i = im[i0] + im[i0 + 2];
+			final double s1r = re[i0] - re[i0 + 2];
+			final double s1i = im[i0] - im[i0 + 2];
+			final double s2r = re[i0 + 1] + re[i0 + 3];
+			final double s2i = im[i0 + 1] + im[i0 + 3];
+			final double s3r = re[i0 + 1] - re[i0 + 3];
+			final double s3i = im[i0 + 1] - im[i0 + 3];
+
+			re[i0] = s0r + s2r;
+			im[i0] = s0i + s2i;
+			re[i0 + 1] = s0r - s2r;
+			im[i0 + 1] = s0i - s2i;
+			re[i0 + 2] = s1r + s3i;
+			im[i0 + 2] = s1i - s3r;
+			re[i0 + 3] = s1r - s3i;
+			im[i0 + 3] = s1i + s3r;
+		}
+	}
+}
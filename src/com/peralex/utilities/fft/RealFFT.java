@@ -0,0 +1,287 @@
+package com.peralex.utilities.fft;
+
+/**
+ * Performs an FFT on real-valued input.
+ *
+ * The N real samples are packed into an N/2 point complex FFT (even samples in the real part, odd samples in the
+ * imaginary part), and the result is then split apart into the N/2+1 bins of the one-sided spectrum. This takes roughly
+ * half the time and memory of running a complex FFT with zero imaginary parts.
+ */
+public class RealFFT
+{
+	/**
+	 * Number of real samples.
+	 */
+	private final int iFFT_size;
+
+	/**
+	 * the half-size complex FFT.
+	 */
+	private final IFFTEngine oEngine;
+
+	/**
+	 * Real-valued input samples.
+	 */
+	private final double[] adInputData;
+
+	/**
+	 * shared, see FFTWindow.
+	 */
+	private final double[] adWindow;
+
+	/**
+	 * cos/sin of 2*pi*k/N for k=0..N/2-1, interleaved. Shared, see FFTTables.
+	 */
+	private final double[] adTwiddles;
+
+	/**
+	 * Output arrays containing the N/2+1 bins of the one-sided spectrum.
+	 */
+	private final double[] adRealOutput;
+
+	private final double[] adImagOutput;
+
+	private final double[] adSpectra;
+
+	private LogMode eLogMode = LogMode.MAGNITUDE;
+
+	/**
+	 * @param FFT_size Number of real samples to FFT at a time. Must be a power of two, and at least 4.
+	 */
+	public RealFFT(int FFT_size, boolean useBlackmanWindow)
+	{
+		this(FFT_size, useBlackmanWindow, Radix4FFT.FACTORY);
+	}
+
+	/**
+	 * @param FFT_size Number of real samples to FFT at a time. Must be even, at least 4, and half of it must be supported
+	 *          by the engine factory.
+	 * @param engineFactory used to create the half-size complex FFT
+	 */
+	public RealFFT(int FFT_size, boolean useBlackmanWindow, IFFTEngineFactory engineFactory)
+	{
+		this(FFT_size, FFTWindow.get(useBlackmanWindow ? FFTWindow.Type.BLACKMAN : FFTWindow.Type.RECTANGULAR,
+				FFT_size), engineFactory);
+	}
+
+	/**
+	 * @param FFT_size Number of real samples to FFT at a time. Must be even, at least 4, and half of it must be supported
+	 *          by the engine factory.
+	 * @param engineFactory used to create the half-size complex FFT
+	 */
+	public RealFFT(int FFT_size, FFTWindow oWindow, IFFTEngineFactory engineFactory)
+	{
+		if (FFT_size < 4 || (FFT_size % 2) != 0)
+		{
+			throw new IllegalArgumentException("FFT size must be even, and at least 4. " + FFT_size);
+		}
+		if (oWindow.getSize() != FFT_size)
+		{
+			throw new IllegalArgumentException("window size " + oWindow.getSize() + " differs from the FFT size " + FFT_size);
+		}
+		this.iFFT_size = FFT_size;
+		final int half = FFT_size / 2;
+		// we do our own windowing on the real data
+		this.oEngine = engineFactory.createEngine(half, false);
+		this.adInputData = new double[FFT_size];
+		this.adWindow = oWindow.getCoefficients();
+		this.adTwiddles = FFTTables.getRealFFTTwiddles(FFT_size);
+
+		adRealOutput = new double[half + 1];
+		adImagOutput = new double[half + 1];
+		adSpectra = new double[half + 1];
+	}
+
+	/**
+	 * Get the number of real samples that the FFT processor has been setup for.
+	 */
+	public final int getFFT_size()
+	{
+		return iFFT_size;
+	}
+
+	/**
+	 * The caller writes the real-valued samples directly into this buffer.
+	 */
+	public double[] getInputBuffer()
+	{
+		return adInputData;
+	}
+
+	/**
+	 * the real part of the N/2+1 bins of the one-sided spectrum, valid after runFFT().
+	 */
+	public double[] getRealOutput()
+	{
+		return adRealOutput;
+	}
+
+	/**
+	 * the imaginary part of the N/2+1 bins of the one-sided spectrum, valid after runFFT().
+	 */
+	public double[] getImagOutput()
+	{
+		return adImagOutput;
+	}
+
+	/**
+	 * Transform the contents of the input buffer into the output buffers. The input buffer is not modified.
+	 */
+	public void runFFT()
+	{
+		final double[] zr = oEngine.getRealBuffer();
+		final double[] zi = oEngine.getImagBuffer();
+		final int half = iFFT_size / 2;
+		for (int i = 0; i < half; i++)
+		{
+			zr[i] = adInputData[2 * i];
+			zi[i] = adInputData[2 * i + 1];
+		}
+
+		oEngine.runFFT();
+
+		splitSpectrum(zr, zi, oEngine.getOutputPermutation());
+	}
+
+	/**
+	 * Separate the transforms of the even and odd samples, E[k] and O[k], out of the packed transform Z[k], and combine
+	 * them into X[k] = E[k] + W^k O[k].
+	 */
+	private void splitSpectrum(final double[] zr, final double[] zi, final int[] aiPerm)
+	{
+		final int half = iFFT_size / 2;
+		for (int k = 0; k < half; k++)
+		{
+			final int p = aiPerm[k];
+			final int pm = aiPerm[k == 0 ? 0 : half - k];
+
+			// E[k] = (Z[k] + conj(Z[N/2-k])) / 2
+			final double er = (zr[p] + zr[pm]) * 0.5;
+			final double ei = (zi[p] - zi[pm]) * 0.5;
+			// O[k] = (Z[k] - conj(Z[N/2-k])) / 2i
+			final double or = (zi[p] + zi[pm]) * 0.5;
+			final double oi = (zr[pm] - zr[p]) * 0.5;
+
+			// W^k = cos - i.sin
+			final double c = adTwiddles[2 * k];
+			final double s = adTwiddles[2 * k + 1];
+			adRealOutput[k] = er + c * or + s * oi;
+			adImagOutput[k] = ei + c * oi - s * or;
+
+			if (k == 0)
+			{
+				// X[N/2] = E[0] - O[0]
+				adRealOutput[half] = er - or;
+				adImagOutput[half] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Calculate the magnitude of the one-sided spectrum following an FFT calculation.
+	 *
+	 * @return the N/2+1 bins of the spectra, DC first. This array will be reused for the next calculation.
+	 */
+	public double[] calculateSpectra()
+	{
+		for (int i = 0; i < adSpectra.length; i++)
+		{
+			final double real = adRealOutput[i];
+			final double imaginary = adImagOutput[i];
+			adSpectra[i] = Math.sqrt((real * real) + (imaginary * imaginary));
+		}
+		return adSpectra;
+	}
+
+	/**
+	 * Equivalent of IFFTEngine.calculate() for real input. Applies the window to the input buffer, and then computes the
+	 * log-scaled one-sided spectrum.
+	 *
+	 * @return the N/2+1 bins of the spectrum, DC first. This array will be reused for next calculation, in order to avoid
+	 *         the unnecessary array-creation. Hence, don't modify and/or store the resultant array; rather copy the values
+	 *         then process the copied values.
+	 */
+	public double[] calculate(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy)
+	{
+		preFFTProcess(preFFTScalingFactor);
+
+		runFFT();
+
+		return logSpectra(postFFTScalingFactor, lostEnergy);
+	}
+
+	/**
+	 * Same as calculate(double, double, double), but writes the result straight into a float array, which saves a copy
+	 * when the result is going to be displayed.
+	 *
+	 * @param output receives the N/2+1 bins of the spectrum, DC first.
+	 */
+	public void calculate(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy, float[] output)
+	{
+		preFFTProcess(preFFTScalingFactor);
+
+		runFFT();
+
+		final double[] spectra = logSpectra(postFFTScalingFactor, lostEnergy);
+		for (int i = 0; i < spectra.length; ++i)
+		{
+			output[i] = (float) spectra[i];
+		}
+	}
+
+	/**
+	 * Select how the calculate() methods do the log conversion, the default is LogMode.MAGNITUDE.
+	 */
+	public void setLogMode(LogMode eLogMode)
+	{
+		if (eLogMode == null)
+		{
+			throw new IllegalArgumentException("log mode may not be null");
+		}
+		this.eLogMode = eLogMode;
+	}
+
+	public LogMode getLogMode()
+	{
+		return eLogMode;
+	}
+
+	private double[] logSpectra(double postFFTScalingFactor, double lostEnergy)
+	{
+		if (eLogMode == LogMode.MAGNITUDE)
+		{
+			final double[] spectra = calculateSpectra();
+			for (int i = 0; i < spectra.length; ++i)
+			{
+				spectra[i] = AbstractFFTEngine.logScale(spectra[i], postFFTScalingFactor, lostEnergy);
+			}
+			return spectra;
+		}
+
+		// log(m) = log(m^2)/2
+		final double floor = AbstractFFTEngine.logScale(0, postFFTScalingFactor, lostEnergy);
+		final boolean fast = eLogMode == LogMode.FAST_POWER;
+		final double factor = postFFTScalingFactor * 0.5 * (fast ? FastLog.LN_2 : 1.0);
+		for (int i = 0; i < adSpectra.length; i++)
+		{
+			final double power = adRealOutput[i] * adRealOutput[i] + adImagOutput[i] * adImagOutput[i];
+			if (power <= 0)
+			{
+				adSpectra[i] = floor;
+			}
+			else
+			{
+				adSpectra[i] = (fast ? FastLog.log2(power) : Math.log(power)) * factor + lostEnergy;
+			}
+		}
+		return adSpectra;
+	}
+
+	private void preFFTProcess(double preFFTScalingFactor)
+	{
+		for (int i = 0; i < iFFT_size; ++i)
+		{
+			adInputData[i] *= adWindow[i] * preFFTScalingFactor;
+		}
+	}
+}
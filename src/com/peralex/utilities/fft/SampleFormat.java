@@ -0,0 +1,152 @@
+package com.peralex.utilities.fft;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The encoding of interleaved (real, imaginary) samples in a ByteBuffer, see FFTGraph.computeFFT(ByteBuffer,
+ * SampleFormat, ByteOrder).
+ *
+ * Samples are scaled to the range of a short, because that is what the dBm scaling of FFTGraph is calibrated for. So
+ * INT8 values are multiplied by 256, and FLOAT32 values are taken to be normalised to a full scale of 1.0.
+ *
+ * The byte order is that of the buffer.
+ */
+public enum SampleFormat
+{
+	INT16(2)
+	{
+		@Override
+		void read(ByteBuffer src, int byteIndex, double[] re, double[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count; i < end; i++, byteIndex += 4)
+			{
+				re[i] = src.getShort(byteIndex);
+				im[i] = src.getShort(byteIndex + 2);
+			}
+		}
+
+		@Override
+		void read(ByteBuffer src, int byteIndex, float[] re, float[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count; i < end; i++, byteIndex += 4)
+			{
+				re[i] = src.getShort(byteIndex);
+				im[i] = src.getShort(byteIndex + 2);
+			}
+		}
+
+		@Override
+		void read(ByteBuffer src, int byteIndex, short[] dst, int offset, int valueCount)
+		{
+			for (int i = offset, end = offset + valueCount; i < end; i++, byteIndex += 2)
+			{
+				dst[i] = src.getShort(byteIndex);
+			}
+		}
+	},
+
+	INT8(1)
+	{
+		@Override
+		void read(ByteBuffer src, int byteIndex, double[] re, double[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count; i < end; i++, byteIndex += 2)
+			{
+				re[i] = src.get(byteIndex) << 8;
+				im[i] = src.get(byteIndex + 1) << 8;
+			}
+		}
+
+		@Override
+		void read(ByteBuffer src, int byteIndex, float[] re, float[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count; i < end; i++, byteIndex += 2)
+			{
+				re[i] = src.get(byteIndex) << 8;
+				im[i] = src.get(byteIndex + 1) << 8;
+			}
+		}
+
+		@Override
+		void read(ByteBuffer src, int byteIndex, short[] dst, int offset, int valueCount)
+		{
+			for (int i = offset, end = offset + valueCount; i < end; i++, byteIndex++)
+			{
+				dst[i] = (short) (src.get(byteIndex) << 8);
+			}
+		}
+	},
+
+	FLOAT32(4)
+	{
+		@Override
+		void read(ByteBuffer src, int byteIndex, double[] re, double[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count; i < end; i++, byteIndex += 8)
+			{
+				re[i] = src.getFloat(byteIndex) * FULL_SCALE;
+				im[i] = src.getFloat(byteIndex + 4) * FULL_SCALE;
+			}
+		}
+
+		@Override
+		void read(ByteBuffer src, int byteIndex, float[] re, float[] im, int offset, int count)
+		{
+			for (int i = offset, end = offset + count; i < end; i++, byteIndex += 8)
+			{
+				re[i] = src.getFloat(byteIndex) * FULL_SCALE;
+				im[i] = src.getFloat(byteIndex + 4) * FULL_SCALE;
+			}
+		}
+
+		/**
+		 * Values outside of full scale are clipped.
+		 */
+		@Override
+		void read(ByteBuffer src, int byteIndex, short[] dst, int offset, int valueCount)
+		{
+			for (int i = offset, end = offset + valueCount; i < end; i++, byteIndex += 4)
+			{
+				final float value = src.getFloat(byteIndex) * FULL_SCALE;
+				dst[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+			}
+		}
+	};
+
+	private static final float FULL_SCALE = Short.MAX_VALUE;
+
+	private final int iBytesPerValue;
+
+	private SampleFormat(int iBytesPerValue)
+	{
+		this.iBytesPerValue = iBytesPerValue;
+	}
+
+	/**
+	 * @return the size of either the real or the imaginary part of a sample
+	 */
+	public int getBytesPerValue()
+	{
+		return iBytesPerValue;
+	}
+
+	/**
+	 * @return the size of a complex sample
+	 */
+	public int getBytesPerSample()
+	{
+		return 2 * iBytesPerValue;
+	}
+
+	/**
+	 * Read count complex samples, starting at byteIndex, into re[offset..] and im[offset..].
+	 */
+	abstract void read(ByteBuffer src, int byteIndex, double[] re, double[] im, int offset, int count);
+
+	abstract void read(ByteBuffer src, int byteIndex, float[] re, float[] im, int offset, int count);
+
+	/**
+	 * Read valueCount values, starting at byteIndex, as interleaved shorts.
+	 */
+	abstract void read(ByteBuffer src, int byteIndex, short[] dst, int offset, int valueCount);
+}
@@ -0,0 +1,130 @@
+package com.peralex.utilities.fft;
+
+import com.peralex.sharedlibs.dsphostl.TimeStamp;
+
+/**
+ * A snapshot of a signal found by SignalEventTracker, i.e. a group of detected bins that touch each other in frequency
+ * and in time. A new snapshot is created every time the event changes, and snapshots of the same event are equal to
+ * each other, so they can be used as the rows of a BeanTableModel.
+ */
+public final class SignalEvent
+{
+	private final long lId;
+
+	private final TimeStamp oStartTime;
+
+	private final TimeStamp oStopTime;
+
+	private final double dLowFrequency_Hz;
+
+	private final double dHighFrequency_Hz;
+
+	private final double dPeakFrequency_Hz;
+
+	private final float fPeakLevel_dBm;
+
+	private final boolean bActive;
+
+	SignalEvent(long lId, TimeStamp oStartTime, TimeStamp oStopTime, double dLowFrequency_Hz, double dHighFrequency_Hz,
+			double dPeakFrequency_Hz, float fPeakLevel_dBm, boolean bActive)
+	{
+		this.lId = lId;
+		this.oStartTime = oStartTime;
+		this.oStopTime = oStopTime;
+		this.dLowFrequency_Hz = dLowFrequency_Hz;
+		this.dHighFrequency_Hz = dHighFrequency_Hz;
+		this.dPeakFrequency_Hz = dPeakFrequency_Hz;
+		this.fPeakLevel_dBm = fPeakLevel_dBm;
+		this.bActive = bActive;
+	}
+
+	/**
+	 * @return a number that identifies the event, unique within the tracker that found it
+	 */
+	public long getId()
+	{
+		return lId;
+	}
+
+	/**
+	 * @return the time of the first frame the signal was detected in
+	 */
+	public TimeStamp getStartTime()
+	{
+		return oStartTime;
+	}
+
+	/**
+	 * @return the time of the last frame the signal was detected in, so far
+	 */
+	public TimeStamp getStopTime()
+	{
+		return oStopTime;
+	}
+
+	/**
+	 * @return the lowest bin the signal was detected in
+	 */
+	public double getLowFrequency_Hz()
+	{
+		return dLowFrequency_Hz;
+	}
+
+	/**
+	 * @return the highest bin the signal was detected in
+	 */
+	public double getHighFrequency_Hz()
+	{
+		return dHighFrequency_Hz;
+	}
+
+	public double getBandwidth_Hz()
+	{
+		return dHighFrequency_Hz - dLowFrequency_Hz;
+	}
+
+	/**
+	 * @return the bin the peak level was detected in
+	 */
+	public double getPeakFrequency_Hz()
+	{
+		return dPeakFrequency_Hz;
+	}
+
+	public float getPeakLevel_dBm()
+	{
+		return fPeakLevel_dBm;
+	}
+
+	/**
+	 * @return false once the event has been closed
+	 */
+	public boolean isActive()
+	{
+		return bActive;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof SignalEvent))
+		{
+			return false;
+		}
+		return lId == ((SignalEvent) obj).lId;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return (int) (lId ^ (lId >>> 32));
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SignalEvent[" + lId + " " + oStartTime + " - " + oStopTime + ", " + dLowFrequency_Hz + " - "
+				+ dHighFrequency_Hz + "Hz, peak " + fPeakLevel_dBm + "dBm at " + dPeakFrequency_Hz + "Hz"
+				+ (bActive ? "" : ", closed") + "]";
+	}
+}
@@ -0,0 +1,108 @@
+package com.peralex.utilities.fft;
+
+import javax.swing.SwingUtilities;
+
+import com.peralex.utilities.ui.table.BeanTableModel;
+
+/**
+ * A table of the events found by a SignalEventTracker, with one row per event. Rows are added when events open, and
+ * replaced when they change or close. The changes are passed to the event dispatch thread, so the tracker can run on
+ * any thread.
+ *
+ * To keep the table from growing forever, the oldest closed events are removed once there are more than the maximum
+ * number of rows.
+ */
+public class SignalEventTableModel extends BeanTableModel<SignalEvent> implements SignalEventTracker.IEventListener
+{
+	public static final int DEFAULT_MAXIMUM_ROWS = 1000;
+
+	private int iMaximumRows = DEFAULT_MAXIMUM_ROWS;
+
+	public SignalEventTableModel()
+	{
+		super(SignalEvent.class, "id", "startTime", "stopTime", "lowFrequency_Hz", "highFrequency_Hz", "peakFrequency_Hz",
+				"peakLevel_dBm", "active");
+		setColumnName("lowFrequency_Hz", "Low Frequency (Hz)");
+		setColumnName("highFrequency_Hz", "High Frequency (Hz)");
+		setColumnName("peakFrequency_Hz", "Peak Frequency (Hz)");
+		setColumnName("peakLevel_dBm", "Peak Level (dBm)");
+	}
+
+	/**
+	 * must be called on the event dispatch thread.
+	 */
+	public void setMaximumRows(int iMaximumRows)
+	{
+		if (iMaximumRows < 1)
+		{
+			throw new IllegalArgumentException("maximum rows must be positive, " + iMaximumRows);
+		}
+		this.iMaximumRows = iMaximumRows;
+		removeOldRows();
+	}
+
+	public int getMaximumRows()
+	{
+		return iMaximumRows;
+	}
+
+	public void eventOpened(final SignalEvent event)
+	{
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				addRow(event);
+				removeOldRows();
+			}
+		});
+	}
+
+	public void eventUpdated(final SignalEvent event)
+	{
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				replaceRow(event);
+			}
+		});
+	}
+
+	public void eventClosed(final SignalEvent event)
+	{
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				replaceRow(event);
+				removeOldRows();
+			}
+		});
+	}
+
+	private void replaceRow(SignalEvent event)
+	{
+		// events are equal to their earlier snapshots
+		final int index = indexOf(event);
+		if (index != -1)
+		{
+			updateRow(index, event);
+		}
+	}
+
+	private void removeOldRows()
+	{
+		for (int i = 0; i < getRowCount() && getRowCount() > iMaximumRows;)
+		{
+			if (getRow(i).isActive())
+			{
+				i++;
+			}
+			else
+			{
+				removeRow(i);
+			}
+		}
+	}
+}
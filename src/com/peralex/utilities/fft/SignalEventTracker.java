@@ -0,0 +1,505 @@
+package com.peralex.utilities.fft;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.peralex.sharedlibs.dsphostl.TimeStamp;
+
+/**
+ * Groups detections into signal events as the frames come in, instead of post-processing a recording of them.
+ *
+ * Each frame is split into runs of detected bins (bins closer together than the maximum bin gap count as one run),
+ * and the runs are joined to the active events whose bins they overlap in the previous frame, using a union-find over
+ * the runs and events. A run that overlaps no event opens a new one, and a run that overlaps several events merges
+ * them into the oldest of them, closing the others. An event that is not detected for more than the hold time is
+ * closed.
+ *
+ * The work per frame is one pass over the bins to find the runs, and then proportional to the number of runs and
+ * active events, and only the active events are kept in memory.
+ *
+ * Not thread-safe, frames must be fed in from one thread. The listeners are notified on that thread.
+ */
+public class SignalEventTracker
+{
+	/**
+	 * Notified with a new snapshot of the event every time it changes.
+	 */
+	public interface IEventListener
+	{
+		void eventOpened(SignalEvent event);
+
+		/**
+		 * The frequency span or the peak level of the event has changed.
+		 */
+		void eventUpdated(SignalEvent event);
+
+		void eventClosed(SignalEvent event);
+	}
+
+	/**
+	 * the state of an active event.
+	 */
+	private static final class Track
+	{
+		long lId;
+
+		TimeStamp oStartTime;
+
+		TimeStamp oLastSeen;
+
+		/** the bins the event was detected in, in the last frame it was detected in */
+		int iLo;
+
+		int iHi;
+
+		/** all the bins the event has been detected in */
+		int iMinBin;
+
+		int iMaxBin;
+
+		short wPeak_cdBm;
+
+		int iPeakBin;
+
+		/** the number of frames since the event was last detected */
+		int iMisses;
+
+		/** another event was merged into this one */
+		boolean bMerged;
+	}
+
+	private static final Comparator<Track> LO_ORDER = new Comparator<Track>()
+	{
+		public int compare(Track o1, Track o2)
+		{
+			return o1.iLo < o2.iLo ? -1 : (o1.iLo == o2.iLo ? 0 : 1);
+		}
+	};
+
+	private final List<IEventListener> oListeners = new CopyOnWriteArrayList<IEventListener>();
+
+	private int iMaxBinGap = 1;
+
+	private int iHoldFrames = 2;
+
+	/** sorted by iLo, and never overlapping each other */
+	private final ArrayList<Track> oActive = new ArrayList<Track>();
+
+	private final ArrayList<Track> oSurvivors = new ArrayList<Track>();
+
+	private long lNextId = 1;
+
+	private long lFirstBinFrequency_Hz;
+
+	private long lFrequencyResolution_cHz;
+
+	/*
+	 * scratch space, re-used between frames. The union-find nodes are the active events, followed by the runs.
+	 */
+	private int[] aiRunLo = new int[0];
+
+	private int[] aiRunHi = new int[0];
+
+	private short[] awRunPeak_cdBm = new short[0];
+
+	private int[] aiRunPeakBin = new int[0];
+
+	private int[] aiParent = new int[0];
+
+	private int[] aiGroupSurvivor = new int[0];
+
+	private int[] aiGroupLo = new int[0];
+
+	private int[] aiGroupHi = new int[0];
+
+	private short[] awGroupPeak_cdBm = new short[0];
+
+	private int[] aiGroupPeakBin = new int[0];
+
+	public void addListener(IEventListener oListener)
+	{
+		oListeners.add(oListener);
+	}
+
+	public void removeListener(IEventListener oListener)
+	{
+		oListeners.remove(oListener);
+	}
+
+	/**
+	 * @param iMaxBinGap detected bins with up to this many undetected bins between them belong to the same signal.
+	 *          Defaults to 1.
+	 */
+	public void setMaxBinGap(int iMaxBinGap)
+	{
+		if (iMaxBinGap < 0)
+		{
+			throw new IllegalArgumentException("bin gap may not be negative, " + iMaxBinGap);
+		}
+		this.iMaxBinGap = iMaxBinGap;
+	}
+
+	public int getMaxBinGap()
+	{
+		return iMaxBinGap;
+	}
+
+	/**
+	 * @param iHoldFrames the number of frames an event may go undetected before it is closed. Defaults to 2.
+	 */
+	public void setHoldFrames(int iHoldFrames)
+	{
+		if (iHoldFrames < 0)
+		{
+			throw new IllegalArgumentException("hold frames may not be negative, " + iHoldFrames);
+		}
+		this.iHoldFrames = iHoldFrames;
+	}
+
+	public int getHoldFrames()
+	{
+		return iHoldFrames;
+	}
+
+	/**
+	 * @return the number of events that are currently open
+	 */
+	public int getActiveEventCount()
+	{
+		return oActive.size();
+	}
+
+	/**
+	 * Process the detections of one frame. The parameters are the same as those of
+	 * AmplitudeDetectionWaterfallGraph.setDetectionData(). If the frequency of the bins changes, all the active events
+	 * are closed.
+	 *
+	 * @param awDetection_cdBm the level of the detected bins, and -32767 (not detected) or -32768 (blocked) for the others
+	 */
+	public void process(TimeStamp oTimeStamp, long lFirstBinFrequency_Hz, long lFrequencyResolution_cHz,
+			short[] awDetection_cdBm)
+	{
+		if (lFirstBinFrequency_Hz != this.lFirstBinFrequency_Hz || lFrequencyResolution_cHz != this.lFrequencyResolution_cHz)
+		{
+			closeAll();
+			this.lFirstBinFrequency_Hz = lFirstBinFrequency_Hz;
+			this.lFrequencyResolution_cHz = lFrequencyResolution_cHz;
+		}
+
+		final int runCount = findRuns(awDetection_cdBm);
+		final int eventCount = oActive.size();
+		final int nodeCount = eventCount + runCount;
+		if (aiParent.length < nodeCount)
+		{
+			final int size = Math.max(nodeCount, 2 * aiParent.length);
+			aiParent = new int[size];
+			aiGroupSurvivor = new int[size];
+			aiGroupLo = new int[size];
+			aiGroupHi = new int[size];
+			awGroupPeak_cdBm = new short[size];
+			aiGroupPeakBin = new int[size];
+		}
+		for (int i = 0; i < nodeCount; i++)
+		{
+			aiParent[i] = i;
+			aiGroupSurvivor[i] = -1;
+			aiGroupLo[i] = Integer.MAX_VALUE;
+			aiGroupHi[i] = Integer.MIN_VALUE;
+			awGroupPeak_cdBm[i] = Short.MIN_VALUE;
+		}
+
+		joinOverlaps(runCount);
+
+		// the extent and peak of the runs in each group
+		for (int j = 0; j < runCount; j++)
+		{
+			final int root = find(eventCount + j);
+			aiGroupLo[root] = Math.min(aiGroupLo[root], aiRunLo[j]);
+			aiGroupHi[root] = Math.max(aiGroupHi[root], aiRunHi[j]);
+			if (awRunPeak_cdBm[j] > awGroupPeak_cdBm[root])
+			{
+				awGroupPeak_cdBm[root] = awRunPeak_cdBm[j];
+				aiGroupPeakBin[root] = aiRunPeakBin[j];
+			}
+		}
+		// the oldest event in each group survives
+		for (int i = 0; i < eventCount; i++)
+		{
+			final int root = find(i);
+			final int survivor = aiGroupSurvivor[root];
+			if (survivor == -1 || oActive.get(i).lId < oActive.get(survivor).lId)
+			{
+				aiGroupSurvivor[root] = i;
+			}
+		}
+
+		// merge the events that were joined by a run, before the survivors are updated
+		for (int i = 0; i < eventCount; i++)
+		{
+			final int survivor = aiGroupSurvivor[find(i)];
+			if (survivor != i)
+			{
+				final Track track = oActive.get(i);
+				absorb(oActive.get(survivor), track);
+				fireEventClosed(track);
+			}
+		}
+
+		oSurvivors.clear();
+		for (int i = 0; i < eventCount; i++)
+		{
+			final int root = find(i);
+			if (aiGroupSurvivor[root] != i)
+			{
+				continue;
+			}
+			final Track track = oActive.get(i);
+			if (aiGroupLo[root] <= aiGroupHi[root])
+			{
+				final boolean changed = update(track, oTimeStamp, aiGroupLo[root], aiGroupHi[root], awGroupPeak_cdBm[root],
+						aiGroupPeakBin[root]);
+				if (changed || track.bMerged)
+				{
+					track.bMerged = false;
+					fireEventUpdated(track);
+				}
+				oSurvivors.add(track);
+			}
+			else if (++track.iMisses > iHoldFrames)
+			{
+				fireEventClosed(track);
+			}
+			else
+			{
+				oSurvivors.add(track);
+			}
+		}
+
+		for (int j = 0; j < runCount; j++)
+		{
+			if (aiGroupSurvivor[find(eventCount + j)] == -1)
+			{
+				final Track track = new Track();
+				track.lId = lNextId++;
+				track.oStartTime = oTimeStamp;
+				track.oLastSeen = oTimeStamp;
+				track.iLo = track.iMinBin = aiRunLo[j];
+				track.iHi = track.iMaxBin = aiRunHi[j];
+				track.wPeak_cdBm = awRunPeak_cdBm[j];
+				track.iPeakBin = aiRunPeakBin[j];
+				oSurvivors.add(track);
+				fireEventOpened(track);
+			}
+		}
+
+		oActive.clear();
+		oActive.addAll(oSurvivors);
+		oSurvivors.clear();
+		Collections.sort(oActive, LO_ORDER);
+	}
+
+	/**
+	 * Close all the active events, e.g. when the input stops.
+	 */
+	public void closeAll()
+	{
+		for (Track track : oActive)
+		{
+			fireEventClosed(track);
+		}
+		oActive.clear();
+	}
+
+	/**
+	 * Split the frame into runs of detected bins.
+	 *
+	 * @return the number of runs
+	 */
+	private int findRuns(short[] awDetection_cdBm)
+	{
+		final int n = awDetection_cdBm.length;
+		if (aiRunLo.length < n)
+		{
+			aiRunLo = new int[n];
+			aiRunHi = new int[n];
+			awRunPeak_cdBm = new short[n];
+			aiRunPeakBin = new int[n];
+		}
+		int count = 0;
+		for (int i = 0; i < n; i++)
+		{
+			final short level = awDetection_cdBm[i];
+			if (level <= CFARDetector.NOT_DETECTED)
+			{
+				continue;
+			}
+			if (count > 0 && i - aiRunHi[count - 1] <= iMaxBinGap + 1)
+			{
+				aiRunHi[count - 1] = i;
+				if (level > awRunPeak_cdBm[count - 1])
+				{
+					awRunPeak_cdBm[count - 1] = level;
+					aiRunPeakBin[count - 1] = i;
+				}
+			}
+			else
+			{
+				aiRunLo[count] = aiRunHi[count] = aiRunPeakBin[count] = i;
+				awRunPeak_cdBm[count] = level;
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Union each run with the events it overlaps. Both are sorted and do not overlap each other, so the events that a run
+	 * overlaps are next to each other, and the first of them never moves backwards.
+	 */
+	private void joinOverlaps(int runCount)
+	{
+		final int eventCount = oActive.size();
+		int first = 0;
+		for (int j = 0; j < runCount; j++)
+		{
+			final int lo = aiRunLo[j] - iMaxBinGap - 1;
+			final int hi = aiRunHi[j] + iMaxBinGap + 1;
+			while (first < eventCount && oActive.get(first).iHi < lo)
+			{
+				first++;
+			}
+			for (int i = first; i < eventCount && oActive.get(i).iLo <= hi; i++)
+			{
+				union(i, eventCount + j);
+			}
+		}
+	}
+
+	private int find(int node)
+	{
+		int root = node;
+		while (aiParent[root] != root)
+		{
+			root = aiParent[root];
+		}
+		// path compression
+		while (aiParent[node] != root)
+		{
+			final int next = aiParent[node];
+			aiParent[node] = root;
+			node = next;
+		}
+		return root;
+	}
+
+	private void union(int a, int b)
+	{
+		final int rootA = find(a);
+		final int rootB = find(b);
+		if (rootA != rootB)
+		{
+			aiParent[rootB] = rootA;
+		}
+	}
+
+	/**
+	 * @return true if the span or the peak of the event changed
+	 */
+	private static boolean update(Track track, TimeStamp oTimeStamp, int lo, int hi, short peak_cdBm, int peakBin)
+	{
+		boolean changed = false;
+		track.oLastSeen = oTimeStamp;
+		track.iMisses = 0;
+		track.iLo = lo;
+		track.iHi = hi;
+		if (lo < track.iMinBin)
+		{
+			track.iMinBin = lo;
+			changed = true;
+		}
+		if (hi > track.iMaxBin)
+		{
+			track.iMaxBin = hi;
+			changed = true;
+		}
+		if (peak_cdBm > track.wPeak_cdBm)
+		{
+			track.wPeak_cdBm = peak_cdBm;
+			track.iPeakBin = peakBin;
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * merge the history of an event into the event that survives it.
+	 */
+	private static void absorb(Track survivor, Track track)
+	{
+		survivor.bMerged = true;
+		if (track.oStartTime.before(survivor.oStartTime))
+		{
+			survivor.oStartTime = track.oStartTime;
+		}
+		survivor.iMinBin = Math.min(survivor.iMinBin, track.iMinBin);
+		survivor.iMaxBin = Math.max(survivor.iMaxBin, track.iMaxBin);
+		if (track.wPeak_cdBm > survivor.wPeak_cdBm)
+		{
+			survivor.wPeak_cdBm = track.wPeak_cdBm;
+			survivor.iPeakBin = track.iPeakBin;
+		}
+	}
+
+	private double getBinFrequency_Hz(int bin)
+	{
+		return lFirstBinFrequency_Hz + bin * (lFrequencyResolution_cHz / 100.0);
+	}
+
+	private SignalEvent createSnapshot(Track track, boolean bActive)
+	{
+		return new SignalEvent(track.lId, track.oStartTime, track.oLastSeen, getBinFrequency_Hz(track.iMinBin),
+				getBinFrequency_Hz(track.iMaxBin), getBinFrequency_Hz(track.iPeakBin), track.wPeak_cdBm / 100f, bActive);
+	}
+
+	private void fireEventOpened(Track track)
+	{
+		if (oListeners.isEmpty())
+		{
+			return;
+		}
+		final SignalEvent event = createSnapshot(track, true);
+		for (IEventListener listener : oListeners)
+		{
+			listener.eventOpened(event);
+		}
+	}
+
+	private void fireEventUpdated(Track track)
+	{
+		if (oListeners.isEmpty())
+		{
+			return;
+		}
+		final SignalEvent event = createSnapshot(track, true);
+		for (IEventListener listener : oListeners)
+		{
+			listener.eventUpdated(event);
+		}
+	}
+
+	private void fireEventClosed(Track track)
+	{
+		if (oListeners.isEmpty())
+		{
+			return;
+		}
+		final SignalEvent event = createSnapshot(track, false);
+		for (IEventListener listener : oListeners)
+		{
+			listener.eventClosed(event);
+		}
+	}
+}
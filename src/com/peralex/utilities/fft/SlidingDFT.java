@@ -0,0 +1,462 @@
+package com.peralex.utilities.fft;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.peralex.utilities.ui.graphs.scrollingline.ScrollingLineGraph;
+
+/**
+ * Tracks the level of a handful of frequencies with a sliding DFT, i.e. the DFT of the most recent N samples at each
+ * of those frequencies, updated on every sample at a cost of O(1) per frequency. This is a lot cheaper than running a
+ * full FFT when only a few frequencies (cursor positions, for example) are of interest.
+ *
+ * Frequencies are normalised to the sample rate, i.e. -0.5 to 0.5, and need not fall on a bin of an N-point FFT. The
+ * window is rectangular, so a tone that is not exactly on a tracked frequency leaks into it the same way as it would
+ * in an un-windowed FFT.
+ *
+ * Every so many samples (see setOutputInterval()) the levels are calculated, and handed to the listener, and to the
+ * ScrollingLineGraph if there is one, as one line per tracked frequency, using the keys passed to addFrequency().
+ *
+ * Frequencies may be added and removed from any thread, but samples must be fed in from one thread.
+ */
+public class SlidingDFT
+{
+	/**
+	 * Notified on the feeding thread whenever new levels have been calculated.
+	 */
+	public interface ILevelListener
+	{
+		/**
+		 * @param levels the new level of each tracked frequency, by key
+		 */
+		void levelsUpdated(SlidingDFT source, Map<Object, Float> levels);
+	}
+
+	/**
+	 * how often (in windows) the sums are recalculated from scratch, to stop rounding errors from building up.
+	 */
+	private static final int RECALCULATE_INTERVAL = 64;
+
+	/**
+	 * how often the oscillators are re-normalised, to stop rounding errors from changing their amplitude.
+	 */
+	private static final int OSCILLATOR_NORMALISE_INTERVAL = 1024;
+
+	private final int iWindowLength;
+
+	/**
+	 * the most recent window of samples.
+	 */
+	private final double[] adHistoryReal;
+
+	private final double[] adHistoryImag;
+
+	/**
+	 * where the next sample goes, which is also where the oldest sample is.
+	 */
+	private int iHistoryIndex = 0;
+
+	/**
+	 * the number of samples received, up to the window length.
+	 */
+	private int iHistoryCount = 0;
+
+	/**
+	 * Replaced rather than modified, so that the feeding thread can walk it without locking.
+	 */
+	private volatile Tone[] aoTones = new Tone[0];
+
+	private final Object oTonesLock = new Object();
+
+	private int iOutputInterval;
+
+	private int iSamplesSinceOutput = 0;
+
+	private int iSamplesSinceRecalculate = 0;
+
+	private int iSamplesSinceNormalise = 0;
+
+	private double dPreScalingFactor = 1.0;
+
+	private double dPostScalingFactor = 1.0;
+
+	private double dLostEnergy = 0;
+
+	private ILevelListener oListener;
+
+	private ScrollingLineGraph oGraph;
+
+	/**
+	 * @param iWindowLength the number of samples that each level is calculated over, the same as the size of the
+	 *          equivalent FFT
+	 */
+	public SlidingDFT(int iWindowLength)
+	{
+		if (iWindowLength < 1)
+		{
+			throw new IllegalArgumentException("window length must be positive, " + iWindowLength);
+		}
+		this.iWindowLength = iWindowLength;
+		this.iOutputInterval = iWindowLength;
+		this.adHistoryReal = new double[iWindowLength];
+		this.adHistoryImag = new double[iWindowLength];
+	}
+
+	public int getWindowLength()
+	{
+		return iWindowLength;
+	}
+
+	/**
+	 * Start tracking a frequency. If the key is already tracked, it's frequency is changed.
+	 *
+	 * @param key identifies the frequency in the output, and is used as the ScrollingLineGraph line key
+	 * @param dFrequency normalised to the sample rate
+	 */
+	public void addFrequency(Object key, double dFrequency)
+	{
+		if (dFrequency < -0.5 || dFrequency > 0.5)
+		{
+			throw new IllegalArgumentException("frequency must be between -0.5 and 0.5, " + dFrequency);
+		}
+		synchronized (oTonesLock)
+		{
+			final Tone[] tones = aoTones;
+			final Tone tone = new Tone(key, dFrequency, iWindowLength);
+			for (int i = 0; i < tones.length; i++)
+			{
+				if (tones[i].key.equals(key))
+				{
+					final Tone[] newTones = tones.clone();
+					newTones[i] = tone;
+					aoTones = newTones;
+					return;
+				}
+			}
+			final Tone[] newTones = new Tone[tones.length + 1];
+			System.arraycopy(tones, 0, newTones, 0, tones.length);
+			newTones[tones.length] = tone;
+			aoTones = newTones;
+		}
+	}
+
+	/**
+	 * Convenience method for frequencies in Hz, e.g. cursor positions.
+	 */
+	public void addFrequency(Object key, double dFrequency_Hz, double dSampleRate_Hz)
+	{
+		addFrequency(key, dFrequency_Hz / dSampleRate_Hz);
+	}
+
+	/**
+	 * Stop tracking a frequency. Does not clear the ScrollingLineGraph line.
+	 */
+	public void removeFrequency(Object key)
+	{
+		synchronized (oTonesLock)
+		{
+			final Tone[] tones = aoTones;
+			for (int i = 0; i < tones.length; i++)
+			{
+				if (tones[i].key.equals(key))
+				{
+					final Tone[] newTones = new Tone[tones.length - 1];
+					System.arraycopy(tones, 0, newTones, 0, i);
+					System.arraycopy(tones, i + 1, newTones, i, tones.length - i - 1);
+					aoTones = newTones;
+					return;
+				}
+			}
+		}
+	}
+
+	public void removeAllFrequencies()
+	{
+		synchronized (oTonesLock)
+		{
+			aoTones = new Tone[0];
+		}
+	}
+
+	/**
+	 * @param iSamples how many samples between outputs. Defaults to the window length.
+	 */
+	public void setOutputInterval(int iSamples)
+	{
+		if (iSamples < 1)
+		{
+			throw new IllegalArgumentException("output interval must be positive, " + iSamples);
+		}
+		this.iOutputInterval = iSamples;
+	}
+
+	public int getOutputInterval()
+	{
+		return iOutputInterval;
+	}
+
+	/**
+	 * Same parameters as IFFTEngine.calculate(), so that with the same scaling, a tone on a tracked frequency has the same
+	 * level as it would have in an un-windowed FFT of the window length.
+	 */
+	public void setScaling(double preScalingFactor, double postScalingFactor, double lostEnergy)
+	{
+		this.dPreScalingFactor = preScalingFactor;
+		this.dPostScalingFactor = postScalingFactor;
+		this.dLostEnergy = lostEnergy;
+	}
+
+	public void setListener(ILevelListener oListener)
+	{
+		this.oListener = oListener;
+	}
+
+	/**
+	 * @param oGraph receives one line per tracked frequency, may be null
+	 */
+	public void setGraph(ScrollingLineGraph oGraph)
+	{
+		this.oGraph = oGraph;
+	}
+
+	/**
+	 * @param input an array containing real and imaginary value alternating (ie, [real] [imag] [real] [imag]...)
+	 */
+	public void process(short[] input)
+	{
+		if ((input.length % 2) == 1)
+		{
+			throw new IllegalArgumentException("the sample counts for the reals, differs from the counts for imaginaries");
+		}
+		Tone[] tones = aoTones;
+		initialiseNewTones(tones);
+		for (int i = 0; i < input.length; i += 2)
+		{
+			final double xr = input[i];
+			final double xi = input[i + 1];
+			final double oldr = adHistoryReal[iHistoryIndex];
+			final double oldi = adHistoryImag[iHistoryIndex];
+			final boolean full = iHistoryCount == iWindowLength;
+
+			for (int t = 0; t < tones.length; t++)
+			{
+				tones[t].update(xr, xi, oldr, oldi, full);
+			}
+
+			adHistoryReal[iHistoryIndex] = xr;
+			adHistoryImag[iHistoryIndex] = xi;
+			iHistoryIndex++;
+			if (iHistoryIndex == iWindowLength)
+			{
+				iHistoryIndex = 0;
+			}
+			if (!full)
+			{
+				iHistoryCount++;
+			}
+
+			iSamplesSinceNormalise++;
+			if (iSamplesSinceNormalise == OSCILLATOR_NORMALISE_INTERVAL)
+			{
+				iSamplesSinceNormalise = 0;
+				for (int t = 0; t < tones.length; t++)
+				{
+					tones[t].normaliseOscillator();
+				}
+			}
+
+			iSamplesSinceRecalculate++;
+			if (iSamplesSinceRecalculate == RECALCULATE_INTERVAL * iWindowLength)
+			{
+				iSamplesSinceRecalculate = 0;
+				for (int t = 0; t < tones.length; t++)
+				{
+					recalculate(tones[t]);
+				}
+			}
+
+			iSamplesSinceOutput++;
+			if (iSamplesSinceOutput >= iOutputInterval)
+			{
+				iSamplesSinceOutput = 0;
+				output(tones);
+				// pick up frequencies that were added or removed since the last output
+				tones = aoTones;
+				initialiseNewTones(tones);
+			}
+		}
+	}
+
+	/**
+	 * @return the current level of the frequency, or null if it is not tracked
+	 */
+	public Float getLevel(Object key)
+	{
+		final Tone[] tones = aoTones;
+		for (int i = 0; i < tones.length; i++)
+		{
+			if (tones[i].key.equals(key))
+			{
+				return Float.valueOf(level(tones[i]));
+			}
+		}
+		return null;
+	}
+
+	private void initialiseNewTones(Tone[] tones)
+	{
+		for (int t = 0; t < tones.length; t++)
+		{
+			if (!tones[t].bInitialised)
+			{
+				recalculate(tones[t]);
+				tones[t].bInitialised = true;
+			}
+		}
+	}
+
+	/**
+	 * Calculate the sum from scratch over the history, and restart the oscillator, so that the next sample is multiplied
+	 * by e^(-iwN) and the oldest sample in the history by 1.
+	 */
+	private void recalculate(Tone tone)
+	{
+		double sr = 0;
+		double si = 0;
+		double or = 1;
+		double oi = 0;
+		int h = iHistoryCount == iWindowLength ? iHistoryIndex : 0;
+		for (int k = 0; k < iHistoryCount; k++)
+		{
+			final double xr = adHistoryReal[h];
+			final double xi = adHistoryImag[h];
+			sr += xr * or - xi * oi;
+			si += xr * oi + xi * or;
+			final double r = or * tone.dStepReal - oi * tone.dStepImag;
+			oi = or * tone.dStepImag + oi * tone.dStepReal;
+			or = r;
+			h++;
+			if (h == iWindowLength)
+			{
+				h = 0;
+			}
+		}
+		if (iHistoryCount == iWindowLength)
+		{
+			// exact, rather than the product of N rotations
+			or = tone.dWrapReal;
+			oi = -tone.dWrapImag;
+		}
+		tone.dSumReal = sr;
+		tone.dSumImag = si;
+		tone.dOscillatorReal = or;
+		tone.dOscillatorImag = oi;
+	}
+
+	private float level(Tone tone)
+	{
+		final double magnitude = Math.sqrt(tone.dSumReal * tone.dSumReal + tone.dSumImag * tone.dSumImag)
+				* dPreScalingFactor;
+		return (float) AbstractFFTEngine.logScale(magnitude, dPostScalingFactor, dLostEnergy);
+	}
+
+	private void output(Tone[] tones)
+	{
+		if (tones.length == 0)
+		{
+			return;
+		}
+		final Map<Object, Float> levels = new HashMap<Object, Float>();
+		for (int t = 0; t < tones.length; t++)
+		{
+			levels.put(tones[t].key, Float.valueOf(level(tones[t])));
+		}
+		final ILevelListener listener = oListener;
+		if (listener != null)
+		{
+			listener.levelsUpdated(this, levels);
+		}
+		final ScrollingLineGraph graph = oGraph;
+		if (graph != null)
+		{
+			graph.addLineValues(levels);
+		}
+	}
+
+	/**
+	 * The state of one tracked frequency.
+	 *
+	 * The sum S(n) = sum of x(m)*e^(-iwm) over the window is kept up to date with S(n) = S(n-1) + x(n)*e^(-iwn) -
+	 * x(n-N)*e^(-iw(n-N)), where the oscillator holds e^(-iwn), and e^(-iw(n-N)) = e^(-iwn) * e^(iwN). The phase of S
+	 * depends on where the oscillator started, but it's magnitude is that of the DFT of the window.
+	 */
+	private static final class Tone
+	{
+		final Object key;
+
+		final double dStepReal;
+
+		final double dStepImag;
+
+		/**
+		 * e^(iwN).
+		 */
+		final double dWrapReal;
+
+		final double dWrapImag;
+
+		double dOscillatorReal;
+
+		double dOscillatorImag;
+
+		double dSumReal;
+
+		double dSumImag;
+
+		/**
+		 * only accessed from the feeding thread.
+		 */
+		boolean bInitialised = false;
+
+		Tone(Object key, double dFrequency, int iWindowLength)
+		{
+			if (key == null)
+			{
+				throw new IllegalArgumentException("key may not be null");
+			}
+			this.key = key;
+			final double w = 2 * Math.PI * dFrequency;
+			dStepReal = Math.cos(-w);
+			dStepImag = Math.sin(-w);
+			// reduce w*N to one cycle first, so that we don't lose precision for large N
+			final double wrap = 2 * Math.PI * (dFrequency * iWindowLength - Math.floor(dFrequency * iWindowLength));
+			dWrapReal = Math.cos(wrap);
+			dWrapImag = Math.sin(wrap);
+		}
+
+		void update(double xr, double xi, double oldr, double oldi, boolean full)
+		{
+			final double or = dOscillatorReal;
+			final double oi = dOscillatorImag;
+			dSumReal += xr * or - xi * oi;
+			dSumImag += xr * oi + xi * or;
+			if (full)
+			{
+				// the oldest sample leaves the window
+				final double pr = or * dWrapReal - oi * dWrapImag;
+				final double pi = or * dWrapImag + oi * dWrapReal;
+				dSumReal -= oldr * pr - oldi * pi;
+				dSumImag -= oldr * pi + oldi * pr;
+			}
+			dOscillatorReal = or * dStepReal - oi * dStepImag;
+			dOscillatorImag = or * dStepImag + oi * dStepReal;
+		}
+
+		void normaliseOscillator()
+		{
+			final double magnitude = Math.sqrt(dOscillatorReal * dOscillatorReal + dOscillatorImag * dOscillatorImag);
+			dOscillatorReal /= magnitude;
+			dOscillatorImag /= magnitude;
+		}
+	}
+}
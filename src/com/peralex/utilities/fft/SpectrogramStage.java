@@ -0,0 +1,274 @@
+package com.peralex.utilities.fft;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.peralex.sharedlibs.dsphostl.TimeStamp;
+import com.peralex.utilities.ui.ScrollableBufferedImage;
+import com.peralex.utilities.ui.graphs.waterfallGraph.AmplitudeDetectionWaterfallGraph;
+
+/**
+ * Turns samples into waterfall lines in as few passes as possible: the window and scaling are applied while the
+ * samples are copied into the FFT, and the FFT output is converted to dB and to a pixel colour while it is written
+ * straight into the waterfall image. This avoids the spectrum array, the pixel array and the copy into the image, which
+ * at high line rates on wide waterfalls cost more than the FFT itself.
+ *
+ * The levels, and therefore the colours, are the same as FFTGraph would display with the same scaling, to within
+ * rounding error.
+ *
+ * Not thread-safe, samples must be fed in from one thread.
+ */
+public class SpectrogramStage
+{
+	private final AmplitudeDetectionWaterfallGraph oGraph;
+
+	private final IFFTEngine oEngine;
+
+	private final int iFFT_size;
+
+	private final double[] adWindow;
+
+	/**
+	 * the window, multiplied by the pre-FFT scaling factor.
+	 */
+	private final double[] adScaledWindow;
+
+	private int iFrameIndex = 0;
+
+	private int iFramesToDrop = 0;
+
+	private int iDroppedFrames = 0;
+
+	private LogMode eLogMode = LogMode.POWER;
+
+	private double dPostFFTScalingFactor = 1.0;
+
+	private double dLostEnergy = 0;
+
+	/** 0 if not known */
+	private double dSampleRate_Hz = 0;
+
+	/** time of the first sample of the frame being filled, in microseconds */
+	private long lFrameStart_us;
+
+	/** time of the last line sent to the graph, in microseconds */
+	private long lLastLine_us = Long.MIN_VALUE;
+
+	private final ScrollableBufferedImage.IRowWriter oRowWriter = new ScrollableBufferedImage.IRowWriter()
+	{
+		public void writeRow(int[] aiPixels, int offset, int width)
+		{
+			writeLine(aiPixels, offset, width);
+		}
+	};
+
+	public SpectrogramStage(AmplitudeDetectionWaterfallGraph oGraph, int FFT_size, IFFTEngineFactory engineFactory)
+	{
+		this.oGraph = oGraph;
+		this.oEngine = engineFactory.createEngine(FFT_size, false);
+		this.iFFT_size = FFT_size;
+		this.adWindow = FFTWindow.get(FFTWindow.Type.BLACKMAN, FFT_size).getCoefficients();
+		this.adScaledWindow = adWindow.clone();
+	}
+
+	public final int getFFT_size()
+	{
+		return iFFT_size;
+	}
+
+	/**
+	 * Same parameters as IFFTEngine.calculate().
+	 */
+	public void setScaling(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy)
+	{
+		for (int i = 0; i < iFFT_size; i++)
+		{
+			adScaledWindow[i] = adWindow[i] * preFFTScalingFactor;
+		}
+		this.dPostFFTScalingFactor = postFFTScalingFactor;
+		this.dLostEnergy = lostEnergy;
+	}
+
+	/**
+	 * Same as IFFTEngine.setLogMode(). MAGNITUDE is treated the same as POWER, which gives the same result to within
+	 * rounding error.
+	 */
+	public void setLogMode(LogMode eLogMode)
+	{
+		if (eLogMode == null)
+		{
+			throw new IllegalArgumentException("log mode may not be null");
+		}
+		this.eLogMode = eLogMode;
+	}
+
+	/**
+	 * Set the number of frames to skip between lines, to limit the CPU usage when data rates are high. Skipped frames
+	 * are not copied or transformed.
+	 */
+	public void setNoFramesToDrop(int iFramesToDrop)
+	{
+		this.iFramesToDrop = iFramesToDrop;
+	}
+
+	/**
+	 * Set the sample rate, so that each line is stamped with the time of its first sample. If it is not set, all of the
+	 * lines that start in a block are stamped with the time of the block.
+	 */
+	public void setSampleRate_Hz(double dSampleRate_Hz)
+	{
+		if (dSampleRate_Hz < 0)
+		{
+			throw new IllegalArgumentException("sample rate may not be negative " + dSampleRate_Hz);
+		}
+		this.dSampleRate_Hz = dSampleRate_Hz;
+	}
+
+	/**
+	 * Same as process(short[], TimeStamp), with the block stamped with the current time.
+	 * 
+	 * @param input an array containing real and imaginary value alternating (ie, [real] [imag] [real] [imag]...)
+	 */
+	public void process(short[] input)
+	{
+		process(input, new TimeStamp());
+	}
+
+	/**
+	 * The waterfall graph only scrolls when a line is later than the previous one, so a line that would not be is moved
+	 * to 1us after it.
+	 * 
+	 * @param input an array containing real and imaginary value alternating (ie, [real] [imag] [real] [imag]...)
+	 * @param oBlockStart the time of the first sample in the input
+	 */
+	public void process(short[] input, TimeStamp oBlockStart)
+	{
+		if ((input.length % 2) == 1)
+		{
+			throw new IllegalArgumentException("the sample counts for the reals, differs from the counts for imaginaries");
+		}
+		process(input, null, null, input.length / 2, oBlockStart);
+	}
+
+	/**
+	 * Same as process(short[], TimeStamp), but the samples are read straight out of the buffer, which can be a heap
+	 * buffer, a direct buffer, or a MappedByteBuffer of a recording (see IQFilePlayback.addSpectrogram()). The samples
+	 * from the buffer's position up to it's limit are used, and the position is then advanced to the limit. The buffer's
+	 * own byte order is not changed.
+	 * 
+	 * @param oBlockStart the time of the first sample in the buffer
+	 */
+	public void process(ByteBuffer input, SampleFormat eFormat, ByteOrder eByteOrder, TimeStamp oBlockStart)
+	{
+		final int bytesPerSample = eFormat.getBytesPerSample();
+		if ((input.remaining() % bytesPerSample) != 0)
+		{
+			throw new IllegalArgumentException("the buffer does not contain a whole number of samples, " + input.remaining()
+					+ " bytes");
+		}
+		final ByteBuffer buffer = input.order() == eByteOrder ? input : input.duplicate().order(eByteOrder);
+		process(null, buffer, eFormat, input.remaining() / bytesPerSample, oBlockStart);
+		input.position(input.limit());
+	}
+
+	/**
+	 * The samples come from either awInput, or from oInput starting at it's position.
+	 */
+	private void process(short[] awInput, ByteBuffer oInput, SampleFormat eFormat, int sampleCount, TimeStamp oBlockStart)
+	{
+		final double[] re = oEngine.getRealBuffer();
+		final double[] im = oEngine.getImagBuffer();
+		final long blockStart_us = oBlockStart.getPeriod_usec();
+		int i = 0;
+		while (i < sampleCount)
+		{
+			if (iFrameIndex == 0)
+			{
+				lFrameStart_us = dSampleRate_Hz > 0 ? blockStart_us + Math.round(i * 1e6 / dSampleRate_Hz) : blockStart_us;
+			}
+			final int count = Math.min(sampleCount - i, iFFT_size - iFrameIndex);
+			if (iDroppedFrames < iFramesToDrop)
+			{
+				// skip the samples without copying them
+				iFrameIndex += count;
+			}
+			else if (awInput != null)
+			{
+				for (int j = iFrameIndex, end = iFrameIndex + count, index = i * 2; j < end; j++, index += 2)
+				{
+					re[j] = awInput[index] * adScaledWindow[j];
+					im[j] = awInput[index + 1] * adScaledWindow[j];
+				}
+				iFrameIndex += count;
+			}
+			else
+			{
+				// the window is applied while the samples are still in the cache
+				eFormat.read(oInput, oInput.position() + i * eFormat.getBytesPerSample(), re, im, iFrameIndex, count);
+				for (int j = iFrameIndex, end = iFrameIndex + count; j < end; j++)
+				{
+					re[j] *= adScaledWindow[j];
+					im[j] *= adScaledWindow[j];
+				}
+				iFrameIndex += count;
+			}
+			i += count;
+
+			if (iFrameIndex == iFFT_size)
+			{
+				iFrameIndex = 0;
+				if (iDroppedFrames < iFramesToDrop)
+				{
+					iDroppedFrames++;
+				}
+				else
+				{
+					iDroppedFrames = 0;
+					oEngine.runFFT();
+					final long time_us = lFrameStart_us > lLastLine_us ? lFrameStart_us : lLastLine_us + 1;
+					lLastLine_us = time_us;
+					oGraph.setAmplitudeData(TimeStamp.from_usec(time_us), oRowWriter, iFFT_size);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Convert the FFT output to pixels, in display order (negative frequencies first), straight into the image.
+	 */
+	private void writeLine(int[] aiPixels, int offset, int width)
+	{
+		if (width != iFFT_size)
+		{
+			// the waterfall sizes it's image to the line, so this only happens if the graph is being used for other data
+			return;
+		}
+		final double[] re = oEngine.getRealBuffer();
+		final double[] im = oEngine.getImagBuffer();
+		final int[] aiPerm = oEngine.getOutputPermutation();
+		final int half = AbstractFFTEngine.firstNegativeBin(iFFT_size);
+		final boolean fast = eLogMode == LogMode.FAST_POWER;
+		final double halfPost = dPostFFTScalingFactor * 0.5;
+		final double floor = AbstractFFTEngine.logScale(0, dPostFFTScalingFactor, dLostEnergy);
+		for (int j = 0; j < iFFT_size; j++)
+		{
+			final int k = j < iFFT_size - half ? j + half : j - (iFFT_size - half);
+			final int p = aiPerm[k];
+			final double power = re[p] * re[p] + im[p] * im[p];
+			final double level;
+			if (power <= 0)
+			{
+				level = floor;
+			}
+			else if (fast)
+			{
+				level = FastLog.log2(power) * FastLog.LN_2 * halfPost + dLostEnergy;
+			}
+			else
+			{
+				level = Math.log(power) * halfPost + dLostEnergy;
+			}
+			aiPixels[offset + j] = oGraph.getAmplitudePixel((float) level);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.peralex.utilities.fft;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Gives access to VectorRadix4FFT, which uses the JDK Vector API, without making the rest of the library depend on it.
+ *
+ * VectorRadix4FFT is only compiled when the JDK supports the jdk.incubator.vector module, and only works when the JVM is
+ * started with "--add-modules jdk.incubator.vector". When either is not the case, FACTORY quietly creates Radix4FFTs
+ * instead.
+ */
+public final class VectorFFTSupport
+{
+	private static final Logger logger = Logger.getLogger(VectorFFTSupport.class);
+
+	private static final String ENGINE_CLASS_NAME = "com.peralex.utilities.fft.VectorRadix4FFT";
+
+	/**
+	 * null if the vector engine is not available.
+	 */
+	private static final Constructor<?> engineConstructor = findEngineConstructor();
+
+	/**
+	 * Creates VectorRadix4FFTs if the Vector API is available, Radix4FFTs otherwise.
+	 */
+	public static final IFFTEngineFactory FACTORY = new IFFTEngineFactory()
+	{
+		public IFFTEngine createEngine(int FFT_size, boolean useBlackmanWindow)
+		{
+			if (engineConstructor == null)
+			{
+				return new Radix4FFT(FFT_size, useBlackmanWindow);
+			}
+			return newEngine(FFT_size, useBlackmanWindow);
+		}
+	};
+
+	/** not meant to be instantiated. */
+	private VectorFFTSupport()
+	{
+	}
+
+	/**
+	 * @return true if FACTORY creates vectorised engines.
+	 */
+	public static boolean isAvailable()
+	{
+		return engineConstructor != null;
+	}
+
+	private static Constructor<?> findEngineConstructor()
+	{
+		try
+		{
+			final Constructor<?> constructor = Class.forName(ENGINE_CLASS_NAME).getConstructor(int.class, boolean.class);
+			// make sure that the Vector API classes can actually be linked, and work
+			final IFFTEngine engine = (IFFTEngine) constructor.newInstance(Integer.valueOf(64), Boolean.FALSE);
+			engine.getRealBuffer()[1] = 1;
+			engine.runFFT();
+			return constructor;
+		}
+		catch (ClassNotFoundException ex)
+		{
+			logger.debug("vectorised FFT engine not compiled in, using scalar engine");
+		}
+		catch (LinkageError ex)
+		{
+			logger.debug("Vector API not available, using scalar FFT engine: " + ex);
+		}
+		catch (InvocationTargetException ex)
+		{
+			logger.debug("Vector API not available, using scalar FFT engine: " + ex.getCause());
+		}
+		catch (Exception ex)
+		{
+			logger.warn("could not create vectorised FFT engine, using scalar engine", ex);
+		}
+		return null;
+	}
+
+	private static IFFTEngine newEngine(int FFT_size, boolean useBlackmanWindow)
+	{
+		try
+		{
+			return (IFFTEngine) engineConstructor.newInstance(Integer.valueOf(FFT_size), Boolean.valueOf(useBlackmanWindow));
+		}
+		catch (InvocationTargetException ex)
+		{
+			if (ex.getCause() instanceof RuntimeException)
+			{
+				// e.g. an unsupported size
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new RuntimeException(ex.getCause());
+		}
+		catch (Exception ex)
+		{
+			throw new RuntimeException(ex);
+		}
+	}
+}
@@ -0,0 +1,391 @@
+package com.peralex.utilities.fft;
+
+/**
+ * Streaming Welch spectrum estimator.
+ *
+ * Incoming samples are written into a ring buffer, and a windowed FFT is taken every hop (FFT size, or a half or a
+ * quarter of it, depending on the overlap). The power spectra of the transforms are combined according to the averaging
+ * mode, and after every N transforms the listener is told that a display frame is ready.
+ *
+ * Unlike dropping frames to limit the CPU usage, this uses all of the signal energy, so short bursts are not lost.
+ *
+ * Not thread-safe, samples must be fed in from one thread.
+ */
+public class WelchEstimator
+{
+	public static enum Overlap
+	{
+		NONE(1), HALF(2), THREE_QUARTERS(4);
+
+		private final int divisor;
+
+		private Overlap(int divisor)
+		{
+			this.divisor = divisor;
+		}
+
+		/**
+		 * @return the number of new samples between consecutive transforms
+		 */
+		public int getHop(int FFT_size)
+		{
+			return FFT_size / divisor;
+		}
+	}
+
+	public static enum AveragingMode
+	{
+		/** mean of the power spectra of the N transforms in each display frame */
+		LINEAR,
+		/** exponential (video) average with a time constant of N transforms, carried over between display frames */
+		EXPONENTIAL,
+		/** maximum power per bin since the last reset */
+		MAX_HOLD,
+		/** minimum power per bin since the last reset */
+		MIN_HOLD
+	}
+
+	/**
+	 * Notified on the feeding thread whenever a display frame is ready.
+	 */
+	public interface ISpectrumListener
+	{
+		void spectrumReady(WelchEstimator source);
+	}
+
+	private final int iFFT_size;
+
+	private final IFFTEngine oEngine;
+
+	/**
+	 * shared, see FFTWindow.
+	 */
+	private final double[] adWindow;
+
+	/**
+	 * ring buffer of the most recent FFT_size samples.
+	 */
+	private final double[] adRingReal;
+
+	private final double[] adRingImag;
+
+	private int iRingIndex = 0;
+
+	/**
+	 * number of samples in the ring, up to FFT_size.
+	 */
+	private int iRingFill = 0;
+
+	/**
+	 * number of new samples since the last transform.
+	 */
+	private int iSamplesSinceTransform = 0;
+
+	/**
+	 * averaged power spectrum, in natural bin order.
+	 */
+	private final double[] adAccumulator;
+
+	/**
+	 * number of transforms in the current display frame.
+	 */
+	private int iTransformCount = 0;
+
+	/**
+	 * true once the accumulator holds valid data for the hold and exponential modes.
+	 */
+	private boolean bAccumulatorValid = false;
+
+	private Overlap eOverlap = Overlap.HALF;
+
+	private AveragingMode eAveragingMode = AveragingMode.LINEAR;
+
+	private int iTransformsPerFrame = 4;
+
+	/**
+	 * conversion from the power spectrum to dB, see setScaling().
+	 */
+	private double dPowerScale = 1.0;
+
+	private double dLostEnergy = 0;
+
+	private ISpectrumListener oListener;
+
+	private LogMode eLogMode = LogMode.MAGNITUDE;
+
+	public WelchEstimator(int FFT_size, boolean useBlackmanWindow, IFFTEngineFactory engineFactory)
+	{
+		this(FFT_size, FFTWindow.get(useBlackmanWindow ? FFTWindow.Type.BLACKMAN : FFTWindow.Type.RECTANGULAR,
+				FFT_size), engineFactory);
+	}
+
+	public WelchEstimator(int FFT_size, FFTWindow oWindow, IFFTEngineFactory engineFactory)
+	{
+		if (oWindow.getSize() != FFT_size)
+		{
+			throw new IllegalArgumentException("window size " + oWindow.getSize() + " differs from the FFT size " + FFT_size);
+		}
+		// we do our own windowing while copying out of the ring
+		this.oEngine = engineFactory.createEngine(FFT_size, false);
+		this.iFFT_size = FFT_size;
+		this.adWindow = oWindow.getCoefficients();
+		adRingReal = new double[FFT_size];
+		adRingImag = new double[FFT_size];
+		adAccumulator = new double[FFT_size];
+	}
+
+	public final int getFFT_size()
+	{
+		return iFFT_size;
+	}
+
+	public void setListener(ISpectrumListener oListener)
+	{
+		this.oListener = oListener;
+	}
+
+	public void setOverlap(Overlap eOverlap)
+	{
+		this.eOverlap = eOverlap;
+	}
+
+	public Overlap getOverlap()
+	{
+		return eOverlap;
+	}
+
+	/**
+	 * Changing the mode restarts the averaging.
+	 */
+	public void setAveragingMode(AveragingMode eAveragingMode)
+	{
+		if (this.eAveragingMode != eAveragingMode)
+		{
+			this.eAveragingMode = eAveragingMode;
+			resetAveraging();
+		}
+	}
+
+	public AveragingMode getAveragingMode()
+	{
+		return eAveragingMode;
+	}
+
+	/**
+	 * @param iTransformsPerFrame number of transforms per display frame, also the time-constant of the exponential
+	 *          average.
+	 */
+	public void setTransformsPerFrame(int iTransformsPerFrame)
+	{
+		if (iTransformsPerFrame < 1)
+		{
+			throw new IllegalArgumentException("transforms per frame must be at least 1, " + iTransformsPerFrame);
+		}
+		this.iTransformsPerFrame = iTransformsPerFrame;
+	}
+
+	public int getTransformsPerFrame()
+	{
+		return iTransformsPerFrame;
+	}
+
+	/**
+	 * Use the same scaling as IFFTEngine.calculate(), so that the output of getSpectrum() matches it.
+	 */
+	public void setScaling(double preFFTScalingFactor, double lostEnergy)
+	{
+		this.dPowerScale = preFFTScalingFactor * preFFTScalingFactor;
+		this.dLostEnergy = lostEnergy;
+	}
+
+	/**
+	 * Restart the averaging, and clear the hold values.
+	 */
+	public void resetAveraging()
+	{
+		iTransformCount = 0;
+		bAccumulatorValid = false;
+	}
+
+	/**
+	 * Discard the buffered samples, and restart the averaging.
+	 */
+	public void reset()
+	{
+		iRingIndex = 0;
+		iRingFill = 0;
+		iSamplesSinceTransform = 0;
+		resetAveraging();
+	}
+
+	/**
+	 * @param input an array containing real and imaginary value alternating (ie, [real] [imag] [real] [imag]...)
+	 */
+	public void process(short[] input)
+	{
+		if ((input.length % 2) == 1)
+		{
+			throw new IllegalArgumentException("the sample counts for the reals, differs from the counts for imaginaries");
+		}
+		final int hop = eOverlap.getHop(iFFT_size);
+		final int sampleCount = input.length / 2;
+		int i = 0;
+		while (i < sampleCount)
+		{
+			// copy as many samples as we can before the next transform is due
+			final int chunk = Math.min(sampleCount - i,
+					Math.max(hop - iSamplesSinceTransform, iFFT_size - iRingFill));
+			for (int end = i + chunk; i < end; i++)
+			{
+				adRingReal[iRingIndex] = input[2 * i];
+				adRingImag[iRingIndex] = input[2 * i + 1];
+				iRingIndex++;
+				if (iRingIndex == iFFT_size)
+				{
+					iRingIndex = 0;
+				}
+			}
+			iRingFill = Math.min(iFFT_size, iRingFill + chunk);
+			iSamplesSinceTransform += chunk;
+
+			if (iSamplesSinceTransform >= hop && iRingFill == iFFT_size)
+			{
+				iSamplesSinceTransform = 0;
+				transform();
+			}
+		}
+	}
+
+	/**
+	 * Window the contents of the ring, oldest sample first, into the FFT, and accumulate the power spectrum.
+	 */
+	private void transform()
+	{
+		final double[] re = oEngine.getRealBuffer();
+		final double[] im = oEngine.getImagBuffer();
+		final int firstLen = iFFT_size - iRingIndex;
+		for (int i = 0; i < firstLen; i++)
+		{
+			re[i] = adRingReal[iRingIndex + i] * adWindow[i];
+			im[i] = adRingImag[iRingIndex + i] * adWindow[i];
+		}
+		for (int i = firstLen, j = 0; i < iFFT_size; i++, j++)
+		{
+			re[i] = adRingReal[j] * adWindow[i];
+			im[i] = adRingImag[j] * adWindow[i];
+		}
+
+		oEngine.runFFT();
+
+		accumulate(re, im, oEngine.getOutputPermutation());
+
+		iTransformCount++;
+		if (iTransformCount >= iTransformsPerFrame)
+		{
+			if (oListener != null)
+			{
+				oListener.spectrumReady(this);
+			}
+			iTransformCount = 0;
+			if (eAveragingMode == AveragingMode.LINEAR)
+			{
+				bAccumulatorValid = false;
+			}
+		}
+	}
+
+	private void accumulate(double[] re, double[] im, int[] aiPerm)
+	{
+		final double[] acc = adAccumulator;
+		final int n = iFFT_size;
+		if (!bAccumulatorValid)
+		{
+			for (int k = 0; k < n; k++)
+			{
+				final int p = aiPerm[k];
+				acc[k] = re[p] * re[p] + im[p] * im[p];
+			}
+			bAccumulatorValid = true;
+			return;
+		}
+		switch (eAveragingMode)
+		{
+		case LINEAR:
+			for (int k = 0; k < n; k++)
+			{
+				final int p = aiPerm[k];
+				acc[k] += re[p] * re[p] + im[p] * im[p];
+			}
+			break;
+		case EXPONENTIAL:
+			final double alpha = 1.0 / iTransformsPerFrame;
+			for (int k = 0; k < n; k++)
+			{
+				final int p = aiPerm[k];
+				final double power = re[p] * re[p] + im[p] * im[p];
+				acc[k] += alpha * (power - acc[k]);
+			}
+			break;
+		case MAX_HOLD:
+			for (int k = 0; k < n; k++)
+			{
+				final int p = aiPerm[k];
+				acc[k] = Math.max(acc[k], re[p] * re[p] + im[p] * im[p]);
+			}
+			break;
+		case MIN_HOLD:
+			for (int k = 0; k < n; k++)
+			{
+				final int p = aiPerm[k];
+				acc[k] = Math.min(acc[k], re[p] * re[p] + im[p] * im[p]);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Convert the current averaged spectrum to dB, with DC in the centre. Normally called from the listener.
+	 *
+	 * @param output must be at least as long as the FFT size
+	 */
+	public void getSpectrum(float[] output)
+	{
+		double scale = dPowerScale;
+		if (eAveragingMode == AveragingMode.LINEAR)
+		{
+			// the accumulator holds the sum of the transforms
+			scale /= (iTransformCount == 0 ? iTransformsPerFrame : iTransformCount);
+		}
+		final boolean fast = eLogMode == LogMode.FAST_POWER;
+		final double dBFactor = fast ? 10.0 * Math.log10(2) : 10.0 / Math.log(10);
+		final int half = AbstractFFTEngine.firstNegativeBin(iFFT_size);
+		for (int k = 0; k < iFFT_size; k++)
+		{
+			double power = adAccumulator[k] * scale;
+			if (power <= 0) // avoid zero, so the log won't be NaN
+			{
+				power = Double.MIN_VALUE;
+			}
+			final int j = k < half ? k + (iFFT_size - half) : k - half;
+			output[j] = (float) ((fast ? FastLog.log2(power) : Math.log(power)) * dBFactor + dLostEnergy);
+		}
+	}
+
+	/**
+	 * The accumulator always holds power, so MAGNITUDE and POWER are the same, and FAST_POWER uses FastLog for the
+	 * conversion to dB.
+	 */
+	public void setLogMode(LogMode eLogMode)
+	{
+		if (eLogMode == null)
+		{
+			throw new IllegalArgumentException("log mode may not be null");
+		}
+		this.eLogMode = eLogMode;
+	}
+
+	public LogMode getLogMode()
+	{
+		return eLogMode;
+	}
+}
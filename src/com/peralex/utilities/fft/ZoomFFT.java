@@ -0,0 +1,257 @@
+package com.peralex.utilities.fft;
+
+/**
+ * A zoom-FFT: the input is mixed down so that the centre of the band of interest is at DC, low-pass filtered and
+ * decimated, and only then transformed. This gives D times the frequency resolution of a normal FFT of the same size
+ * (D being the decimation factor), inside a band 1/D as wide, for little more than the cost of the filter.
+ *
+ * Frequencies are normalised to the input sample rate, i.e. -0.5 to 0.5.
+ *
+ * The low-pass filter is a Blackman-windowed sinc with it's cutoff at the edge of the decimated band, so the outer few
+ * percent of the band roll off, and a little energy from just outside the band aliases into it.
+ *
+ * Not thread-safe, samples must be fed in from one thread.
+ */
+public class ZoomFFT
+{
+	/**
+	 * Notified on the feeding thread whenever a spectrum is ready.
+	 */
+	public interface ISpectrumListener
+	{
+		void spectrumReady(ZoomFFT source);
+	}
+
+	/**
+	 * the length of the filter, in multiples of the decimation factor. More taps give a sharper cutoff.
+	 */
+	private static final int TAPS_PER_DECIMATION = 16;
+
+	/**
+	 * how often the oscillator is re-normalised, to stop rounding errors from changing it's amplitude.
+	 */
+	private static final int OSCILLATOR_NORMALISE_INTERVAL = 1024;
+
+	private final int iFFT_size;
+
+	private final int iDecimation;
+
+	private final double dCentreFrequency;
+
+	private final IFFTEngine oEngine;
+
+	private final double[] adFilter;
+
+	/**
+	 * the most recent filter-length mixed samples, stored twice so that they are always contiguous, see process().
+	 */
+	private final double[] adHistoryReal;
+
+	private final double[] adHistoryImag;
+
+	private int iHistoryIndex = 0;
+
+	private int iDecimationCounter = 0;
+
+	private int iFrameIndex = 0;
+
+	/**
+	 * the oscillator, and the rotation it makes per sample.
+	 */
+	private double dOscillatorReal = 1;
+
+	private double dOscillatorImag = 0;
+
+	private final double dStepReal;
+
+	private final double dStepImag;
+
+	private int iSamplesSinceNormalise = 0;
+
+	private double dPreFFTScalingFactor = 1.0;
+
+	private double dPostFFTScalingFactor = 1.0;
+
+	private double dLostEnergy = 0;
+
+	private final float[] afSpectrum;
+
+	private ISpectrumListener oListener;
+
+	/**
+	 * @param FFT_size number of decimated samples per transform
+	 * @param iDecimation the zoom factor, at least 1
+	 * @param dCentreFrequency the centre of the band of interest, normalised to the input sample rate
+	 */
+	public ZoomFFT(int FFT_size, int iDecimation, double dCentreFrequency, boolean useBlackmanWindow,
+			IFFTEngineFactory engineFactory)
+	{
+		if (iDecimation < 1)
+		{
+			throw new IllegalArgumentException("decimation must be at least 1, " + iDecimation);
+		}
+		if (dCentreFrequency < -0.5 || dCentreFrequency > 0.5)
+		{
+			throw new IllegalArgumentException("centre frequency must be between -0.5 and 0.5, " + dCentreFrequency);
+		}
+		this.oEngine = engineFactory.createEngine(FFT_size, useBlackmanWindow);
+		this.iFFT_size = FFT_size;
+		this.iDecimation = iDecimation;
+		this.dCentreFrequency = dCentreFrequency;
+		this.adFilter = lowPassFilter(iDecimation);
+		this.adHistoryReal = new double[2 * adFilter.length];
+		this.adHistoryImag = new double[2 * adFilter.length];
+		this.afSpectrum = new float[FFT_size];
+
+		// mix the centre frequency down to DC
+		final double theta = -2 * Math.PI * dCentreFrequency;
+		this.dStepReal = Math.cos(theta);
+		this.dStepImag = Math.sin(theta);
+	}
+
+	/**
+	 * Blackman-windowed sinc, with unity gain at DC, and the cutoff at the Nyquist frequency of the decimated signal.
+	 */
+	private static double[] lowPassFilter(int iDecimation)
+	{
+		if (iDecimation == 1)
+		{
+			return new double[] { 1.0 };
+		}
+		return FIRFilters.lowPass(TAPS_PER_DECIMATION * iDecimation, 0.5 / iDecimation);
+	}
+
+	public final int getFFT_size()
+	{
+		return iFFT_size;
+	}
+
+	public int getDecimation()
+	{
+		return iDecimation;
+	}
+
+	/**
+	 * @return the centre of the band, normalised to the input sample rate
+	 */
+	public double getCentreFrequency()
+	{
+		return dCentreFrequency;
+	}
+
+	/**
+	 * @return the width of the band, normalised to the input sample rate
+	 */
+	public double getBandwidth()
+	{
+		return 1.0 / iDecimation;
+	}
+
+	public void setListener(ISpectrumListener oListener)
+	{
+		this.oListener = oListener;
+	}
+
+	/**
+	 * Same parameters as IFFTEngine.calculate(). Because the filter has unity gain, a tone has the same level as it
+	 * would have in a normal FFT of the same size.
+	 */
+	public void setScaling(double preFFTScalingFactor, double postFFTScalingFactor, double lostEnergy)
+	{
+		this.dPreFFTScalingFactor = preFFTScalingFactor;
+		this.dPostFFTScalingFactor = postFFTScalingFactor;
+		this.dLostEnergy = lostEnergy;
+	}
+
+	public void setLogMode(LogMode eLogMode)
+	{
+		oEngine.setLogMode(eLogMode);
+	}
+
+	/**
+	 * @param input an array containing real and imaginary value alternating (ie, [real] [imag] [real] [imag]...)
+	 */
+	public void process(short[] input)
+	{
+		if ((input.length % 2) == 1)
+		{
+			throw new IllegalArgumentException("the sample counts for the reals, differs from the counts for imaginaries");
+		}
+		final int filterLength = adFilter.length;
+		final double[] re = oEngine.getRealBuffer();
+		final double[] im = oEngine.getImagBuffer();
+		for (int i = 0; i < input.length; i += 2)
+		{
+			// mix
+			final double xr = input[i];
+			final double xi = input[i + 1];
+			final double mr = xr * dOscillatorReal - xi * dOscillatorImag;
+			final double mi = xr * dOscillatorImag + xi * dOscillatorReal;
+			rotateOscillator();
+
+			// the last filterLength samples are always at [iHistoryIndex+1, iHistoryIndex+filterLength]
+			adHistoryReal[iHistoryIndex] = adHistoryReal[iHistoryIndex + filterLength] = mr;
+			adHistoryImag[iHistoryIndex] = adHistoryImag[iHistoryIndex + filterLength] = mi;
+			iHistoryIndex++;
+			if (iHistoryIndex == filterLength)
+			{
+				iHistoryIndex = 0;
+			}
+
+			// filter, but only the samples that survive the decimation
+			iDecimationCounter++;
+			if (iDecimationCounter < iDecimation)
+			{
+				continue;
+			}
+			iDecimationCounter = 0;
+			double yr = 0;
+			double yi = 0;
+			for (int k = 0, h = iHistoryIndex; k < filterLength; k++, h++)
+			{
+				yr += adFilter[k] * adHistoryReal[h];
+				yi += adFilter[k] * adHistoryImag[h];
+			}
+			re[iFrameIndex] = yr;
+			im[iFrameIndex] = yi;
+			iFrameIndex++;
+
+			if (iFrameIndex == iFFT_size)
+			{
+				iFrameIndex = 0;
+				oEngine.calculate(dPreFFTScalingFactor, dPostFFTScalingFactor, dLostEnergy, afSpectrum);
+				if (oListener != null)
+				{
+					oListener.spectrumReady(this);
+				}
+			}
+		}
+	}
+
+	private void rotateOscillator()
+	{
+		final double r = dOscillatorReal * dStepReal - dOscillatorImag * dStepImag;
+		final double i = dOscillatorReal * dStepImag + dOscillatorImag * dStepReal;
+		dOscillatorReal = r;
+		dOscillatorImag = i;
+		iSamplesSinceNormalise++;
+		if (iSamplesSinceNormalise == OSCILLATOR_NORMALISE_INTERVAL)
+		{
+			iSamplesSinceNormalise = 0;
+			final double magnitude = Math.sqrt(r * r + i * i);
+			dOscillatorReal /= magnitude;
+			dOscillatorImag /= magnitude;
+		}
+	}
+
+	/**
+	 * Copy the most recent spectrum, with DC (i.e. the centre frequency) in the centre. Normally called from the
+	 * listener.
+	 *
+	 * @param output must be at least as long as the FFT size
+	 */
+	public void getSpectrum(float[] output)
+	{
+		System.arraycopy(afSpectrum, 0, output, 0, iFFT_size);
+	}
+}
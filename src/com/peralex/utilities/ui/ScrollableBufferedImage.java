@@ -7,6 +7,7 @@ import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.image.ImageObserver;
 
 /**
@@ -28,6 +29,19 @@ import java.awt.image.ImageObserver;
  */
 public class ScrollableBufferedImage
 {
+	/**
+	 * Writes a line of pixels straight into the image, see writeRGB_Bottom().
+	 */
+	public interface IRowWriter
+	{
+		/**
+		 * @param aiPixels the pixels of the image, as ARGB values
+		 * @param offset the index of the first pixel of the line
+		 * @param width the number of pixels in the line
+		 */
+		void writeRow(int[] aiPixels, int offset, int width);
+	}
+
 	private BufferedImage oImage;
 
 	/** this is the index of the next line we are going to draw to */
@@ -214,6 +228,28 @@ public class ScrollableBufferedImage
 		}
   }
         
+	/**
+	 * Let the writer fill in the line at the bottom of the image, directly in the image's pixel array, which saves
+	 * building the line in an array of it's own and then copying it in.
+	 * 
+	 * Note: this makes Java2D stop caching the image in video memory, which makes no difference for an image that
+	 * changes every frame, like a waterfall.
+	 */
+	public synchronized void writeRGB_Bottom(IRowWriter oWriter)
+	{
+		if (oImage==null)
+		{
+			return;
+		}
+		int y = iImageIndex - 1;
+		if (y<0) {
+			y += oImage.getHeight();
+		}
+		// TYPE_INT_ARGB images are backed by a single int array, with one pixel per element
+		final int[] aiPixels = ((DataBufferInt) oImage.getRaster().getDataBuffer()).getData();
+		oWriter.writeRow(aiPixels, y * oImage.getWidth(), oImage.getWidth());
+	}
+
 	/**
 	 * This method will cause the display to clear.
 	 */
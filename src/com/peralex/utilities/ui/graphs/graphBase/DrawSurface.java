@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
@@ -79,6 +80,11 @@ public abstract class DrawSurface extends JComponent implements ILocaleListener
   
   public static Cursor createCrossHairCursor(Color color)
   {
+		// custom cursors are not supported without a display, e.g. when the graphs are used on a server
+		if (GraphicsEnvironment.isHeadless())
+		{
+			return Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR);
+		}
 		BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
 		Graphics2D graphics = (Graphics2D) image.getGraphics();
 		graphics.setColor(color);
@@ -1,6 +1,12 @@
 package com.peralex.utilities.ui.graphs.lineGraph;
 
+import com.peralex.utilities.ui.graphs.graphBase.PixelUnitConverter;
+
 /**
+ * The bulk methods at the bottom convert or scan a range of points in one call, so that drawing does not make a
+ * virtual call per point. Subclasses override them with loops over their own storage. A subclass that overrides
+ * getXValue/getYValue must override the matching bulk methods as well.
+ * 
  * @author Noel Grandin
  */
 public abstract class AbstractLineData {
@@ -47,4 +53,53 @@ public abstract class AbstractLineData {
    */
   public abstract int binarySearchXValues(double fKey);
 
+  /**
+   * Convert the x values of points [iStart, iEnd) to pixels, and store them in aiPixels from iOffset onwards.
+   */
+  public void getXPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int[] aiPixels, int iOffset)
+  {
+    for (int i=iStart; i<iEnd; i++)
+    {
+      aiPixels[iOffset++] = oUnitToPixel.compute(getXValueDouble(i));
+    }
+  }
+  
+  /**
+   * Convert the y values of points [iStart, iEnd) to pixels counted from the top of a component of height iHeight,
+   * i.e. iHeight - oUnitToPixel.compute(y), and store them in aiPixels from iOffset onwards.
+   */
+  public void getYPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int iHeight, int[] aiPixels, int iOffset)
+  {
+    for (int i=iStart; i<iEnd; i++)
+    {
+      aiPixels[iOffset++] = iHeight - oUnitToPixel.compute(getYValueDouble(i));
+    }
+  }
+  
+  /**
+   * @return the smallest y value of points [iStart, iEnd), or Double.MAX_VALUE if the range is empty
+   */
+  public double getMinimumYValue(int iStart, int iEnd)
+  {
+    double min = Double.MAX_VALUE;
+    for (int i=iStart; i<iEnd; i++)
+    {
+      min = Math.min(min, getYValueDouble(i));
+    }
+    return min;
+  }
+  
+  /**
+   * @return the largest y value of points [iStart, iEnd), or -Double.MAX_VALUE if the range is empty
+   */
+  public double getMaximumYValue(int iStart, int iEnd)
+  {
+    double max = -Double.MAX_VALUE;
+    for (int i=iStart; i<iEnd; i++)
+    {
+      max = Math.max(max, getYValueDouble(i));
+    }
+    return max;
+  }
+
 }
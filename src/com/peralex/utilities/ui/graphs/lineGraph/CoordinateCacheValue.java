@@ -29,6 +29,8 @@ final class CoordinateCacheValue {
 						final PixelUnitConverter.UnitToPixel xUnitToPixel, 
 						final PixelUnitConverter.UnitToPixel yUnitToPixel, 
 						AbstractLineData oLineData,
+						MinMaxPyramid oPyramid,
+						boolean bLargestTriangle,
 						double fMinX,
 						double fMaxX,
 						boolean bCalculateX,
@@ -42,8 +44,19 @@ final class CoordinateCacheValue {
 		final int endIndex = Math.min(oLineData.getNumberOfPoints(), Math.abs(oLineData.binarySearchXValues(fMaxX)) + 2);
 		final int size = endIndex-startIndex;
 		final int pointsPerPixel = Math.max(1, size / iWidth);
-		if (pointsPerPixel<=2) {
+		final int level = oPyramid==null ? -1 : oPyramid.getLevel(pointsPerPixel);
+		if (bLargestTriangle) {
+			// aim for about 2 points per pixel, the same density as the min/max output
+			final int threshold = iWidth * 2;
+			if (threshold>2 && size>threshold) {
+				computeLargestTriangle(iHeight, xUnitToPixel, yUnitToPixel, oLineData, startIndex, endIndex, threshold);
+			} else {
+				computeNormal(iHeight, xUnitToPixel, yUnitToPixel, oLineData, startIndex, endIndex, size, true, true);
+			}
+		} else if (pointsPerPixel<=2) {
 			computeNormal(iHeight, xUnitToPixel, yUnitToPixel, oLineData, startIndex, endIndex, size, bCalculateX, bCalculateY);
+		} else if (level!=-1 && size>0) {
+			computeFromPyramid(iHeight, xUnitToPixel, yUnitToPixel, oLineData, oPyramid, level, startIndex, endIndex);
 		} else {
 			computeZoomedOut(iHeight, xUnitToPixel, yUnitToPixel, oLineData, startIndex, endIndex, size, pointsPerPixel);
 		}
@@ -60,12 +73,8 @@ final class CoordinateCacheValue {
 			{
 				aiXCoordinates = new int[size];
 			}
-			cnt = 0;
-			for (int a=startIndex; a<endIndex; a++)
-			{
-				aiXCoordinates[cnt] = xUnitToPixel.compute(oLineData.getXValueDouble(a));
-				cnt++;
-			}
+			oLineData.getXPixels(startIndex, endIndex, xUnitToPixel, aiXCoordinates, 0);
+			cnt = size;
 		}
 		
 		if (bCalculateY)
@@ -75,12 +84,8 @@ final class CoordinateCacheValue {
 				aiYCoordinates = new int[size];
 			}
 			
-			cnt = 0;
-			for (int a=startIndex; a<endIndex; a++)
-			{
-				aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(oLineData.getYValueDouble(a));
-				cnt++;
-			}
+			oLineData.getYPixels(startIndex, endIndex, yUnitToPixel, iHeight, aiYCoordinates, 0);
+			cnt = size;
 		}
 	}
 	
@@ -139,6 +144,150 @@ final class CoordinateCacheValue {
 		cnt++;
 	}
 
+	/**
+	 * The zoomed-out case, using a level of the pyramid whose buckets are no wider than a pixel, so that the work
+	 * depends on the width of the graph, not on the number of points.
+	 * A bucket that straddles a pixel boundary is drawn on the pixel of it's first point.
+	 */
+	private void computeFromPyramid(final int iHeight, final PixelUnitConverter.UnitToPixel xUnitToPixel, final PixelUnitConverter.UnitToPixel yUnitToPixel, AbstractLineData oLineData, MinMaxPyramid oPyramid, final int iLevel, final int startIndex, final int endIndex)
+	{
+		final float[] afMinimum = oPyramid.getMinimums(iLevel);
+		final float[] afMaximum = oPyramid.getMaximums(iLevel);
+		final int firstBucket = startIndex >> iLevel;
+		final int endBucket = ((endIndex - 1) >> iLevel) + 1;
+		final int numCoords = (endBucket - firstBucket) * 2;
+
+		// only grow the arrays, because the number of buckets changes every time the graph is panned
+		if (aiXCoordinates==null || aiXCoordinates.length<numCoords)
+		{
+			aiXCoordinates = new int[numCoords];
+		}
+		if (aiYCoordinates==null || aiYCoordinates.length<numCoords)
+		{
+			aiYCoordinates = new int[numCoords];
+		}
+
+		cnt = 0;
+		int x = xUnitToPixel.compute(oLineData.getXValueDouble(firstBucket << iLevel));
+		float maxY = afMaximum[firstBucket];
+		float minY = afMinimum[firstBucket];
+		for (int b=firstBucket+1; b<endBucket; b++)
+		{
+			final int newX = xUnitToPixel.compute(oLineData.getXValueDouble(b << iLevel));
+			if (x!=newX)
+			{
+				aiXCoordinates[cnt] = x;
+				aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(maxY);
+				cnt++;
+				aiXCoordinates[cnt] = x;
+				aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(minY);
+				cnt++;
+				x = newX;
+				maxY = afMaximum[b];
+				minY = afMinimum[b];
+			}
+			else
+			{
+				maxY = Math.max(maxY, afMaximum[b]);
+				minY = Math.min(minY, afMinimum[b]);
+			}
+		}
+		aiXCoordinates[cnt] = x;
+		aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(maxY);
+		cnt++;
+		aiXCoordinates[cnt] = x;
+		aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(minY);
+		cnt++;
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets downsampling. The first and last points are kept, the rest are split into
+	 * (threshold - 2) buckets, and from each bucket the point that forms the largest triangle with the point kept from
+	 * the previous bucket and the average of the next bucket is kept.
+	 * This keeps the shape of slow-varying lines better than min/max decimation, with half as many points.
+	 * 
+	 * The areas are compared in data units, which only scales them by a constant factor relative to pixels.
+	 */
+	private void computeLargestTriangle(final int iHeight, final PixelUnitConverter.UnitToPixel xUnitToPixel, final PixelUnitConverter.UnitToPixel yUnitToPixel, AbstractLineData oLineData, final int startIndex, final int endIndex, final int threshold)
+	{
+		// only grow the arrays, because the number of visible points changes every time the graph is panned
+		if (aiXCoordinates==null || aiXCoordinates.length<threshold)
+		{
+			aiXCoordinates = new int[threshold];
+		}
+		if (aiYCoordinates==null || aiYCoordinates.length<threshold)
+		{
+			aiYCoordinates = new int[threshold];
+		}
+		
+		// the bucket size, not counting the first and last points
+		final double every = (double) (endIndex - startIndex - 2) / (threshold - 2);
+		
+		cnt = 0;
+		double ax = oLineData.getXValueDouble(startIndex);
+		double ay = oLineData.getYValueDouble(startIndex);
+		aiXCoordinates[cnt] = xUnitToPixel.compute(ax);
+		aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(ay);
+		cnt++;
+		
+		int bucketStart = startIndex + 1;
+		for (int i=0; i<threshold-2; i++)
+		{
+			final int bucketEnd = startIndex + 1 + (int) ((i + 1) * every);
+			
+			// average of the next bucket, which is just the last point for the last bucket
+			final int nextEnd = Math.min(endIndex, startIndex + 1 + (int) ((i + 2) * every));
+			double avgX = 0;
+			double avgY = 0;
+			for (int j=bucketEnd; j<nextEnd; j++)
+			{
+				avgX += oLineData.getXValueDouble(j);
+				avgY += oLineData.getYValueDouble(j);
+			}
+			final int nextSize = nextEnd - bucketEnd;
+			if (nextSize>0)
+			{
+				avgX /= nextSize;
+				avgY /= nextSize;
+			}
+			else
+			{
+				avgX = oLineData.getXValueDouble(endIndex - 1);
+				avgY = oLineData.getYValueDouble(endIndex - 1);
+			}
+			
+			// the point in this bucket with the largest triangle, the 1/2 factor is left out
+			double maxArea = -1;
+			double maxX = 0;
+			double maxY = 0;
+			for (int j=bucketStart; j<bucketEnd; j++)
+			{
+				final double x = oLineData.getXValueDouble(j);
+				final double y = oLineData.getYValueDouble(j);
+				final double area = Math.abs((ax - avgX) * (y - ay) - (ax - x) * (avgY - ay));
+				if (area>maxArea)
+				{
+					maxArea = area;
+					maxX = x;
+					maxY = y;
+				}
+			}
+			if (maxArea>=0)
+			{
+				ax = maxX;
+				ay = maxY;
+				aiXCoordinates[cnt] = xUnitToPixel.compute(ax);
+				aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(ay);
+				cnt++;
+			}
+			bucketStart = bucketEnd;
+		}
+		
+		aiXCoordinates[cnt] = xUnitToPixel.compute(oLineData.getXValueDouble(endIndex - 1));
+		aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(oLineData.getYValueDouble(endIndex - 1));
+		cnt++;
+	}
+	
 	void paint(Graphics2D g, Color oLineColor, Stroke oStroke)
 	{
 		if (oStroke!=null)
@@ -153,7 +302,7 @@ final class CoordinateCacheValue {
 		} else {
 			// only draw up till the end of the clip region
 			final int endX = clip.x + clip.width;
-			int clippedCnt = Math.abs(Arrays.binarySearch(aiXCoordinates, endX));
+			int clippedCnt = Math.abs(Arrays.binarySearch(aiXCoordinates, 0, cnt, endX));
 			// adjust clippedCnt for high zoom factors where the end-point of a line-segment may line off screen
 			clippedCnt++;
 			// make sure we don't run off the end of the array
@@ -162,4 +311,4 @@ final class CoordinateCacheValue {
 		}
 	}
 	
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,228 @@
+package com.peralex.utilities.ui.graphs.lineGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+import com.peralex.utilities.ui.graphs.graphBase.PixelUnitConverter;
+
+/**
+ * Line data that reads its X and Y values from FloatBuffers instead of arrays, so that the values can live in direct
+ * or memory-mapped storage. A recording that is mapped this way is not loaded onto the heap, so it can be bigger than
+ * the heap, and it can be drawn as soon as it has been mapped.
+ * 
+ * Only the absolute get methods of the buffers are used, so the data can be drawn while other threads read the same
+ * buffers. Each column is limited to Integer.MAX_VALUE bytes, because that is the largest buffer that can be mapped.
+ */
+public class FloatBufferLineData extends AbstractLineData
+{
+	private final FloatBuffer oXValues;
+
+	private final FloatBuffer oYValues;
+
+	/**
+	 * The remaining values of the buffers are used, i.e. from their position up to their limit. Changing the position
+	 * or limit of the buffers afterwards has no effect.
+	 * 
+	 * @param oXValues must be sorted
+	 */
+	public FloatBufferLineData(FloatBuffer oXValues, FloatBuffer oYValues)
+	{
+		if (oXValues == null)
+		{
+			throw new IllegalArgumentException("oXValues may not be null");
+		}
+		if (oYValues == null)
+		{
+			throw new IllegalArgumentException("oYValues may not be null");
+		}
+		if (oYValues.remaining() != oXValues.remaining())
+		{
+			throw new IllegalArgumentException("oYValues length must be same as oXValues length, " + oYValues.remaining()
+					+ "!=" + oXValues.remaining());
+		}
+		this.oXValues = oXValues.slice();
+		this.oYValues = oYValues.slice();
+	}
+
+	/**
+	 * Maps the X and Y columns of a file read-only. The file can be closed by the caller as soon as this returns, the
+	 * mappings stay valid until they are garbage collected.
+	 * 
+	 * @param lXPosition the offset in bytes of the first X value
+	 * @param lYPosition the offset in bytes of the first Y value
+	 */
+	public static FloatBufferLineData map(File file, long lXPosition, long lYPosition, int iNumberOfPoints,
+			ByteOrder eByteOrder) throws IOException
+	{
+		final RandomAccessFile oFile = new RandomAccessFile(file, "r");
+		try
+		{
+			final FileChannel oChannel = oFile.getChannel();
+			return new FloatBufferLineData(mapColumn(oChannel, lXPosition, iNumberOfPoints, eByteOrder), mapColumn(oChannel,
+					lYPosition, iNumberOfPoints, eByteOrder));
+		}
+		finally
+		{
+			oFile.close();
+		}
+	}
+
+	private static FloatBuffer mapColumn(FileChannel oChannel, long lPosition, int iNumberOfPoints, ByteOrder eByteOrder)
+			throws IOException
+	{
+		final long size = (long) iNumberOfPoints * 4;
+		if (size > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("column too large to map, " + iNumberOfPoints + " points");
+		}
+		return oChannel.map(FileChannel.MapMode.READ_ONLY, lPosition, size).order(eByteOrder).asFloatBuffer();
+	}
+
+	/**
+	 * This will return the number of points in the line.
+	 */
+	@Override
+	public int getNumberOfPoints()
+	{
+		return oXValues.capacity();
+	}
+
+	@Override
+	public float getXValue(int idx)
+	{
+		return oXValues.get(idx);
+	}
+
+	@Override
+	public float getYValue(int idx)
+	{
+		return oYValues.get(idx);
+	}
+
+	@Override
+	public double getXValueDouble(int idx)
+	{
+		return oXValues.get(idx);
+	}
+
+	@Override
+	public double getYValueDouble(int idx)
+	{
+		return oYValues.get(idx);
+	}
+
+	@Override
+	public void getXPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int[] aiPixels, int iOffset)
+	{
+		final FloatBuffer values = oXValues;
+		for (int i = iStart; i < iEnd; i++)
+		{
+			aiPixels[iOffset++] = oUnitToPixel.compute(values.get(i));
+		}
+	}
+
+	@Override
+	public void getYPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int iHeight, int[] aiPixels,
+			int iOffset)
+	{
+		final FloatBuffer values = oYValues;
+		for (int i = iStart; i < iEnd; i++)
+		{
+			aiPixels[iOffset++] = iHeight - oUnitToPixel.compute(values.get(i));
+		}
+	}
+
+	@Override
+	public double getMinimumYValue(int iStart, int iEnd)
+	{
+		if (iStart >= iEnd)
+		{
+			return Double.MAX_VALUE;
+		}
+		final FloatBuffer values = oYValues;
+		float min = values.get(iStart);
+		for (int i = iStart + 1; i < iEnd; i++)
+		{
+			min = Math.min(min, values.get(i));
+		}
+		return min;
+	}
+
+	@Override
+	public double getMaximumYValue(int iStart, int iEnd)
+	{
+		if (iStart >= iEnd)
+		{
+			return -Double.MAX_VALUE;
+		}
+		final FloatBuffer values = oYValues;
+		float max = values.get(iStart);
+		for (int i = iStart + 1; i < iEnd; i++)
+		{
+			max = Math.max(max, values.get(i));
+		}
+		return max;
+	}
+
+	/**
+	 * Read-only views of the values.
+	 */
+	public FloatBuffer getXValues()
+	{
+		return oXValues.asReadOnlyBuffer();
+	}
+
+	public FloatBuffer getYValues()
+	{
+		return oYValues.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Do a binary search on the x-values and return the index in the array of values that is closed to the key value.
+	 * This is the same search as Arrays.binarySearch(float[], float), done on the buffer, so that only the pages that
+	 * it touches are read in.
+	 */
+	@Override
+	public int binarySearchXValues(double fKey)
+	{
+		final float key = (float) fKey;
+		int low = 0;
+		int high = oXValues.capacity() - 1;
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final float midVal = oXValues.get(mid);
+			if (midVal < key)
+			{
+				low = mid + 1;
+			}
+			else if (midVal > key)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				// same handling of -0.0 and NaN as Arrays.binarySearch
+				final int midBits = Float.floatToIntBits(midVal);
+				final int keyBits = Float.floatToIntBits(key);
+				if (midBits == keyBits)
+				{
+					return mid;
+				}
+				else if (midBits < keyBits)
+				{
+					low = mid + 1;
+				}
+				else
+				{
+					high = mid - 1;
+				}
+			}
+		}
+		return -(low + 1);
+	}
+}
@@ -1,5 +1,7 @@
 package com.peralex.utilities.ui.graphs.lineGraph;
 
+import com.peralex.utilities.ui.graphs.graphBase.PixelUnitConverter;
+
 /**
  * cLineData that generates the X values on the fly, saving some memory
  * 
@@ -49,6 +51,21 @@ public class GeneratedLineData extends LineDataY {
   public double getXValueDouble(int idx) {
     return this.startX + (idx * rangeX / cntX); 
   }
+	
+	/**
+	 * the x values are generated in the loop, with the same arithmetic as getXValueDouble()
+	 */
+	@Override
+	public void getXPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int[] aiPixels, int iOffset)
+	{
+		final double start = this.startX;
+		final double range = this.rangeX;
+		final int cnt = this.cntX;
+		for (int i=iStart; i<iEnd; i++)
+		{
+			aiPixels[iOffset++] = oUnitToPixel.compute(start + (i * range / cnt));
+		}
+	}
   
   /**
    * Do a binary search on the x-values and return the 
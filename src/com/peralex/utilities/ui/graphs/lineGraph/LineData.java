@@ -2,6 +2,8 @@ package com.peralex.utilities.ui.graphs.lineGraph;
 
 import java.util.Arrays;
 
+import com.peralex.utilities.ui.graphs.graphBase.PixelUnitConverter;
+
 /**
  * 
  * @author Andre
@@ -87,6 +89,16 @@ public class LineData extends LineDataY
 		return this.afXValues[idx];
 	}
 
+	@Override
+	public void getXPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int[] aiPixels, int iOffset)
+	{
+		final float[] values = this.afXValues;
+		for (int i = iStart; i < iEnd; i++)
+		{
+			aiPixels[iOffset++] = oUnitToPixel.compute(values[i]);
+		}
+	}
+
 	/**
 	 * Do a binary search on the x-values and return the index in the array of values that is closed to the key value.
 	 */
@@ -2,6 +2,8 @@ package com.peralex.utilities.ui.graphs.lineGraph;
 
 import java.util.Arrays;
 
+import com.peralex.utilities.ui.graphs.graphBase.PixelUnitConverter;
+
 /**
  * The line graph works with float values - this acts as a wrapper around double values 
  * so that we can pass double arrays into the graph for drawing.
@@ -94,5 +96,49 @@ public class LineDataDouble extends AbstractLineData
   	return Arrays.binarySearch(this.adXValues, fKey);  	
   }
   
+	@Override
+	public void getXPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int[] aiPixels, int iOffset)
+	{
+		final double[] values = this.adXValues;
+		for (int i=iStart; i<iEnd; i++)
+		{
+			aiPixels[iOffset++] = oUnitToPixel.compute(values[i]);
+		}
+	}
+	
+	@Override
+	public void getYPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int iHeight, int[] aiPixels, int iOffset)
+	{
+		final double[] values = this.adYValues;
+		for (int i=iStart; i<iEnd; i++)
+		{
+			aiPixels[iOffset++] = iHeight - oUnitToPixel.compute(values[i]);
+		}
+	}
+	
+	@Override
+	public double getMinimumYValue(int iStart, int iEnd)
+	{
+		final double[] values = this.adYValues;
+		double min = Double.MAX_VALUE;
+		for (int i=iStart; i<iEnd; i++)
+		{
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+	
+	@Override
+	public double getMaximumYValue(int iStart, int iEnd)
+	{
+		final double[] values = this.adYValues;
+		double max = -Double.MAX_VALUE;
+		for (int i=iStart; i<iEnd; i++)
+		{
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+  
 
 }
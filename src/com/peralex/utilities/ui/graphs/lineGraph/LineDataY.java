@@ -1,5 +1,7 @@
 package com.peralex.utilities.ui.graphs.lineGraph;
 
+import com.peralex.utilities.ui.graphs.graphBase.PixelUnitConverter;
+
 /**
  * Acts as a base class for LineData and GeneratedLineData
  * 
@@ -53,6 +55,48 @@ abstract class LineDataY extends AbstractLineData {
 		return afYValues[idx];
 	}
 	
+	@Override
+	public void getYPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int iHeight, int[] aiPixels, int iOffset)
+	{
+		final float[] values = afYValues;
+		for (int i=iStart; i<iEnd; i++)
+		{
+			aiPixels[iOffset++] = iHeight - oUnitToPixel.compute(values[i]);
+		}
+	}
+	
+	@Override
+	public double getMinimumYValue(int iStart, int iEnd)
+	{
+		if (iStart>=iEnd)
+		{
+			return Double.MAX_VALUE;
+		}
+		final float[] values = afYValues;
+		float min = values[iStart];
+		for (int i=iStart+1; i<iEnd; i++)
+		{
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+	
+	@Override
+	public double getMaximumYValue(int iStart, int iEnd)
+	{
+		if (iStart>=iEnd)
+		{
+			return -Double.MAX_VALUE;
+		}
+		final float[] values = afYValues;
+		float max = values[iStart];
+		for (int i=iStart+1; i<iEnd; i++)
+		{
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+	
   /**
    * Setter for property afYValues.
    */
@@ -0,0 +1,160 @@
+package com.peralex.utilities.ui.graphs.lineGraph;
+
+/**
+ * A level-of-detail pyramid of the Y values of a line. Level k holds the minimum and maximum of each bucket of 2^k
+ * consecutive points, so each level has half as many buckets as the one below it.
+ *
+ * When a graph is zoomed out so far that many points fall on each pixel, it draws from the highest level whose buckets
+ * are no wider than a pixel, so the cost of drawing depends on the width of the graph rather than on the number of
+ * points. The lowest level has buckets of 4 points, so the whole pyramid takes about as much memory as the Y values.
+ *
+ * The pyramid is a snapshot, it has to be re-built when the Y values change. The X values must be sorted.
+ */
+public final class MinMaxPyramid
+{
+	/**
+	 * the level with the smallest buckets, 2^LOWEST_LEVEL points.
+	 */
+	public static final int LOWEST_LEVEL = 2;
+
+	private final int iNumberOfPoints;
+
+	/**
+	 * indexed by [level - LOWEST_LEVEL][bucket]
+	 */
+	private final float[][] afMinimum;
+
+	private final float[][] afMaximum;
+
+	public MinMaxPyramid(AbstractLineData oLineData)
+	{
+		iNumberOfPoints = oLineData.getNumberOfPoints();
+
+		int levels = 1;
+		for (int buckets = bucketCount(iNumberOfPoints, LOWEST_LEVEL); buckets > 1; buckets = (buckets + 1) / 2)
+		{
+			levels++;
+		}
+		afMinimum = new float[levels][];
+		afMaximum = new float[levels][];
+
+		final int bucketSize = 1 << LOWEST_LEVEL;
+		final int lowestBuckets = bucketCount(iNumberOfPoints, LOWEST_LEVEL);
+		float[] minimum = new float[lowestBuckets];
+		float[] maximum = new float[lowestBuckets];
+		for (int b = 0; b < lowestBuckets; b++)
+		{
+			final int start = b * bucketSize;
+			final int end = Math.min(iNumberOfPoints, start + bucketSize);
+			float min = oLineData.getYValue(start);
+			float max = min;
+			for (int i = start + 1; i < end; i++)
+			{
+				final float y = oLineData.getYValue(i);
+				min = Math.min(min, y);
+				max = Math.max(max, y);
+			}
+			minimum[b] = min;
+			maximum[b] = max;
+		}
+		afMinimum[0] = minimum;
+		afMaximum[0] = maximum;
+
+		for (int level = 1; level < levels; level++)
+		{
+			final float[] lowerMinimum = minimum;
+			final float[] lowerMaximum = maximum;
+			final int buckets = (lowerMinimum.length + 1) / 2;
+			minimum = new float[buckets];
+			maximum = new float[buckets];
+			for (int b = 0; b < buckets; b++)
+			{
+				final int lower = 2 * b;
+				if (lower + 1 < lowerMinimum.length)
+				{
+					minimum[b] = Math.min(lowerMinimum[lower], lowerMinimum[lower + 1]);
+					maximum[b] = Math.max(lowerMaximum[lower], lowerMaximum[lower + 1]);
+				}
+				else
+				{
+					minimum[b] = lowerMinimum[lower];
+					maximum[b] = lowerMaximum[lower];
+				}
+			}
+			afMinimum[level] = minimum;
+			afMaximum[level] = maximum;
+		}
+	}
+
+	private static int bucketCount(int points, int level)
+	{
+		return (points + (1 << level) - 1) >> level;
+	}
+
+	/**
+	 * @return the number of points in the line data that the pyramid was built from
+	 */
+	public int getNumberOfPoints()
+	{
+		return iNumberOfPoints;
+	}
+
+	public int getHighestLevel()
+	{
+		return LOWEST_LEVEL + afMinimum.length - 1;
+	}
+
+	/**
+	 * @return the highest level whose buckets hold no more than the given number of points, or -1 if even the lowest
+	 *         level's buckets hold more.
+	 */
+	public int getLevel(int iPointsPerPixel)
+	{
+		if (iPointsPerPixel < (1 << LOWEST_LEVEL))
+		{
+			return -1;
+		}
+		final int level = 31 - Integer.numberOfLeadingZeros(iPointsPerPixel);
+		return Math.min(level, getHighestLevel());
+	}
+
+	/**
+	 * @return the number of buckets in the level
+	 */
+	public int getBucketCount(int iLevel)
+	{
+		return afMinimum[iLevel - LOWEST_LEVEL].length;
+	}
+
+	/**
+	 * @return the minimum of points [iBucket * 2^iLevel, (iBucket+1) * 2^iLevel)
+	 */
+	public float getMinimum(int iLevel, int iBucket)
+	{
+		return afMinimum[iLevel - LOWEST_LEVEL][iBucket];
+	}
+
+	/**
+	 * @return the maximum of points [iBucket * 2^iLevel, (iBucket+1) * 2^iLevel)
+	 */
+	public float getMaximum(int iLevel, int iBucket)
+	{
+		return afMaximum[iLevel - LOWEST_LEVEL][iBucket];
+	}
+
+	/**
+	 * @return the shared array of the minimums of the level, do not modify it.
+	 */
+	float[] getMinimums(int iLevel)
+	{
+		return afMinimum[iLevel - LOWEST_LEVEL];
+	}
+
+	/**
+	 * @return the shared array of the maximums of the level, do not modify it.
+	 */
+	float[] getMaximums(int iLevel)
+	{
+		return afMaximum[iLevel - LOWEST_LEVEL];
+	}
+}
@@ -6,8 +6,11 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.peralex.utilities.objectpool.GraphObjectPool;
 import com.peralex.utilities.ui.graphs.graphBase.ZoomAdapter;
@@ -35,23 +38,97 @@ public class MultiLineGraph extends AbstractLineGraph
 	public static final BasicStroke STROKE_4 = new BasicStroke(1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f, new float[] {8.0f, 5.0f}, 0.0f);
 	public static final BasicStroke STROKE_5 = new BasicStroke(1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f, new float[] {8.0f, 5.0f, 1.0f, 5.0f}, 0.0f);
 	
+	/**
+	 * How a line with more visible points than pixels is reduced before it is drawn.
+	 */
+	public static enum DownsamplingMode {
+		/**
+		 * draw a vertical bar from the minimum to the maximum of the points on each pixel, which keeps every peak.
+		 */
+		MIN_MAX,
+		/**
+		 * keep about 2 points per pixel, chosen with the Largest-Triangle-Three-Buckets algorithm, which gives a
+		 * smoother and more faithful shape for slow-varying data, but can drop narrow peaks.
+		 */
+		LARGEST_TRIANGLE_THREE_BUCKETS
+	}
+	
+	/**
+	 * The state of one line. This is immutable, a change to a line replaces its state in a new snapshot.
+	 */
 	private static final class LineState {
-		public AbstractLineData data;
-		public boolean visible = true;
-		public Color color;
-		public Stroke stroke = STROKE_1;
+		public final AbstractLineData data;
+		public final boolean visible;
+		public final Color color;
+		public final Stroke stroke;
+		public final DownsamplingMode downsampling;
+		/**
+		 * Shared by the copies of a state that have the same line data, so that changing the color of a line
+		 * does not throw away its coordinate cache.
+		 */
+		public final RenderCache renderCache;
+		
+		LineState(AbstractLineData data, boolean visible, Color color, Stroke stroke, DownsamplingMode downsampling, RenderCache renderCache)
+		{
+			this.data = data;
+			this.visible = visible;
+			this.color = color;
+			this.stroke = stroke;
+			this.downsampling = downsampling;
+			this.renderCache = renderCache;
+		}
+		
+		LineState withData(AbstractLineData newData) {
+			return new LineState(newData, visible, color, stroke, downsampling, new RenderCache());
+		}
+		
+		LineState withVisible(boolean newVisible) {
+			return new LineState(data, newVisible, color, stroke, downsampling, renderCache);
+		}
+		
+		LineState withColor(Color newColor) {
+			return new LineState(data, visible, newColor, stroke, downsampling, renderCache);
+		}
+		
+		LineState withStroke(Stroke newStroke) {
+			return new LineState(data, visible, color, newStroke, downsampling, renderCache);
+		}
+		
+		LineState withDownsampling(DownsamplingMode newDownsampling) {
+			return new LineState(data, visible, color, stroke, newDownsampling, renderCache);
+		}
+	}
+	
+	/**
+	 * Values calculated from the line data while drawing. Only the painting thread touches these.
+	 */
+	private static final class RenderCache {
 		/**
 		 * cache of calculated coordinate values for drawing
 		 */
-		public CoordinateCacheValue cache;
+		public CoordinateCacheValue coordinates;
+		/**
+		 * level-of-detail data, built when it is first needed
+		 */
+		public MinMaxPyramid pyramid;
+	}
+	
+	/**
+	 * Changes the state of one line, see updateLines().
+	 */
+	private static abstract class LineUpdate {
+		abstract LineState update(LineState state);
 	}
 
 	/**
-	 * This stores the data of all the lines that must be drawn.
+	 * An immutable snapshot of the data of all the lines that must be drawn.
+	 * 
+	 * Writers copy the snapshot, change the copy, and publish it with a compare-and-set, retrying if another writer got
+	 * there first. Drawing reads whatever snapshot is current. So neither side ever waits for the other, and drawing
+	 * always sees a consistent set of lines.
 	 */
-	private final Map<Object, LineState> aoLineData = new HashMap<Object, LineState>();
-	
-	private final Object cacheLock = new Object();
+	private final AtomicReference<Map<Object, LineState>> oLineSnapshot = new AtomicReference<Map<Object, LineState>>(
+			Collections.<Object, LineState>emptyMap());
 	
 	/**
 	 * the width of the component when the coordinate cache data was created
@@ -88,7 +165,17 @@ public class MultiLineGraph extends AbstractLineGraph
 	 */
 	private boolean bOptimizedDrawMode = false;
 
-	private boolean bCacheChanged = false;
+	private final AtomicBoolean bCacheChanged = new AtomicBoolean(false);
+
+	/**
+	 * draw zoomed-out lines from a min/max pyramid
+	 */
+	private boolean bLevelOfDetail = false;
+
+	/**
+	 * the line data has changed since the pyramids were built
+	 */
+	private final AtomicBoolean bDataChanged = new AtomicBoolean(false);
 
   
 	/**
@@ -101,7 +188,8 @@ public class MultiLineGraph extends AbstractLineGraph
 			@Override
 			public void graphZoomChanged(double fMinimumX, double fMaximumX, double fMinimumY, double fMaximumY)
 			{
-				graphDataChanged();
+				// the data is the same, so the pyramids can be kept
+				coordinatesChanged();
 			}
 		});
 		
@@ -113,72 +201,67 @@ public class MultiLineGraph extends AbstractLineGraph
 	@Override
 	protected void drawGraph(Graphics2D g)
 	{
-		if (bOptimizedDrawMode)
+		if (bOptimizedDrawMode || bLevelOfDetail)
 		{
 			drawGraphOpt(g);
 			return;
 		}
 		
-		if (aoLineData == null)
-		{
-			return;
-		}
-		
 		/* Noel - this method performs the bulk of the work, so I optimised it a little */
 		
 		final int iHeight = getHeight();
 		final PixelUnitConverter.UnitToPixel xUnitToPixel = defaultXUnitToPixel();
 		final PixelUnitConverter.UnitToPixel yUnitToPixel = defaultYUnitToPixel();
 		
-		synchronized (aoLineData)
+		for (LineState state : oLineSnapshot.get().values())
 		{
-			for (LineState state : aoLineData.values())
+			final AbstractLineData oLineData = state.data;
+			if (oLineData==null) continue;
+			if (!state.visible) continue;
+			
+			if (state.downsampling==DownsamplingMode.LARGEST_TRIANGLE_THREE_BUCKETS)
 			{
-				final AbstractLineData oLineData = state.data;
-				if (oLineData==null) continue;
-				if (!state.visible) continue;
-				
-				final int [] aiXCoordinates = GraphObjectPool.checkOutIntArray(oLineData.getNumberOfPoints());
-				final int [] aiYCoordinates = GraphObjectPool.checkOutIntArray(oLineData.getNumberOfPoints());
-				
-				/* Only draw the data that is going to be visible.
-				 * Note: the +2,-2 calculations are to allow for high zoom factors. If we are
-				 *  highly zoomed in, the first line on the left may start off-screen.
-				 */
-				final int startIndex = Math.max(0, Math.abs(oLineData.binarySearchXValues(getMinimumX())) - 2);
-				// find the index where the maxX would be (the value may not necessarily be in the array, but the index
-				// will index where it _would_ be
-				int endIndex = Math.abs(oLineData.binarySearchXValues(getMaximumX()));
-				// adjust index for high zoom factors where the end-point of a line may line off screen
-				endIndex = endIndex+2;
-				// make sure we don't run off the edge of the array
-				endIndex = Math.min(oLineData.getNumberOfPoints(), endIndex);
-				int cnt = 0;
-				for (int a=startIndex; a<endIndex; a++)
-				{
-					aiXCoordinates[cnt] = xUnitToPixel.compute(oLineData.getXValue(a));
-					aiYCoordinates[cnt] = iHeight - yUnitToPixel.compute(oLineData.getYValue(a));
-					cnt++;
-				}
-				
-				g.setColor(state.color);
-				g.setStroke(state.stroke);
-				
-				final Rectangle clip = g.getClipBounds();
-				if (clip==null) {
-					g.drawPolyline(aiXCoordinates, aiYCoordinates, cnt);
-				} else {
-					// only draw up till the end of the clip region
-					final int endX = clip.x + clip.width;
-					int clippedCnt = Math.abs(Arrays.binarySearch(aiXCoordinates, endX));
-					// make sure we don't run off the end of the array
-					clippedCnt = Math.min(clippedCnt, cnt);
-					g.drawPolyline(aiXCoordinates, aiYCoordinates, clippedCnt);
-				}
-				
-				GraphObjectPool.checkIn(aiXCoordinates);
-				GraphObjectPool.checkIn(aiYCoordinates);
+				// nothing tells us when the data changes in this mode, so re-calculate every time
+				drawLineDataOpt(g, iHeight, getWidth(), xUnitToPixel, yUnitToPixel, state, true, true);
+				continue;
+			}
+			
+			final int [] aiXCoordinates = GraphObjectPool.checkOutIntArray(oLineData.getNumberOfPoints());
+			final int [] aiYCoordinates = GraphObjectPool.checkOutIntArray(oLineData.getNumberOfPoints());
+			
+			/* Only draw the data that is going to be visible.
+			 * Note: the +2,-2 calculations are to allow for high zoom factors. If we are
+			 *  highly zoomed in, the first line on the left may start off-screen.
+			 */
+			final int startIndex = Math.max(0, Math.abs(oLineData.binarySearchXValues(getMinimumX())) - 2);
+			// find the index where the maxX would be (the value may not necessarily be in the array, but the index
+			// will index where it _would_ be
+			int endIndex = Math.abs(oLineData.binarySearchXValues(getMaximumX()));
+			// adjust index for high zoom factors where the end-point of a line may line off screen
+			endIndex = endIndex+2;
+			// make sure we don't run off the edge of the array
+			endIndex = Math.min(oLineData.getNumberOfPoints(), endIndex);
+			final int cnt = Math.max(0, endIndex - startIndex);
+			oLineData.getXPixels(startIndex, endIndex, xUnitToPixel, aiXCoordinates, 0);
+			oLineData.getYPixels(startIndex, endIndex, yUnitToPixel, iHeight, aiYCoordinates, 0);
+			
+			g.setColor(state.color);
+			g.setStroke(state.stroke);
+			
+			final Rectangle clip = g.getClipBounds();
+			if (clip==null) {
+				g.drawPolyline(aiXCoordinates, aiYCoordinates, cnt);
+			} else {
+				// only draw up till the end of the clip region
+				final int endX = clip.x + clip.width;
+				int clippedCnt = Math.abs(Arrays.binarySearch(aiXCoordinates, endX));
+				// make sure we don't run off the end of the array
+				clippedCnt = Math.min(clippedCnt, cnt);
+				g.drawPolyline(aiXCoordinates, aiYCoordinates, clippedCnt);
 			}
+			
+			GraphObjectPool.checkIn(aiXCoordinates);
+			GraphObjectPool.checkIn(aiYCoordinates);
 		}
 	}
 	
@@ -190,10 +273,16 @@ public class MultiLineGraph extends AbstractLineGraph
 	 */
 	public void graphDataChanged()
 	{
-		synchronized (cacheLock)
-		{
-			bCacheChanged = true;
-		}
+		bDataChanged.set(true);
+		coordinatesChanged();
+	}
+
+	/**
+	 * the coordinates need to be re-calculated, because the data or the zoom has changed.
+	 */
+	private void coordinatesChanged()
+	{
+		bCacheChanged.set(true);
 		if (!bFrameRepaintLimited && isVisible())
 		{
 			repaint();
@@ -210,6 +299,51 @@ public class MultiLineGraph extends AbstractLineGraph
 	{
 		bOptimizedDrawMode = bModeOn;
 	}
+
+	/**
+	 * Draw lines that have many points per pixel from a min/max pyramid (see MinMaxPyramid), which is built once
+	 * for each line data set, so that drawing, zooming and panning take time proportional to the width of the graph
+	 * rather than to the number of points.
+	 * 
+	 * This uses the optimised drawing mode, so it has the same requirements, i.e. the graph must be notified with
+	 * graphDataChanged() when data is modified in place, and the x-coordinate data must be sorted.
+	 */
+	public void setLevelOfDetailEnabled(boolean bEnabled)
+	{
+		bLevelOfDetail = bEnabled;
+		coordinatesChanged();
+	}
+
+	public boolean isLevelOfDetailEnabled()
+	{
+		return bLevelOfDetail;
+	}
+	
+	/**
+	 * Select how a line is reduced when it has more visible points than the graph has pixels.
+	 * The default is DownsamplingMode.MIN_MAX.
+	 * 
+	 * Lines that use DownsamplingMode.LARGEST_TRIANGLE_THREE_BUCKETS are not drawn from the level-of-detail pyramid,
+	 * because the algorithm needs the actual points, but it takes a single pass over the visible points. Outside
+	 * optimised drawing mode it is re-calculated on every repaint.
+	 */
+	public void setLineDownsamplingMode(Object key, final DownsamplingMode mode)
+	{
+		if (mode==null) throw new IllegalArgumentException("downsampling mode may not be null");
+		updateLine(key, new LineUpdate() {
+			@Override
+			LineState update(LineState state) {
+				return state.withDownsampling(mode);
+			}
+		});
+		coordinatesChanged();
+	}
+	
+	public DownsamplingMode getLineDownsamplingMode(Object key)
+	{
+		final LineState line = oLineSnapshot.get().get(key);
+		return line==null ? DownsamplingMode.MIN_MAX : line.downsampling;
+	}
 	
 	/**
 	 * Optimised drawing mode
@@ -223,36 +357,36 @@ public class MultiLineGraph extends AbstractLineGraph
 		
 		boolean bCalculateX = false;
 		boolean bCalculateY = false;
-		synchronized (cacheLock)
+		// take the flags before reading the snapshot, so that a change that is published after this is seen next time
+		final boolean bChanged = bCacheChanged.getAndSet(false);
+		final boolean bRebuildPyramids = bDataChanged.getAndSet(false);
+		if (bChanged
+				|| iCachedWidth!=iWidth
+				|| iCachedMinX!=getMinimumX() || iCachedMaxX!=getMaximumX())
 		{
-			if (bCacheChanged
-					|| iCachedWidth!=iWidth
-					|| iCachedMinX!=getMinimumX() || iCachedMaxX!=getMaximumX())
-			{
-				bCalculateX = true;
-				iCachedWidth = iWidth;
-				iCachedMinX = getMinimumX();
-				iCachedMaxX = getMaximumX();
-			}
-			if (bCalculateX || bCacheChanged
-					|| iCachedHeight!=iHeight
-					|| iCachedMinY!=getMinimumY() || iCachedMaxY!=getMaximumY())
-			{
-				bCalculateY = true;
-				iCachedHeight = iHeight;
-				iCachedMinY = getMinimumY();
-				iCachedMaxY = getMaximumY();
-			}
-			bCacheChanged = false;
+			bCalculateX = true;
+			iCachedWidth = iWidth;
+			iCachedMinX = getMinimumX();
+			iCachedMaxX = getMaximumX();
 		}
-		synchronized (aoLineData)
+		if (bCalculateX || bChanged
+				|| iCachedHeight!=iHeight
+				|| iCachedMinY!=getMinimumY() || iCachedMaxY!=getMaximumY())
 		{
-			for (LineState state : aoLineData.values()) {
-				if (!state.visible) continue;
-				drawLineDataOpt(g, iHeight, iWidth, xUnitToPixel, yUnitToPixel, 
-					state,
-					bCalculateX, bCalculateY);
+			bCalculateY = true;
+			iCachedHeight = iHeight;
+			iCachedMinY = getMinimumY();
+			iCachedMaxY = getMaximumY();
+		}
+		for (LineState state : oLineSnapshot.get().values()) {
+			if (bRebuildPyramids)
+			{
+				state.renderCache.pyramid = null;
 			}
+			if (!state.visible) continue;
+			drawLineDataOpt(g, iHeight, iWidth, xUnitToPixel, yUnitToPixel, 
+				state,
+				bCalculateX, bCalculateY);
 		}
 	}
 	
@@ -273,19 +407,29 @@ public class MultiLineGraph extends AbstractLineGraph
 		 * cache the data
 		 */
 		final CoordinateCacheValue coords;
+		final RenderCache renderCache = lineState.renderCache;
+		final boolean bLargestTriangle = lineState.downsampling==DownsamplingMode.LARGEST_TRIANGLE_THREE_BUCKETS;
 		
-		if (lineState.cache!=null) {
-			coords = lineState.cache;
+		// only worth building a pyramid if the line can have several points per pixel
+		if (bLevelOfDetail && !bLargestTriangle && lineState.data.getNumberOfPoints() > 4*iWidth
+				&& (renderCache.pyramid==null || renderCache.pyramid.getNumberOfPoints()!=lineState.data.getNumberOfPoints()))
+		{
+			renderCache.pyramid = new MinMaxPyramid(lineState.data);
+		}
+		final MinMaxPyramid pyramid = bLevelOfDetail && !bLargestTriangle ? renderCache.pyramid : null;
+		
+		if (renderCache.coordinates!=null) {
+			coords = renderCache.coordinates;
 			if (bCalculateX || bCalculateY)
 			{
-				coords.compute(iHeight, iWidth, xUnitToPixel, yUnitToPixel, lineState.data, getMinimumX(), getMaximumX(), bCalculateX, bCalculateY);
+				coords.compute(iHeight, iWidth, xUnitToPixel, yUnitToPixel, lineState.data, pyramid, bLargestTriangle, getMinimumX(), getMaximumX(), bCalculateX, bCalculateY);
 			}
 		} else {
 			// compute co-ordinate data
 			coords = new CoordinateCacheValue();
-			lineState.cache = coords;
+			renderCache.coordinates = coords;
 			// have to calculate both X and Y
-			coords.compute(iHeight, iWidth, xUnitToPixel, yUnitToPixel, lineState.data, getMinimumX(), getMaximumX(), true, true);
+			coords.compute(iHeight, iWidth, xUnitToPixel, yUnitToPixel, lineState.data, pyramid, bLargestTriangle, getMinimumX(), getMaximumX(), true, true);
 		}
 		
 		coords.paint(g, lineState.color, lineState.stroke);
@@ -295,21 +439,18 @@ public class MultiLineGraph extends AbstractLineGraph
 	 * This will set the data that must be drawn.
 	 * Note: this method can be called from off the event thread.
 	 */
-	public void setGraphData(Object key, AbstractLineData oLineData)
+	public void setGraphData(Object key, final AbstractLineData oLineData)
 	{
 		if (oLineData==null) throw new IllegalStateException("line data may not be null");
-		synchronized (aoLineData)
-		{
-			final LineState line = ensureKeyExists(key);
-			line.data = oLineData;
-			line.cache = null;
-		}
+		updateLine(key, new LineUpdate() {
+			@Override
+			LineState update(LineState state) {
+				return state.withData(oLineData);
+			}
+		});
 		if (bOptimizedDrawMode)
 		{
-			synchronized (cacheLock)
-			{
-				bCacheChanged = true;
-			}
+			bCacheChanged.set(true);
 		}
 		
 		if (!bFrameRepaintLimited && isVisible())
@@ -341,22 +482,26 @@ public class MultiLineGraph extends AbstractLineGraph
 	 */
 	public void setGraphData(Map<? extends Object, ? extends AbstractLineData> newData)
 	{
-  	synchronized (aoLineData)
-  	{
+		for (Object key : newData.keySet()) {
+			if (newData.get(key)==null) throw new IllegalStateException("illegal: line data for key " + key + " is null");
+		}
+		// all the lines change in one snapshot
+		while (true)
+		{
+			final Map<Object, LineState> current = oLineSnapshot.get();
+			final Map<Object, LineState> next = new HashMap<Object, LineState>(current);
 			for (Object key : newData.keySet()) {
-				final LineState line = ensureKeyExists(key);
-				final AbstractLineData newLine = newData.get(key);
-				if (newLine==null) throw new IllegalStateException("illegal: line data for key " + key + " is null");
-				line.data = newLine;
+				next.put(key, getOrCreate(next, key).withData(newData.get(key)));
+			}
+			if (oLineSnapshot.compareAndSet(current, Collections.unmodifiableMap(next)))
+			{
+				break;
 			}
-  	}
+		}
   	
 		if (bOptimizedDrawMode)
 		{
-			synchronized (cacheLock)
-			{
-				bCacheChanged = true;
-			}
+			bCacheChanged.set(true);
 		}
 		
 		if (!bFrameRepaintLimited && isVisible())
@@ -368,26 +513,28 @@ public class MultiLineGraph extends AbstractLineGraph
 	/**
 	 * Sets the color of a line.
 	 */
-	public void setLineColor(Object key, Color color)
+	public void setLineColor(Object key, final Color color)
 	{
-		synchronized (aoLineData)
-		{
-			final LineState line = ensureKeyExists(key);
-			line.color = color;
-		}
+		updateLine(key, new LineUpdate() {
+			@Override
+			LineState update(LineState state) {
+				return state.withColor(color);
+			}
+		});
 		if (!bFrameRepaintLimited && isVisible())
 		{
 			repaint();
 		}
 	}
 	
-	public void setLineVisible(Object key, boolean bVisible)
+	public void setLineVisible(Object key, final boolean bVisible)
 	{
-		synchronized (aoLineData)
-		{
-			final LineState line = ensureKeyExists(key);
-			line.visible = bVisible;
-		}
+		updateLine(key, new LineUpdate() {
+			@Override
+			LineState update(LineState state) {
+				return state.withVisible(bVisible);
+			}
+		});
 		if (!bFrameRepaintLimited && isVisible())
 		{
 			repaint();
@@ -397,14 +544,14 @@ public class MultiLineGraph extends AbstractLineGraph
 	/**
 	 * set the visibility of all the lines
 	 */
-	public void setLinesVisible(boolean bVisible)
+	public void setLinesVisible(final boolean bVisible)
 	{
-		synchronized (aoLineData)
-		{
-			for (LineState lineState : aoLineData.values()) {
-				lineState.visible = bVisible;
+		updateLines(new LineUpdate() {
+			@Override
+			LineState update(LineState state) {
+				return state.withVisible(bVisible);
 			}
-		}
+		});
 		if (!bFrameRepaintLimited && isVisible())
 		{
 			repaint();
@@ -418,27 +565,27 @@ public class MultiLineGraph extends AbstractLineGraph
 	@Override
 	public void clear()
 	{
-		synchronized (aoLineData)
-		{
-			for (LineState state : aoLineData.values()) {
-				state.cache = null;
-				state.data = NULL_LINE_DATA;
+		updateLines(new LineUpdate() {
+			@Override
+			LineState update(LineState state) {
+				return state.withData(NULL_LINE_DATA);
 			}
-		}
-		synchronized (cacheLock)
-		{
-			bCacheChanged = true;
-		}
+		});
+		bCacheChanged.set(true);
 		repaint();
 	}
 	
 	/**
 	 * sets the Graphics2D stroke that is used to draw the line.
 	 */
-	public final void setLineStroke(Object key, Stroke oStroke)
+	public final void setLineStroke(Object key, final Stroke oStroke)
 	{
-		final LineState line = ensureKeyExists(key);
-		line.stroke = oStroke;
+		updateLine(key, new LineUpdate() {
+			@Override
+			LineState update(LineState state) {
+				return state.withStroke(oStroke);
+			}
+		});
 		
 		if (!bFrameRepaintLimited && isVisible())
 		{
@@ -446,20 +593,49 @@ public class MultiLineGraph extends AbstractLineGraph
 		}
 	}
 	
-	private LineState ensureKeyExists(Object key)
+	/**
+	 * Publish a snapshot in which one line has been changed, creating the line if it does not exist yet.
+	 */
+	private void updateLine(Object key, LineUpdate update)
 	{
-		synchronized (aoLineData)
+		while (true)
 		{
-			LineState state = aoLineData.get(key);
-			if (state!=null) {
-				return state;
+			final Map<Object, LineState> current = oLineSnapshot.get();
+			final Map<Object, LineState> next = new HashMap<Object, LineState>(current);
+			next.put(key, update.update(getOrCreate(current, key)));
+			if (oLineSnapshot.compareAndSet(current, Collections.unmodifiableMap(next)))
+			{
+				return;
 			}
-			state = new LineState();
-			state.color = allocateLineColor(aoLineData.size());
-			state.data = NULL_LINE_DATA;
-			aoLineData.put(key, state);
+		}
+	}
+	
+	/**
+	 * Publish a snapshot in which all the lines have been changed.
+	 */
+	private void updateLines(LineUpdate update)
+	{
+		while (true)
+		{
+			final Map<Object, LineState> current = oLineSnapshot.get();
+			final Map<Object, LineState> next = new HashMap<Object, LineState>(current);
+			for (Map.Entry<Object, LineState> entry : next.entrySet()) {
+				entry.setValue(update.update(entry.getValue()));
+			}
+			if (oLineSnapshot.compareAndSet(current, Collections.unmodifiableMap(next)))
+			{
+				return;
+			}
+		}
+	}
+	
+	private static LineState getOrCreate(Map<Object, LineState> lines, Object key)
+	{
+		final LineState state = lines.get(key);
+		if (state!=null) {
 			return state;
 		}
+		return new LineState(NULL_LINE_DATA, true, allocateLineColor(lines.size()), STROKE_1, DownsamplingMode.MIN_MAX, new RenderCache());
 	}
 	
 	@Override
@@ -470,7 +646,7 @@ public class MultiLineGraph extends AbstractLineGraph
 		double minY = Double.MAX_VALUE;
 		double maxY = -Double.MAX_VALUE;
 		boolean foundOne = false;
-		for (LineState lineState : aoLineData.values())
+		for (LineState lineState : oLineSnapshot.get().values())
 		{
 			if (!lineState.visible) continue;
 			final AbstractLineData oLineData = lineState.data; 
@@ -480,11 +656,8 @@ public class MultiLineGraph extends AbstractLineGraph
 				foundOne = true;
 				minX = Math.min(minX, oLineData.getXValue(0));
 				maxX = Math.max(maxX, oLineData.getXValue(oLineData.getNumberOfPoints()-1));
-				for (int j=0; j<numPoints; j++)
-				{
-					minY = Math.min(minY, oLineData.getYValueDouble(j));
-					maxY = Math.max(maxY, oLineData.getYValueDouble(j));
-				}
+				minY = Math.min(minY, oLineData.getMinimumYValue(0, numPoints));
+				maxY = Math.max(maxY, oLineData.getMaximumYValue(0, numPoints));
 			}
 		}
 		if (foundOne) 
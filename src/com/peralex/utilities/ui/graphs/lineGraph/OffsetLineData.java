@@ -1,5 +1,7 @@
 package com.peralex.utilities.ui.graphs.lineGraph;
 
+import com.peralex.utilities.ui.graphs.graphBase.PixelUnitConverter;
+
 /**
  * Line data class that adds an offset to it's Y values.
  * 
@@ -25,7 +27,8 @@ public class OffsetLineData extends GeneratedLineData
 	@Override
 	public double getYValueDouble(int idx)
 	{
-		return dOffset + super.getYValueDouble(idx);
+		// not super.getYValueDouble(), that calls getYValue() which already adds the offset
+		return dOffset + getYValues()[idx];
 	}
 	
 	@Override
@@ -34,6 +37,32 @@ public class OffsetLineData extends GeneratedLineData
 		return (float) (dOffset + super.getYValue(idx));
 	}
 	
+	@Override
+	public void getYPixels(int iStart, int iEnd, PixelUnitConverter.UnitToPixel oUnitToPixel, int iHeight, int[] aiPixels, int iOffset)
+	{
+		final float[] values = getYValues();
+		final double offset = dOffset;
+		for (int i=iStart; i<iEnd; i++)
+		{
+			aiPixels[iOffset++] = iHeight - oUnitToPixel.compute(offset + values[i]);
+		}
+	}
+	
+	/**
+	 * the offset does not change which value is the smallest, so it is added once
+	 */
+	@Override
+	public double getMinimumYValue(int iStart, int iEnd)
+	{
+		return iStart>=iEnd ? Double.MAX_VALUE : dOffset + super.getMinimumYValue(iStart, iEnd);
+	}
+	
+	@Override
+	public double getMaximumYValue(int iStart, int iEnd)
+	{
+		return iStart>=iEnd ? -Double.MAX_VALUE : dOffset + super.getMaximumYValue(iStart, iEnd);
+	}
+	
 	public void setOffset(double offset) {
 		this.dOffset = offset;
 	}
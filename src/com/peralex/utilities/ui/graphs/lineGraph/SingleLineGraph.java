@@ -39,6 +39,23 @@ public class SingleLineGraph extends AbstractLineGraph
 	private int iCachedCnt; // sometimes, only part of the array is used
 	private boolean bCacheChanged = false;
 	
+	/**
+	 * draw the line from a min/max pyramid when it has many points per pixel
+	 */
+	private boolean bLevelOfDetail = false;
+	
+	/**
+	 * level-of-detail data, built when it is first needed
+	 */
+	private MinMaxPyramid oPyramid;
+	
+	/**
+	 * the line data has changed since the pyramid was built
+	 */
+	private boolean bDataChanged = false;
+	
+	private CoordinateCacheValue oPyramidCoordinates;
+	
 	/**
 	 * the width of the component when the coordinate cache data was created
 	 */
@@ -81,7 +98,8 @@ public class SingleLineGraph extends AbstractLineGraph
 			@Override
 			public void graphZoomChanged(double fMinimumX, double fMaximumX, double fMinimumY, double fMaximumY)
 			{
-				graphDataChanged();
+				// the data is the same, so the pyramid can be kept
+				coordinatesChanged();
 			}
 		});
 	}
@@ -102,6 +120,7 @@ public class SingleLineGraph extends AbstractLineGraph
 		final Rectangle clip = g.getClipBounds();
 
 		boolean bCalculateX = false;
+		final boolean bRebuildPyramid;
 		synchronized (oCacheLock)
 		{
 			if (iCachedWidth!=iWidth
@@ -121,6 +140,12 @@ public class SingleLineGraph extends AbstractLineGraph
 				iCachedMaxY = getMaximumY();
 			}
 			bCacheChanged = false;
+			bRebuildPyramid = bDataChanged;
+			bDataChanged = false;
+		}
+		if (bRebuildPyramid)
+		{
+			oPyramid = null;
 		}
 
 		/* Only draw the data that is going to be visible.
@@ -136,6 +161,17 @@ public class SingleLineGraph extends AbstractLineGraph
 		// make sure we don't run off the edge of the array
 		endIndex = Math.min(oLineData.getNumberOfPoints(), endIndex);
 		
+		if (bLevelOfDetail && (endIndex-startIndex) >= (iWidth << MinMaxPyramid.LOWEST_LEVEL))
+		{
+			drawGraphFromPyramid(g, iHeight, iWidth);
+			synchronized (oCacheLock)
+			{
+				// the cached x-coordinates were not updated
+				iCachedWidth = -1;
+			}
+			return;
+		}
+		
 		if (bCalculateX)
 		{
 			final PixelUnitConverter.UnitToPixel xUnitToPixel = defaultXUnitToPixel();
@@ -181,6 +217,25 @@ public class SingleLineGraph extends AbstractLineGraph
 		GraphObjectPool.checkIn(aiYCoordinates);
 	}
 	
+	/**
+	 * Zoomed-out drawing, from the min/max pyramid.
+	 */
+	private void drawGraphFromPyramid(Graphics2D g, int iHeight, int iWidth)
+	{
+		if (oPyramid==null || oPyramid.getNumberOfPoints()!=oLineData.getNumberOfPoints())
+		{
+			oPyramid = new MinMaxPyramid(oLineData);
+		}
+		if (oPyramidCoordinates==null)
+		{
+			oPyramidCoordinates = new CoordinateCacheValue();
+		}
+		// cheap enough to re-calculate every time, because it only depends on the width of the graph
+		oPyramidCoordinates.compute(iHeight, iWidth, defaultXUnitToPixel(), defaultYUnitToPixel(), oLineData, oPyramid, false,
+				getMinimumX(), getMaximumX(), true, true);
+		oPyramidCoordinates.paint(g, oLineColor, null);
+	}
+	
 	/**
 	 * Notify the graph that the data has changed.
 	 * 
@@ -188,6 +243,18 @@ public class SingleLineGraph extends AbstractLineGraph
 	 * X data has remained the same.
 	 */
 	public void graphDataChanged()
+	{
+		synchronized (oCacheLock)
+		{
+			bDataChanged = true;
+		}
+		coordinatesChanged();
+	}
+	
+	/**
+	 * the coordinates need to be re-calculated, because the data or the zoom has changed.
+	 */
+	private void coordinatesChanged()
 	{
 		synchronized (oCacheLock)
 		{
@@ -199,6 +266,22 @@ public class SingleLineGraph extends AbstractLineGraph
 		}
 	}
 	
+	/**
+	 * Draw the line from a min/max pyramid (see MinMaxPyramid) when it has many points per pixel. The pyramid is built
+	 * once for each data set, so that drawing, zooming and panning take time proportional to the width of the graph
+	 * rather than to the number of points.
+	 */
+	public void setLevelOfDetailEnabled(boolean bEnabled)
+	{
+		bLevelOfDetail = bEnabled;
+		coordinatesChanged();
+	}
+	
+	public boolean isLevelOfDetailEnabled()
+	{
+		return bLevelOfDetail;
+	}
+	
 	/**
 	 * This will set the data that must be drawn.
 	 */
@@ -208,6 +291,7 @@ public class SingleLineGraph extends AbstractLineGraph
 		synchronized (oCacheLock)
 		{
 			bCacheChanged = true;
+			bDataChanged = true;
 		}
 		if (!bFrameRepaintLimited)
 		{
@@ -239,6 +323,7 @@ public class SingleLineGraph extends AbstractLineGraph
 	public void clear()
 	{
 		oLineData = null;
+		oPyramid = null;
 		repaint();
 	}
 	
@@ -6,6 +6,7 @@ import java.awt.event.ComponentEvent;
 
 import com.peralex.sharedlibs.dsphostl.TimeStamp;
 import com.peralex.utilities.objectpool.GraphObjectPool;
+import com.peralex.utilities.ui.ScrollableBufferedImage;
 import com.peralex.utilities.ui.graphs.DirectionLib;
 
 /**
@@ -213,6 +214,32 @@ public class AmplitudeDetectionWaterfallGraph extends WaterfallGraph
 		repaint();
 	}
 
+	/**
+	 * Set the amplitude data for the graph, with the writer converting the amplitudes to pixels (using
+	 * getAmplitudePixel()) straight into the waterfall image, instead of going through an amplitude array and a pixel
+	 * array.
+	 * 
+	 * @param dataLength the number of amplitudes in the line
+	 */
+	public void setAmplitudeData(TimeStamp oTimeStamp, ScrollableBufferedImage.IRowWriter oWriter, int dataLength)
+	{
+		addWaterfallLine(oTimeStamp, oWriter, dataLength);
+
+		// Draw the detection on top of the amplitudes. First check if it goes on
+		// top of the current frame and then if it goes on top of the previous one.
+		drawDetections();
+
+		repaint();
+	}
+
+	/**
+	 * @return the colour of an amplitude, as an ARGB value
+	 */
+	public final int getAmplitudePixel(float fAmplitude_dBm)
+	{
+		return imageDataConverter.computeLinePixel(fAmplitude_dBm);
+	}
+
 	protected void convertAmplitudeToLine(int[] aiImageData, float[] afAmplitudeFrame_dBm)
 	{
 		for (int i = 0; i < afAmplitudeFrame_dBm.length; i++)
@@ -189,6 +189,31 @@ public class WaterfallGraph extends ZoomDrawSurface
 	 * @param imageDataLen the length of data in the array to use
    */
   protected final void addWaterfallLine(TimeStamp oTimeStamp, int[] aiImageData, int imageDataLen)
+  {
+		prepareWaterfallLine(oTimeStamp, imageDataLen);
+
+		oImage.drawRGB_Bottom(aiImageData, imageDataLen);
+		
+		repaint();
+  }
+
+  /**
+   * Same as addWaterfallLine(TimeStamp, int[], int), but the writer writes the pixels straight into the image.
+   * @param imageDataLen the number of pixels in the line
+   */
+  protected final void addWaterfallLine(TimeStamp oTimeStamp, ScrollableBufferedImage.IRowWriter oWriter, int imageDataLen)
+  {
+		prepareWaterfallLine(oTimeStamp, imageDataLen);
+
+		oImage.writeRGB_Bottom(oWriter);
+		
+		repaint();
+  }
+
+  /**
+   * Size the image for the line, and scroll to make space for it.
+   */
+  private void prepareWaterfallLine(TimeStamp oTimeStamp, int imageDataLen)
   {
 		if (!oImage.isImageCreated() || oImage.getWidth()!=imageDataLen)
 		{
@@ -228,10 +253,6 @@ public class WaterfallGraph extends ZoomDrawSurface
 			// Move the display one pixel down
 			scrollDown();
 		}
-
-		oImage.drawRGB_Bottom(aiImageData, imageDataLen);
-		
-		repaint();
   }
 
   protected void scrollUp()